@@ -3,6 +3,9 @@ package org.MAGd.rPGInventory;
 import org.MAGd.rPGInventory.commands.RPGInventoryCommand;
 import org.MAGd.rPGInventory.database.DatabaseFactory;
 import org.MAGd.rPGInventory.database.DatabaseManager;
+import org.MAGd.rPGInventory.database.PlayerLoadout;
+import org.MAGd.rPGInventory.database.ProfilePrefetchCache;
+import org.MAGd.rPGInventory.database.SaveQueue;
 import org.MAGd.rPGInventory.gui.InventoryGUI;
 import org.MAGd.rPGInventory.listeners.InventoryListeners;
 import org.MAGd.rPGInventory.listeners.TotemEffectListener;
@@ -19,12 +22,15 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 public final class RPGInventory extends JavaPlugin {
 
     private static RPGInventory instance;
     private boolean hasExecutableItems = false;
     private DatabaseManager databaseManager;
+    private SaveQueue saveQueue;
+    private ProfilePrefetchCache prefetchCache;
     private BukkitTask autoSaveTask;
     private List<String> allowedTotems; // 允許的圖騰 ID 清單
     private TotemEffectListener totemEffectListener;
@@ -60,14 +66,22 @@ public final class RPGInventory extends JavaPlugin {
             getServer().getLogger().warning("[RPGInventory] 未找到 ExecutableItems 插件，飾品功能將被禁用！");
         }
         
-        // 初始化數據庫
+        // 初始化數據庫（工廠已完成 initialize，失敗時返回 null）
         databaseManager = DatabaseFactory.getDatabaseManager(this);
-        if (!databaseManager.initialize()) {
+        if (databaseManager == null) {
             getServer().getLogger().severe("[RPGInventory] 數據庫初始化失敗，插件將被禁用！");
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
         
+        // 啟動寫後保存隊列
+        saveQueue = new SaveQueue(this, databaseManager);
+        saveQueue.start();
+        databaseManager.setSaveQueue(saveQueue);
+        
+        // 登入前預取玩家數據
+        prefetchCache = new ProfilePrefetchCache(this, saveQueue);
+        
         // 初始化監聽器
         this.totemEffectListener = new TotemEffectListener(this);
         this.ornamentEffectListener = new OrnamentEffectListener(this);
@@ -124,9 +138,14 @@ public final class RPGInventory extends JavaPlugin {
             autoSaveTask = null;
         }
         
-        // 保存所有在線玩家的數據
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            savePlayerInventory(player);
+        // 在主線程生成所有在線玩家的快照，並在關閉連接池前並行寫入隊列中的所有快照；
+        // 超過期限未寫入的快照保存到本地日誌
+        if (saveQueue != null) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                savePlayerInventory(player);
+            }
+            int saved = saveQueue.flushAll();
+            getLogger().info("關閉前已寫入 " + saved + " 名玩家的物品欄數據");
         }
         
         // 關閉數據庫連接
@@ -151,12 +170,13 @@ public final class RPGInventory extends JavaPlugin {
             return;
         }
         
-        autoSaveTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+        // 在主線程生成快照，實際寫入由保存隊列在異步線程完成
+        autoSaveTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
             getLogger().info("正在自動保存玩家數據...");
             for (Player player : Bukkit.getOnlinePlayers()) {
                 savePlayerInventory(player);
             }
-            getLogger().info("玩家數據自動保存完成！");
+            getLogger().info("玩家數據已加入保存隊列！");
         }, autoSaveInterval, autoSaveInterval);
     }
     
@@ -165,27 +185,63 @@ public final class RPGInventory extends JavaPlugin {
      * @param player 玩家
      */
     public void savePlayerInventory(Player player) {
+        savePlayerInventory(player, false);
+    }
+    
+    /**
+     * 保存玩家物品欄數據（需在主線程調用），自上次保存後沒有變更的玩家會被跳過
+     * @param player 玩家
+     * @param urgent 是否走保存隊列的快速通道（例如玩家退出）
+     */
+    public void savePlayerInventory(Player player, boolean urgent) {
         UUID playerUUID = player.getUniqueId();
         Map<Integer, ItemStack> totems = new HashMap<>();
         
         // 獲取玩家的 RPG 物品欄
-        if (InventoryGUI.hasOpenInventory(playerUUID)) {
+        if (InventoryGUI.hasOpenInventory(playerUUID) && saveQueue != null) {
+            if (!InventoryGUI.isDirty(playerUUID)) {
+                return;
+            }
+            
             try {
-                // 飾品欄物品
+                long version = InventoryGUI.getLoadoutVersion(playerUUID);
+                // 上一次保存之後變更過的槽位；數據庫中已是上一次的快照時，其餘槽位沿用已寫入的數據，不再序列化
+                long baseVersion = InventoryGUI.getSavedVersion(playerUUID);
+                boolean ornamentChanged = InventoryGUI.getSlotVersion(playerUUID, InventoryGUI.getOrnamentSlot()) > baseVersion;
+                Set<Integer> changedTotemSlots = new HashSet<>();
+                
+                // 飾品欄物品（複製一份，避免異步寫入時物品被修改）
                 ItemStack ornament = InventoryGUI.getOrnamentItem(playerUUID);
+                if (ornament != null) {
+                    ornament = ornament.clone();
+                }
                 
                 // 圖騰欄物品
                 for (int slotId : InventoryGUI.getTotemSlots()) {
                     ItemStack totem = InventoryGUI.getTotemItem(playerUUID, slotId);
                     if (totem != null) {
-                        totems.put(slotId, totem);
+                        totems.put(slotId, totem.clone());
+                    }
+                    if (InventoryGUI.getSlotVersion(playerUUID, slotId) > baseVersion) {
+                        changedTotemSlots.add(slotId);
                     }
                 }
                 
-                // 保存到數據庫
-                Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-                    databaseManager.saveInventory(playerUUID, ornament, totems);
-                });
+                // 加入寫後保存隊列，隊列會在寫入失敗時自行重試
+                PlayerLoadout loadout = new PlayerLoadout(playerUUID, ornament, totems, version,
+                        baseVersion, ornamentChanged, changedTotemSlots);
+                if (urgent) {
+                    // 快速通道經數據庫管理器加入隊列，關閉前仍未寫入時記錄（快照已保存到本地日誌）
+                    String playerName = player.getName();
+                    databaseManager.saveAsync(loadout).whenComplete((saved, error) -> {
+                        if (!Boolean.TRUE.equals(saved)) {
+                            getLogger().warning("玩家 " + playerName + " 的物品欄數據未能寫入數據庫" + (error != null ? ": " + error : "，已保存到本地日誌"));
+                        }
+                    });
+                } else {
+                    saveQueue.enqueue(loadout, false);
+                }
+                InventoryGUI.markSaved(playerUUID, version);
             } catch (Exception e) {
                 getLogger().severe("保存玩家 " + player.getName() + " 的物品欄數據時發生錯誤: " + e.getMessage());
                 e.printStackTrace();
@@ -195,12 +251,42 @@ public final class RPGInventory extends JavaPlugin {
     
     /**
      * 初始化玩家的物品欄和圖騰效果
+     * <p>
+     * 優先使用登入前預取的數據；未命中時按配置在異步線程或主線程中加載。
      * @param player 玩家
      */
     public void initializePlayerInventory(Player player) {
-        // 靜默加載玩家數據（不打開物品欄）
-        loadPlayerInventorySilently(player);
+        PlayerLoadout profile = prefetchCache != null ? prefetchCache.consume(player.getUniqueId()) : null;
+        if (profile != null || prefetchCache == null || prefetchCache.isSyncFallback()) {
+            if (profile != null) {
+                applyProfile(player, profile);
+            } else {
+                // 靜默加載玩家數據（不打開物品欄）
+                loadPlayerInventorySilently(player);
+            }
+            startPlayerEffects(player);
+            return;
+        }
         
+        // 預取未命中，在存儲線程池加載（失敗時按退避重試）後回到主線程應用；玩家退出時加載會被取消
+        prefetchCache.loadAsync(player.getUniqueId()).whenCompleteAsync((loaded, error) -> {
+            if (error instanceof CancellationException || !player.isOnline()) {
+                return;
+            }
+            if (loaded == null) {
+                getLogger().severe("無法加載玩家 " + player.getName() + " 的物品欄數據" + (error != null ? ": " + error : ""));
+            } else {
+                applyProfile(player, loaded);
+            }
+            startPlayerEffects(player);
+        }, databaseManager.getStorageExecutor().mainThread());
+    }
+    
+    /**
+     * 啟動玩家的圖騰與飾品循環任務
+     * @param player 玩家
+     */
+    private void startPlayerEffects(Player player) {
         // 初始化圖騰循環任務
         if (totemEffectListener != null) {
             getServer().getLogger().info("正在為玩家 " + player.getName() + " 初始化圖騰效果...");
@@ -214,24 +300,64 @@ public final class RPGInventory extends JavaPlugin {
         }
     }
     
+    /**
+     * 獲取玩家最新的物品欄數據（阻塞，可在任意線程調用）
+     * <p>
+     * 保存隊列中尚未寫入（或正在寫入）的快照比數據庫中的數據更新，優先返回。
+     * @param playerUUID 玩家UUID
+     * @return 玩家數據，加載失敗時為 null
+     */
+    public PlayerLoadout fetchProfile(UUID playerUUID) {
+        if (saveQueue != null) {
+            PlayerLoadout unsaved = saveQueue.getUnsavedSnapshot(playerUUID);
+            if (unsaved != null) {
+                return unsaved;
+            }
+        }
+        return databaseManager.loadProfile(playerUUID);
+    }
+    
     /**
      * 靜默加載玩家物品欄數據（不打開界面）
      * @param player 玩家
      */
     public void loadPlayerInventorySilently(Player player) {
+        // 一次查詢加載飾品與圖騰
+        PlayerLoadout profile = fetchProfile(player.getUniqueId());
+        if (profile == null) {
+            getLogger().severe("無法加載玩家 " + player.getName() + " 的物品欄數據");
+            return;
+        }
+        applyProfile(player, profile);
+    }
+    
+    /**
+     * 將已加載的數據放入玩家的物品欄（不打開界面，應在主線程調用）
+     * @param player 玩家
+     * @param profile 玩家數據
+     */
+    public void applyProfile(Player player, PlayerLoadout profile) {
         UUID playerUUID = player.getUniqueId();
         
-        // 檢查玩家是否有保存的數據
-        if (!databaseManager.hasData(playerUUID)) {
+        // 玩家沒有保存的數據
+        if (profile.isEmpty()) {
             return;
         }
         
         try {
-            // 加載飾品欄物品
-            ItemStack ornament = databaseManager.loadOrnament(playerUUID);
+            ItemStack ornament = profile.getOrnament();
+            Map<Integer, ItemStack> totems = profile.getTotems();
             
-            // 加載圖騰欄物品
-            Map<Integer, ItemStack> totems = databaseManager.loadTotems(playerUUID);
+            // 加載期間玩家已打開物品欄，直接更新現有物品欄
+            if (InventoryGUI.hasOpenInventory(playerUUID)) {
+                InventoryGUI.setOrnamentItem(playerUUID, ornament);
+                for (Map.Entry<Integer, ItemStack> entry : totems.entrySet()) {
+                    InventoryGUI.setTotemItem(playerUUID, entry.getKey(), entry.getValue());
+                }
+                InventoryGUI.markClean(playerUUID);
+                getLogger().info("已更新玩家 " + player.getName() + " 的物品欄數據");
+                return;
+            }
             
             // 創建物品欄但不打開
             Inventory inventory = Bukkit.createInventory(null, InventoryGUI.getInventorySize(), InventoryGUI.getInventoryTitle());
@@ -274,35 +400,25 @@ public final class RPGInventory extends JavaPlugin {
     public void loadPlayerInventory(Player player) {
         UUID playerUUID = player.getUniqueId();
         
-        // 檢查玩家是否有保存的數據
-        if (!databaseManager.hasData(playerUUID)) {
-            return;
-        }
-        
-        // 從數據庫加載數據
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+        // 一次查詢加載飾品與圖騰，沒有數據或加載失敗時不修改物品欄
+        prefetchCache.loadAsync(playerUUID).thenAcceptAsync(profile -> {
+            if (profile == null || profile.isEmpty() || !InventoryGUI.hasOpenInventory(playerUUID)) {
+                return;
+            }
             try {
-                // 加載飾品欄物品
-                ItemStack ornament = databaseManager.loadOrnament(playerUUID);
+                InventoryGUI.setOrnamentItem(playerUUID, profile.getOrnament());
                 
-                // 加載圖騰欄物品
-                Map<Integer, ItemStack> totems = databaseManager.loadTotems(playerUUID);
+                for (Map.Entry<Integer, ItemStack> entry : profile.getTotems().entrySet()) {
+                    InventoryGUI.setTotemItem(playerUUID, entry.getKey(), entry.getValue());
+                }
                 
-                // 更新物品欄
-                Bukkit.getScheduler().runTask(this, () -> {
-                    if (InventoryGUI.hasOpenInventory(playerUUID)) {
-                        InventoryGUI.setOrnamentItem(playerUUID, ornament);
-                        
-                        for (Map.Entry<Integer, ItemStack> entry : totems.entrySet()) {
-                            InventoryGUI.setTotemItem(playerUUID, entry.getKey(), entry.getValue());
-                        }
-                    }
-                });
+                // 內容與數據庫一致，無需再次保存
+                InventoryGUI.markClean(playerUUID);
             } catch (Exception e) {
                 getLogger().severe("加載玩家 " + player.getName() + " 的物品欄數據時發生錯誤: " + e.getMessage());
                 e.printStackTrace();
             }
-        });
+        }, databaseManager.getStorageExecutor().mainThread());
     }
     
     /**
@@ -328,6 +444,22 @@ public final class RPGInventory extends JavaPlugin {
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
+    
+    /**
+     * 獲取寫後保存隊列
+     * @return 保存隊列
+     */
+    public SaveQueue getSaveQueue() {
+        return saveQueue;
+    }
+    
+    /**
+     * 獲取登入預取緩存
+     * @return 預取緩存
+     */
+    public ProfilePrefetchCache getPrefetchCache() {
+        return prefetchCache;
+    }
 
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
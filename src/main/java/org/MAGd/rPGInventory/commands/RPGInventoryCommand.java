@@ -1,17 +1,43 @@
 package org.MAGd.rPGInventory.commands;
 
 import org.MAGd.rPGInventory.RPGInventory;
+import org.MAGd.rPGInventory.database.DatabaseManager;
+import org.MAGd.rPGInventory.database.ItemCodecBenchmark;
+import org.MAGd.rPGInventory.database.ItemCodecRegistry;
+import org.MAGd.rPGInventory.database.LoadoutArchive;
+import org.MAGd.rPGInventory.database.SaveQueue;
+import org.MAGd.rPGInventory.database.StorageBenchmark;
+import org.MAGd.rPGInventory.database.StorageExecutor;
 import org.MAGd.rPGInventory.gui.InventoryGUI;
 import org.MAGd.rPGInventory.listeners.TotemEffectListener;
+import org.MAGd.rPGInventory.utils.ItemBuilder;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 public class RPGInventoryCommand implements CommandExecutor {
 
     private final RPGInventory plugin;
+    // 同一時間只允許一個導出或導入任務
+    private final AtomicBoolean archiveRunning = new AtomicBoolean();
 
     public RPGInventoryCommand(RPGInventory plugin) {
         this.plugin = plugin;
@@ -64,6 +90,298 @@ public class RPGInventoryCommand implements CommandExecutor {
                 }
                 return true;
 
+            case "stats":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                SaveQueue saveQueue = plugin.getSaveQueue();
+                if (saveQueue == null) {
+                    sender.sendMessage("§c[RPGInventory] 保存隊列尚未啟動。");
+                    return true;
+                }
+
+                sender.sendMessage("§6========== RPGInventory 存儲統計 ==========");
+                for (String line : saveQueue.getStatsLines()) {
+                    sender.sendMessage(line);
+                }
+                if (plugin.getPrefetchCache() != null) {
+                    sender.sendMessage(plugin.getPrefetchCache().getStatsLine());
+                }
+                for (String line : plugin.getDatabaseManager().getStorageExecutor().getStatsLines()) {
+                    sender.sendMessage(line);
+                }
+                for (String line : plugin.getDatabaseManager().getStatsLines()) {
+                    sender.sendMessage(line);
+                }
+                return true;
+
+            case "pool":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                List<String> poolLines = plugin.getDatabaseManager().getPoolStatsLines();
+                if (poolLines.isEmpty()) {
+                    sender.sendMessage("§c[RPGInventory] 當前的存儲後端沒有連接池。");
+                    return true;
+                }
+
+                sender.sendMessage("§6========== RPGInventory 連接池統計 ==========");
+                for (String line : poolLines) {
+                    sender.sendMessage(line);
+                }
+                return true;
+
+            case "migrations":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                List<String> migrationLines = plugin.getDatabaseManager().getMigrationStatusLines();
+                if (migrationLines.isEmpty()) {
+                    sender.sendMessage("§c[RPGInventory] 當前的存儲後端沒有結構遷移。");
+                    return true;
+                }
+
+                sender.sendMessage("§6========== RPGInventory 數據庫遷移 ==========");
+                for (String line : migrationLines) {
+                    sender.sendMessage(line);
+                }
+                return true;
+
+            case "dict":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                DatabaseManager dictManager = plugin.getDatabaseManager();
+                ItemCodecRegistry dictCodecs = getItemCodecs();
+                if (dictCodecs == null) {
+                    sender.sendMessage("§c[RPGInventory] 數據庫尚未初始化。");
+                    return true;
+                }
+
+                if (args.length < 2 || !args[1].equalsIgnoreCase("train")) {
+                    sender.sendMessage(dictCodecs.getStatusLine());
+                    sender.sendMessage("§7使用 /rpginv dict train [樣本數] 從現有數據訓練新字典");
+                    return true;
+                }
+
+                if (!dictCodecs.isCompressionEnabled()) {
+                    sender.sendMessage("§c[RPGInventory] 壓縮未開啟 (database.compression.enabled)。");
+                    return true;
+                }
+
+                int sampleLimit = 5000;
+                if (args.length > 2) {
+                    try {
+                        sampleLimit = Math.max(1, Integer.parseInt(args[2]));
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§c[RPGInventory] 樣本數必須是整數。");
+                        return true;
+                    }
+                }
+
+                int finalSampleLimit = sampleLimit;
+                boolean submitted = dictManager.getStorageExecutor().submit(StorageExecutor.Priority.MAINTENANCE, () -> {
+                    List<String> result = dictManager.trainDictionaries(finalSampleLimit);
+                    Bukkit.getScheduler().runTask(plugin, () -> {
+                        sender.sendMessage("§6========== 物品壓縮字典 ==========");
+                        for (String line : result) {
+                            sender.sendMessage(line);
+                        }
+                    });
+                });
+                sender.sendMessage(submitted
+                        ? "§6[RPGInventory] §a正在後台訓練物品壓縮字典..."
+                        : "§c[RPGInventory] 存儲線程池繁忙，請稍後再試。");
+                return true;
+
+            case "benchmark":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                if (getItemCodecs() == null) {
+                    sender.sendMessage("§c[RPGInventory] 數據庫尚未初始化。");
+                    return true;
+                }
+
+                if (args.length > 1 && args[1].equalsIgnoreCase("startup")) {
+                    int players = 1000000;
+                    if (args.length > 2) {
+                        try {
+                            players = Math.max(1000, Math.min(5000000, Integer.parseInt(args[2])));
+                        } catch (NumberFormatException e) {
+                            sender.sendMessage("§c[RPGInventory] 玩家數必須是整數。");
+                            return true;
+                        }
+                    }
+
+                    StorageBenchmark startupBenchmark = new StorageBenchmark(plugin, collectBenchmarkSamples(sender), 0);
+                    int finalPlayers = players;
+                    sender.sendMessage(runMaintenance(sender, "存儲啟動基準測試", () -> startupBenchmark.runStartup(finalPlayers))
+                            ? "§6[RPGInventory] §a正在後台寫入 " + players + " 名玩家並測試啟動時間，可能需要數分鐘..."
+                            : "§c[RPGInventory] 存儲線程池繁忙，請稍後再試。");
+                    return true;
+                }
+
+                if (args.length > 1 && args[1].equalsIgnoreCase("storage")) {
+                    int seconds = 10;
+                    if (args.length > 2) {
+                        try {
+                            seconds = Math.max(1, Math.min(60, Integer.parseInt(args[2])));
+                        } catch (NumberFormatException e) {
+                            sender.sendMessage("§c[RPGInventory] 秒數必須是整數。");
+                            return true;
+                        }
+                    }
+                    
+                    StorageBenchmark storageBenchmark = new StorageBenchmark(plugin, collectBenchmarkSamples(sender), seconds);
+                    sender.sendMessage(runMaintenance(sender, "存儲基準測試", storageBenchmark::run)
+                            ? "§6[RPGInventory] §a正在後台執行存儲基準測試，約需 " + (seconds * 5) + " 秒..."
+                            : "§c[RPGInventory] 存儲線程池繁忙，請稍後再試。");
+                    return true;
+                }
+
+                int iterations = 1000;
+                if (args.length > 1) {
+                    try {
+                        iterations = Math.max(1, Math.min(100000, Integer.parseInt(args[1])));
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§c[RPGInventory] 次數必須是整數。");
+                        return true;
+                    }
+                }
+
+                ItemCodecBenchmark benchmark = new ItemCodecBenchmark(
+                        getItemCodecs(),
+                        collectBenchmarkSamples(sender), iterations);
+                sender.sendMessage(runMaintenance(sender, "物品編解碼器基準測試", benchmark::run)
+                        ? "§6[RPGInventory] §a正在後台執行編解碼器基準測試..."
+                        : "§c[RPGInventory] 存儲線程池繁忙，請稍後再試。");
+                return true;
+
+            case "export":
+            case "import":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                DatabaseManager archiveManager = plugin.getDatabaseManager();
+                ItemCodecRegistry archiveCodecs = getItemCodecs();
+                if (archiveManager == null || archiveCodecs == null) {
+                    sender.sendMessage("§c[RPGInventory] 數據庫尚未初始化。");
+                    return true;
+                }
+
+                boolean exporting = subCommand.equals("export");
+                String archiveName;
+                if (args.length > 1) {
+                    archiveName = args[1];
+                } else if (exporting) {
+                    archiveName = "loadouts-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+                } else {
+                    sender.sendMessage("§c[RPGInventory] 用法: /rpginv import <文件名> (存檔位於 exports 目錄中)");
+                    return true;
+                }
+                if (!archiveName.matches("[A-Za-z0-9_.-]+")) {
+                    sender.sendMessage("§c[RPGInventory] 文件名只能包含字母、數字、點、下劃線與連字符。");
+                    return true;
+                }
+                if (!archiveName.endsWith(LoadoutArchive.EXTENSION)) {
+                    archiveName += LoadoutArchive.EXTENSION;
+                }
+
+                File archiveFile = new File(new File(plugin.getDataFolder(), "exports"), archiveName);
+                if (exporting && archiveFile.exists()) {
+                    sender.sendMessage("§c[RPGInventory] 存檔 " + archiveName + " 已存在，請使用其他文件名。");
+                    return true;
+                }
+                if (!exporting && !archiveFile.isFile()) {
+                    sender.sendMessage("§c[RPGInventory] 找不到存檔 " + archiveName + "。");
+                    return true;
+                }
+                if (!archiveRunning.compareAndSet(false, true)) {
+                    sender.sendMessage("§c[RPGInventory] 已有導出或導入任務正在執行，請稍後再試。");
+                    return true;
+                }
+                archiveFile.getParentFile().mkdirs();
+
+                LoadoutArchive archive = new LoadoutArchive(plugin, archiveCodecs);
+                boolean archiveSubmitted = runMaintenance(sender, "物品欄存檔", () -> {
+                    try {
+                        return exporting
+                                ? archive.export(archiveManager, archiveFile)
+                                : archive.importFrom(archiveFile, archiveManager);
+                    } catch (IOException e) {
+                        plugin.getLogger().log(Level.SEVERE, (exporting ? "導出" : "導入") + "物品欄存檔失敗: " + e.getMessage(), e);
+                        return Collections.singletonList("§c" + (exporting ? "導出" : "導入") + "失敗: " + e.getMessage());
+                    } finally {
+                        archiveRunning.set(false);
+                    }
+                });
+                if (!archiveSubmitted) {
+                    archiveRunning.set(false);
+                    sender.sendMessage("§c[RPGInventory] 存儲線程池繁忙，請稍後再試。");
+                } else if (exporting) {
+                    sender.sendMessage("§6[RPGInventory] §a正在後台導出所有玩家的物品欄到 " + archiveName + "...");
+                } else {
+                    sender.sendMessage("§6[RPGInventory] §a正在後台從 " + archiveName + " 導入物品欄...");
+                    sender.sendMessage("§7存檔中的玩家會覆蓋現有數據；在線玩家的物品欄會在下次保存時覆蓋導入的數據，建議在沒有玩家在線時執行。");
+                }
+                return true;
+
+            case "delete":
+                if (!sender.hasPermission("rpginventory.admin")) {
+                    sender.sendMessage("§c[RPGInventory] 你沒有權限使用此命令!");
+                    return true;
+                }
+
+                DatabaseManager deleteManager = plugin.getDatabaseManager();
+                SaveQueue deleteQueue = plugin.getSaveQueue();
+                if (deleteManager == null || deleteQueue == null) {
+                    sender.sendMessage("§c[RPGInventory] 數據庫尚未初始化。");
+                    return true;
+                }
+                if (args.length < 2) {
+                    sender.sendMessage("§c[RPGInventory] 用法: /rpginv delete <玩家名|UUID>");
+                    return true;
+                }
+
+                UUID targetUUID = findPlayerUUID(args[1]);
+                if (targetUUID == null) {
+                    sender.sendMessage("§c[RPGInventory] 找不到玩家 " + args[1] + "。");
+                    return true;
+                }
+                // 在線玩家的物品欄會在下次保存時重新寫入，隊列中未寫入的快照也會覆蓋刪除
+                if (Bukkit.getPlayer(targetUUID) != null) {
+                    sender.sendMessage("§c[RPGInventory] 玩家仍在線，請在玩家離線後再刪除。");
+                    return true;
+                }
+                if (deleteQueue.getUnsavedSnapshot(targetUUID) != null) {
+                    sender.sendMessage("§c[RPGInventory] 玩家還有尚未寫入數據庫的物品欄數據，請稍後再試。");
+                    return true;
+                }
+
+                String targetName = args[1];
+                deleteManager.deleteAsync(targetUUID).whenCompleteAsync((deleted, error) -> {
+                    if (Boolean.TRUE.equals(deleted)) {
+                        sender.sendMessage("§6[RPGInventory] §a已刪除玩家 " + targetName + " 的物品欄數據。");
+                    } else {
+                        sender.sendMessage("§c[RPGInventory] 刪除玩家 " + targetName + " 的物品欄數據失敗" +
+                                (error != null ? ": " + error.getMessage() : "，詳情請查看日誌。"));
+                    }
+                }, deleteManager.getStorageExecutor().mainThread());
+                return true;
+
             default:
                 if (sender instanceof Player) {
                     sendHelpMessage((Player) sender);
@@ -74,11 +392,106 @@ public class RPGInventoryCommand implements CommandExecutor {
         }
     }
 
+    /**
+     * 獲取當前存儲後端使用的物品編解碼器
+     * @return 物品編解碼器，數據庫尚未初始化時為 null
+     */
+    /**
+     * 在存儲線程池中以維護優先級執行耗時的管理任務，完成後回到主線程把結果發送給執行者
+     * @param sender 命令執行者
+     * @param title 結果標題
+     * @param task 返回結果行的任務
+     * @return 是否已提交；隊列已滿時返回 false
+     */
+    private boolean runMaintenance(CommandSender sender, String title, Supplier<List<String>> task) {
+        return plugin.getDatabaseManager().getStorageExecutor().submit(StorageExecutor.Priority.MAINTENANCE, () -> {
+            List<String> lines = task.get();
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                sender.sendMessage("§6========== " + title + " ==========");
+                for (String line : lines) {
+                    sender.sendMessage(line);
+                }
+            });
+        });
+    }
+
+    private ItemCodecRegistry getItemCodecs() {
+        DatabaseManager manager = plugin.getDatabaseManager();
+        return manager != null ? manager.getItemCodecs() : null;
+    }
+
+    /**
+     * 按玩家名（曾經進入過伺服器）或 UUID 查找玩家
+     * @param nameOrUUID 玩家名或 UUID
+     * @return 玩家UUID，找不到時為 null
+     */
+    private UUID findPlayerUUID(String nameOrUUID) {
+        try {
+            return UUID.fromString(nameOrUUID);
+        } catch (IllegalArgumentException ignored) {
+            // 不是 UUID，按玩家名查找
+        }
+        Player online = Bukkit.getPlayerExact(nameOrUUID);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+        for (OfflinePlayer offline : Bukkit.getOfflinePlayers()) {
+            if (nameOrUUID.equalsIgnoreCase(offline.getName())) {
+                return offline.getUniqueId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 收集基準測試用的物品：優先使用執行者背包中的物品，其次是在線玩家的物品，都沒有時使用示例物品
+     * @param sender 命令執行者
+     * @return 物品副本
+     */
+    private List<ItemStack> collectBenchmarkSamples(CommandSender sender) {
+        List<ItemStack> samples = new ArrayList<>();
+        if (sender instanceof Player) {
+            addSamples(samples, ((Player) sender).getInventory().getContents());
+        }
+        if (samples.isEmpty()) {
+            for (Player online : Bukkit.getOnlinePlayers()) {
+                addSamples(samples, online.getInventory().getContents());
+                if (samples.size() >= 64) {
+                    break;
+                }
+            }
+        }
+        if (samples.isEmpty()) {
+            samples.add(new ItemBuilder(Material.TOTEM_OF_UNDYING).setName("§6測試圖騰").setLore("§7第一行說明", "§7第二行說明").build());
+            samples.add(new ItemBuilder(Material.NETHER_STAR).setName("§b測試飾品").build());
+            samples.add(new ItemStack(Material.PAPER, 16));
+        }
+        return samples;
+    }
+
+    private void addSamples(List<ItemStack> samples, ItemStack[] contents) {
+        for (ItemStack item : contents) {
+            if (item != null && !item.getType().isAir()) {
+                samples.add(item.clone());
+            }
+        }
+    }
+
     private void sendHelpMessage(Player player) {
         player.sendMessage("§6========== RPGInventory 幫助 ==========");
         player.sendMessage("§e/rpginv open §7- 打開你的RPG物品欄。");
         if (player.hasPermission("rpginventory.admin")) {
             player.sendMessage("§e/rpginv debug §7- 切換你個人的調試訊息顯示。 (管理員)");
+            player.sendMessage("§e/rpginv stats §7- 查看數據保存隊列統計。 (管理員)");
+            player.sendMessage("§e/rpginv pool §7- 查看數據庫連接池統計。 (管理員)");
+            player.sendMessage("§e/rpginv migrations §7- 查看數據庫結構遷移進度。 (管理員)");
+            player.sendMessage("§e/rpginv benchmark [次數] §7- 測試物品編解碼器的速度與大小。 (管理員)");
+            player.sendMessage("§e/rpginv benchmark storage [秒數] §7- 比較 SQLite、分片 SQLite、日誌結構存儲與 H2 (MySQL 模式) 的讀寫吞吐量。 (管理員)");
+            player.sendMessage("§e/rpginv benchmark startup [玩家數] §7- 比較大量玩家時的寫入速度與啟動時間。 (管理員)");
+            player.sendMessage("§e/rpginv dict train [樣本數] §7- 從現有數據訓練物品壓縮字典。 (管理員)");
+            player.sendMessage("§e/rpginv export [文件名] §7- 把所有玩家的物品欄導出為存檔。 (管理員)");
+            player.sendMessage("§e/rpginv import <文件名> §7- 從存檔導入物品欄到當前數據庫。 (管理員)");
+            player.sendMessage("§e/rpginv delete <玩家名|UUID> §7- 刪除離線玩家的所有物品欄數據。 (管理員)");
         }
         player.sendMessage("§6====================================");
     }
@@ -86,6 +499,16 @@ public class RPGInventoryCommand implements CommandExecutor {
     private void sendHelpMessageToConsole(CommandSender sender) {
         sender.sendMessage("§6========== RPGInventory 幫助 (控制台) ==========");
         sender.sendMessage("§e/rpginv debug §7- 切換控制台後台詳細日誌的顯示。 (管理員)");
+        sender.sendMessage("§e/rpginv stats §7- 查看數據保存隊列統計。 (管理員)");
+        sender.sendMessage("§e/rpginv pool §7- 查看數據庫連接池統計。 (管理員)");
+        sender.sendMessage("§e/rpginv migrations §7- 查看數據庫結構遷移進度。 (管理員)");
+        sender.sendMessage("§e/rpginv benchmark [次數] §7- 測試物品編解碼器的速度與大小。 (管理員)");
+        sender.sendMessage("§e/rpginv benchmark storage [秒數] §7- 比較 SQLite、分片 SQLite、日誌結構存儲與 H2 (MySQL 模式) 的讀寫吞吐量。 (管理員)");
+        sender.sendMessage("§e/rpginv benchmark startup [玩家數] §7- 比較大量玩家時的寫入速度與啟動時間。 (管理員)");
+        sender.sendMessage("§e/rpginv dict train [樣本數] §7- 從現有數據訓練物品壓縮字典。 (管理員)");
+        sender.sendMessage("§e/rpginv export [文件名] §7- 把所有玩家的物品欄導出為存檔。 (管理員)");
+        sender.sendMessage("§e/rpginv import <文件名> §7- 從存檔導入物品欄到當前數據庫。 (管理員)");
+        sender.sendMessage("§e/rpginv delete <玩家名|UUID> §7- 刪除離線玩家的所有物品欄數據。 (管理員)");
         sender.sendMessage("§7 (玩家使用 /rpginv open 打開物品欄)");
         sender.sendMessage("§6==============================================");
     }
@@ -1,22 +1,42 @@
 package org.MAGd.rPGInventory.database;
 
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 /**
@@ -27,17 +47,84 @@ public abstract class AbstractDatabaseManager implements DatabaseManager {
     protected final RPGInventory plugin;
     protected HikariDataSource dataSource;
     
-    // 重試嘗試次數
-    protected static final int MAX_RETRY_ATTEMPTS = 3;
-    // 重試延遲時間（毫秒）
-    protected static final long RETRY_DELAY_MS = 500;
+    // 批量加載時每條查詢最多包含的玩家數
+    private static final int MAX_PROFILES_PER_QUERY = 500;
+    // 遍歷玩家時每次查詢讀取的主鍵數
+    private static final int PLAYER_SCAN_PAGE = 1000;
+    // 合併查詢中飾品行的 slot_id
+    private static final int ORNAMENT_ROW = -1;
+    
+    // 最後一次寫入（或加載）的序列化數據，用於只寫入有變更的槽位；超出容量時淘汰最久未使用的玩家
+    private final Map<UUID, PersistedState> persistedStates;
+    
+    // 舊版文本 UUID 主鍵數據表改名後的後綴
+    static final String LEGACY_SUFFIX = "_v1";
+    // 仍有舊版數據表（表名 + LEGACY_SUFFIX）的數據表，其中的數據移入新表前讀取需要同時查詢舊表
+    private final Set<String> legacyTables = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean legacyCheckPending = new AtomicBoolean(false);
+    
+    // 是否以二進制（BLOB）格式寫入物品數據；為 false 時寫入舊版 Base64 文本格式
+    protected final boolean blobStorage;
+    // 數據庫結構遷移（包括將舊版 Base64 文本行轉換為 BLOB 的後台遷移）
+    private SchemaMigrator schemaMigrator;
+    // 物品編解碼器
+    protected final ItemCodecRegistry itemCodecs;
+    // 內容尋址去重與共享物品回收
+    protected final ItemDeduplicator deduplicator;
+    private ItemGarbageCollector itemCollector;
+    
+    // 斷路器：數據庫不可用時讓所有操作立即失敗，重試由調用方按退避重新調度
+    protected final CircuitBreaker circuitBreaker;
+    // 執行所有異步數據庫操作的線程池
+    protected final StorageExecutor storageExecutor;
+    // 線程池由此管理器創建（關閉時一併關閉）；分片存儲中由所有分片共用，由分片管理器關閉
+    private final boolean ownsStorageExecutor;
+    // 寫後保存隊列，設置後異步保存經過隊列與本地日誌
+    private volatile SaveQueue saveQueue;
+    
+    // 有保存數據的玩家的存在過濾器，未啟用時為 null；構建完成前所有查詢照常訪問數據庫
+    private PlayerExistenceFilter existenceFilter;
+    private volatile boolean existenceFilterReady;
+    private final AtomicLong filterSkippedCount = new AtomicLong();
+    private final AtomicLong filterFalsePositiveCount = new AtomicLong();
+    
+    // 因數據庫中已有更新版本而被拒絕的過期快照數
+    private final AtomicLong versionConflictCount = new AtomicLong();
+    // 沿用已寫入數據、跳過序列化的未變更槽位數
+    private final AtomicLong reusedSlotCount = new AtomicLong();
+    
+    // 各連接池獲取連接的耗時統計（連接池名稱 -> 統計）
+    private final Map<String, AcquireStats> acquireStats = new ConcurrentHashMap<>();
     
     /**
      * 構造函數
      * @param plugin 插件實例
      */
     public AbstractDatabaseManager(RPGInventory plugin) {
+        this(plugin, null);
+    }
+    
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param storageExecutor 共用的存儲線程池，為 null 時創建自己的線程池
+     */
+    protected AbstractDatabaseManager(RPGInventory plugin, StorageExecutor storageExecutor) {
         this.plugin = plugin;
+        this.blobStorage = !"text".equalsIgnoreCase(plugin.getConfig().getString("database.storage-format", "blob"));
+        this.itemCodecs = new ItemCodecRegistry(plugin);
+        this.deduplicator = new ItemDeduplicator(plugin);
+        this.circuitBreaker = new CircuitBreaker(plugin);
+        this.ownsStorageExecutor = storageExecutor == null;
+        this.storageExecutor = storageExecutor != null ? storageExecutor : new StorageExecutor(plugin);
+        
+        int cacheSize = Math.max(0, plugin.getConfig().getInt("database.diff-cache-size", 2000));
+        this.persistedStates = Collections.synchronizedMap(new LinkedHashMap<UUID, PersistedState>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, PersistedState> eldest) {
+                return size() > cacheSize;
+            }
+        });
     }
     
     /**
@@ -46,271 +133,1916 @@ public abstract class AbstractDatabaseManager implements DatabaseManager {
      * @throws SQLException SQL異常
      */
     protected Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        return acquire(dataSource);
     }
     
-    @Override
-    public void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            plugin.getLogger().info("已關閉數據庫連接池");
+    /**
+     * 從連接池獲取連接並記錄等待時間
+     * @param pool 連接池
+     * @return 數據庫連接
+     * @throws SQLException SQL異常（包括等待超時）
+     */
+    protected Connection acquire(HikariDataSource pool) throws SQLException {
+        AcquireStats stats = acquireStats.computeIfAbsent(pool.getPoolName(), name -> new AcquireStats());
+        long start = System.nanoTime();
+        try {
+            Connection conn = pool.getConnection();
+            stats.record(System.nanoTime() - start);
+            return conn;
+        } catch (SQLException e) {
+            stats.failures.increment();
+            throw e;
         }
     }
     
+    /**
+     * 獲取此管理器使用的所有連接池
+     * @return 連接池
+     */
+    protected List<HikariDataSource> getPools() {
+        return dataSource != null ? Collections.singletonList(dataSource) : Collections.emptyList();
+    }
+    
     @Override
-    public boolean saveInventory(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems) {
-        // 嘗試重試機制
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
-            try (Connection conn = getConnection()) {
-                // 開始事務
-                conn.setAutoCommit(false);
-                
-                try {
-                    // 處理飾品
-                    if (ornament != null) {
-                        saveOrnament(conn, playerUUID, ornament);
-                    } else {
-                        deleteOrnament(conn, playerUUID);
-                    }
-                    
-                    // 處理圖騰
-                    deleteTotems(conn, playerUUID);
-                    if (totems != null && !totems.isEmpty()) {
-                        saveTotems(conn, playerUUID, totems);
-                    }
-                    
-                    // 提交事務
-                    conn.commit();
-                    return true;
-                } catch (SQLException | IOException e) {
-                    // 回滾事務
-                    try {
-                        conn.rollback();
-                    } catch (SQLException rollbackEx) {
-                        plugin.getLogger().log(Level.SEVERE, "回滾事務失敗: " + rollbackEx.getMessage(), rollbackEx);
-                    }
-                    
-                    if (attempt == MAX_RETRY_ATTEMPTS) {
-                        plugin.getLogger().log(Level.SEVERE, "保存物品欄數據失敗 (嘗試 " + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage(), e);
-                        return false;
-                    } else {
-                        plugin.getLogger().log(Level.WARNING, "保存物品欄數據失敗，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                        try {
-                            Thread.sleep(RETRY_DELAY_MS);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }
-                } finally {
-                    try {
-                        conn.setAutoCommit(true);
-                    } catch (SQLException e) {
-                        plugin.getLogger().log(Level.WARNING, "重置自動提交失敗: " + e.getMessage(), e);
-                    }
+    public List<String> getPoolStatsLines() {
+        List<String> lines = new ArrayList<>();
+        for (HikariDataSource pool : getPools()) {
+            HikariPoolMXBean bean = pool.isClosed() ? null : pool.getHikariPoolMXBean();
+            if (bean == null) {
+                lines.add("§e" + pool.getPoolName() + ": §c已關閉");
+                continue;
+            }
+            lines.add(String.format("§e%s: §f使用中 %d §7| §f空閒 %d §7| §f總數 %d/%d §7| §e等待線程: §f%d",
+                    pool.getPoolName(), bean.getActiveConnections(), bean.getIdleConnections(),
+                    bean.getTotalConnections(), pool.getMaximumPoolSize(), bean.getThreadsAwaitingConnection()));
+            AcquireStats stats = acquireStats.get(pool.getPoolName());
+            if (stats != null) {
+                long count = stats.count.sum();
+                lines.add(String.format("§e  獲取連接: §f%d 次 §7| §e平均: §f%.3f ms §7| §e最長: §f%.1f ms §7| §e超時/失敗: §f%d",
+                        count, count == 0 ? 0.0 : stats.totalNanos.sum() / 1_000_000.0 / count,
+                        stats.maxNanos.get() / 1_000_000.0, stats.failures.sum()));
+            }
+        }
+        return lines;
+    }
+    
+    /**
+     * 獲取只用於讀取的數據庫連接，默認與寫入共用連接池
+     * @return 數據庫連接
+     * @throws SQLException SQL異常
+     */
+    protected Connection getReadConnection() throws SQLException {
+        return getConnection();
+    }
+    
+    /**
+     * 獲取存放二進制物品數據的列類型
+     * @return 列類型
+     */
+    protected abstract String getBlobColumnType();
+    
+    /**
+     * 獲取存放物品哈希的列類型
+     * @return 列類型
+     */
+    protected abstract String getHashColumnType();
+    
+    /**
+     * 為舊版數據表補上 item_blob（v2 存儲格式）與 item_hash（去重）列及索引
+     * @param conn 數據庫連接
+     * @throws SQLException SQL異常
+     */
+    protected void ensureItemColumns(Connection conn) throws SQLException {
+        for (String table : new String[]{"ornaments", "totems"}) {
+            ensureColumn(conn, table, "item_blob", getBlobColumnType());
+            ensureColumn(conn, table, "item_hash", getHashColumnType());
+            ensureIndex(conn, table, "idx_" + table + "_item_hash", "item_hash");
+        }
+    }
+    
+    /**
+     * 數據表缺少指定列時添加該列（允許為 NULL）
+     * @param conn 數據庫連接
+     * @param table 表名
+     * @param column 列名
+     * @param type 列類型
+     * @throws SQLException SQL異常
+     */
+    protected void ensureColumn(Connection conn, String table, String column, String type) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, table, null)) {
+            while (columns.next()) {
+                if (column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                    return;
                 }
-            } catch (SQLException e) {
-                if (attempt == MAX_RETRY_ATTEMPTS) {
-                    plugin.getLogger().log(Level.SEVERE, "無法獲取數據庫連接 (嘗試 " + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage(), e);
-                    return false;
-                } else {
-                    plugin.getLogger().log(Level.WARNING, "無法獲取數據庫連接，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
+            }
+        }
+        
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type + " NULL");
+        }
+        plugin.getLogger().info("已為數據表 " + table + " 添加 " + column + " 列");
+    }
+    
+    /**
+     * 數據表缺少指定索引時創建該索引
+     * @param conn 數據庫連接
+     * @param table 表名
+     * @param index 索引名
+     * @param column 列名
+     * @throws SQLException SQL異常
+     */
+    protected void ensureIndex(Connection conn, String table, String index, String column) throws SQLException {
+        try (ResultSet indexes = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (indexes.next()) {
+                if (index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                    return;
                 }
             }
         }
         
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + column + ")");
+        }
+        plugin.getLogger().info("已為數據表 " + table + " 創建索引 " + index);
+    }
+    
+    /**
+     * 獲取創建飾品表的 SQL（二進制 UUID 主鍵）
+     * @param table 表名
+     * @return SQL 語句
+     */
+    protected abstract String getCreateOrnamentsSql(String table);
+    
+    /**
+     * 獲取創建圖騰表的 SQL（以 player_uuid、slot_id 為聚簇主鍵）
+     * @param table 表名
+     * @return SQL 語句
+     */
+    protected abstract String getCreateTotemsSql(String table);
+    
+    /**
+     * 把以文本 UUID 為主鍵的舊版數據表改名為 {@code table + LEGACY_SUFFIX}（只修改元數據，不複製數據）
+     * @param conn 數據庫連接
+     * @param table 原表名
+     * @throws SQLException SQL異常
+     */
+    protected void renameLegacyTable(Connection conn, String table) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + table + " RENAME TO " + table + LEGACY_SUFFIX);
+            // SQLite 的索引名在整個數據庫中唯一，改名後的表仍佔用原索引名，新表需要重新創建
+            statement.executeUpdate("DROP INDEX IF EXISTS idx_" + table + "_item_hash");
+        }
+    }
+    
+    /**
+     * 獲取忽略主鍵衝突的 INSERT 語句開頭（後接列名與 SELECT），用於把舊版數據移入新表時保留新表中已有的行
+     * @param table 表名
+     * @return SQL 片段
+     */
+    protected abstract String getInsertIgnorePrefix(String table);
+    
+    /**
+     * 獲取鎖定讀取的行的 SQL 後綴（如 " FOR UPDATE"），寫入事務本身已串行化的數據庫返回空字符串
+     * @return SQL 後綴
+     */
+    protected String getLockingReadSuffix() {
+        return "";
+    }
+    
+    /**
+     * 把以 VARCHAR(36) 文本 UUID 為鍵的舊版數據表改名保留，並創建二進制 UUID 主鍵的新表（v2 表結構）
+     * <p>
+     * 只修改元數據，不在啟動時複製數據。之後所有寫入只進入新表，舊表中的數據由後台遷移 {@link BinaryKeyMigrator}
+     * 逐批移入新表（玩家保存時也會先在同一個事務中移入該玩家的舊數據）；移入完成前讀取同時查詢新舊兩張表，
+     * 因此與其他伺服器共用數據庫時，遷移期間的寫入不會寫進之後被刪除的表。
+     * @param conn 數據庫連接
+     * @throws SQLException SQL異常
+     */
+    protected void renameLegacyTables(Connection conn) throws SQLException {
+        boolean renamed = false;
+        for (String table : new String[]{"ornaments", "totems"}) {
+            if (hasTextKeys(conn, table)) {
+                renameLegacyTable(conn, table);
+                renamed = true;
+                plugin.getLogger().info("數據表 " + table + " 仍以文本 UUID 為主鍵，已改名為 " + table + LEGACY_SUFFIX + "，數據將在後台逐批移入新表");
+            }
+        }
+        if (renamed) {
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate(getCreateOrnamentsSql("ornaments"));
+                statement.executeUpdate(getCreateTotemsSql("totems"));
+            }
+            // 新表需要重新添加 item_hash 索引
+            ensureItemColumns(conn);
+        }
+    }
+    
+    /**
+     * 檢查數據表的 player_uuid 列是否仍是文本類型
+     * @param conn 數據庫連接
+     * @param table 表名
+     * @return 是否為舊版表結構
+     * @throws SQLException SQL異常
+     */
+    private boolean hasTextKeys(Connection conn, String table) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, table, null)) {
+            while (columns.next()) {
+                if (table.equalsIgnoreCase(columns.getString("TABLE_NAME")) &&
+                        "player_uuid".equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                    String type = String.valueOf(columns.getString("TYPE_NAME")).toUpperCase();
+                    return type.contains("CHAR") || type.contains("TEXT");
+                }
+            }
+        }
         return false;
     }
     
     /**
-     * 保存飾品
+     * 檢查數據表是否存在
      * @param conn 數據庫連接
-     * @param playerUUID 玩家UUID
-     * @param ornament 飾品
+     * @param table 表名
+     * @return 是否存在
      * @throws SQLException SQL異常
-     * @throws IOException IO異常
      */
-    public abstract void saveOrnament(Connection conn, UUID playerUUID, ItemStack ornament) throws SQLException, IOException;
+    protected boolean tableExists(Connection conn, String table) throws SQLException {
+        try (ResultSet tables = conn.getMetaData().getTables(conn.getCatalog(), null, table, null)) {
+            while (tables.next()) {
+                if (table.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
     
     /**
-     * 刪除飾品
+     * 重新檢查哪些數據表仍有未移入新表的舊版數據表
      * @param conn 數據庫連接
-     * @param playerUUID 玩家UUID
      * @throws SQLException SQL異常
      */
-    public abstract void deleteOrnament(Connection conn, UUID playerUUID) throws SQLException;
+    private void detectLegacyTables(Connection conn) throws SQLException {
+        for (String table : new String[]{"ornaments", "totems"}) {
+            if (tableExists(conn, table + LEGACY_SUFFIX)) {
+                legacyTables.add(table);
+            } else {
+                legacyTables.remove(table);
+            }
+        }
+    }
+    
+    /**
+     * 其他伺服器可能已完成遷移並刪除了舊表，在存儲線程池中重新檢查（數據庫操作失敗時調用）
+     */
+    private void scheduleLegacyTableCheck() {
+        if (legacyTables.isEmpty() || !isSharedStorage() || !legacyCheckPending.compareAndSet(false, true)) {
+            return;
+        }
+        storageExecutor.submit(StorageExecutor.Priority.MAINTENANCE, () -> {
+            try (Connection conn = getReadConnection()) {
+                detectLegacyTables(conn);
+            } catch (SQLException e) {
+                plugin.getLogger().warning("檢查舊版數據表失敗: " + e.getMessage());
+            } finally {
+                legacyCheckPending.set(false);
+            }
+        });
+    }
+    
+    /**
+     * 是否仍有舊版（文本 UUID 主鍵）數據表；此時共享物品的回收會暫停，避免回收只被舊表引用的物品
+     * @return 是否有舊版數據表
+     */
+    boolean hasLegacyTables() {
+        return !legacyTables.isEmpty();
+    }
+    
+    /**
+     * 指定數據表的舊版數據是否尚未全部移入新表
+     * @param table 表名（ornaments 或 totems）
+     * @return 是否仍有舊版數據表
+     */
+    boolean isLegacyTable(String table) {
+        return legacyTables.contains(table);
+    }
     
     /**
-     * 刪除圖騰
+     * 舊版數據表中的數據已全部移入新表，刪除該表
      * @param conn 數據庫連接
-     * @param playerUUID 玩家UUID
+     * @param table 表名（ornaments 或 totems）
      * @throws SQLException SQL異常
      */
-    public abstract void deleteTotems(Connection conn, UUID playerUUID) throws SQLException;
+    void dropLegacyTable(Connection conn, String table) throws SQLException {
+        legacyTables.remove(table);
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS " + table + LEGACY_SUFFIX);
+        }
+    }
     
     /**
-     * 保存圖騰
+     * 把玩家在舊版數據表中的行移入新表（新表中已有的行較新，保持不變），在調用方的事務中執行
      * @param conn 數據庫連接
-     * @param playerUUID 玩家UUID
-     * @param totems 圖騰
+     * @param playerUUIDs 玩家UUID
      * @throws SQLException SQL異常
-     * @throws IOException IO異常
      */
-    public abstract void saveTotems(Connection conn, UUID playerUUID, Map<Integer, ItemStack> totems) throws SQLException, IOException;
+    private void moveLegacyRows(Connection conn, Collection<UUID> playerUUIDs) throws SQLException {
+        if (legacyTables.isEmpty() || playerUUIDs.isEmpty()) {
+            return;
+        }
+        Map<String, UUID> keys = new LinkedHashMap<>();
+        for (UUID playerUUID : playerUUIDs) {
+            keys.put(playerUUID.toString(), playerUUID);
+        }
+        for (String table : new String[]{"ornaments", "totems"}) {
+            if (legacyTables.contains(table)) {
+                moveLegacyRows(conn, table, keys);
+            }
+        }
+    }
     
-    @Override
-    public ItemStack loadOrnament(UUID playerUUID) {
-        String sql = "SELECT item_data FROM ornaments WHERE player_uuid = ?";
-        
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
-            try (Connection conn = getConnection();
-                 PreparedStatement statement = conn.prepareStatement(sql)) {
-                statement.setString(1, playerUUID.toString());
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        String serializedItem = resultSet.getString("item_data");
-                        return deserializeItemStack(serializedItem);
-                    }
-                    return null;
-                } catch (IOException | ClassNotFoundException e) {
-                    if (attempt == MAX_RETRY_ATTEMPTS) {
-                        plugin.getLogger().log(Level.SEVERE, "加載飾品數據失敗: " + e.getMessage(), e);
-                    } else {
-                        plugin.getLogger().log(Level.WARNING, "加載飾品數據失敗，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                        try {
-                            Thread.sleep(RETRY_DELAY_MS);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
+    /**
+     * 把舊版數據表中指定主鍵的行移入新表，在調用方的事務中執行
+     * @param conn 數據庫連接
+     * @param table 表名（ornaments 或 totems）
+     * @param keys 舊表中的文本主鍵 -> 玩家UUID
+     * @return 從舊表中移出的行數
+     * @throws SQLException SQL異常
+     */
+    int moveLegacyRows(Connection conn, String table, Map<String, UUID> keys) throws SQLException {
+        String columns = "ornaments".equals(table) ? "item_data, item_blob, item_hash" : "slot_id, item_data, item_blob, item_hash";
+        String lockSuffix = getLockingReadSuffix();
+        if (!lockSuffix.isEmpty()) {
+            // 先鎖定舊表中的行：並發的移動（後台遷移與玩家寫入）等待對方提交後再讀取，
+            // 否則兩邊都讀到舊行，後提交的一方會把已被另一方覆蓋的舊數據重新移入新表
+            try (PreparedStatement lock = conn.prepareStatement("SELECT player_uuid FROM " + table + LEGACY_SUFFIX +
+                    " WHERE player_uuid = ?" + lockSuffix)) {
+                // 按主鍵順序加鎖，避免與其他批量移動互相死鎖
+                for (String key : new TreeSet<>(keys.keySet())) {
+                    lock.setString(1, key);
+                    try (ResultSet resultSet = lock.executeQuery()) {
+                        while (resultSet.next()) {
+                            // 只需要加鎖
                         }
-                        continue;
-                    }
-                }
-            } catch (SQLException e) {
-                if (attempt == MAX_RETRY_ATTEMPTS) {
-                    plugin.getLogger().log(Level.SEVERE, "加載飾品數據時數據庫錯誤: " + e.getMessage(), e);
-                } else {
-                    plugin.getLogger().log(Level.WARNING, "加載飾品數據時數據庫錯誤，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
                     }
-                    continue;
                 }
             }
         }
-        
-        return null;
+        int moved = 0;
+        try (PreparedStatement insert = conn.prepareStatement(getInsertIgnorePrefix(table) + " (player_uuid, " + columns + ") " +
+                     "SELECT ?, " + columns + " FROM " + table + LEGACY_SUFFIX + " WHERE player_uuid = ?");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM " + table + LEGACY_SUFFIX + " WHERE player_uuid = ?")) {
+            for (Map.Entry<String, UUID> entry : keys.entrySet()) {
+                insert.setBytes(1, uuidToBytes(entry.getValue()));
+                insert.setString(2, entry.getKey());
+                insert.addBatch();
+                delete.setString(1, entry.getKey());
+                delete.addBatch();
+            }
+            insert.executeBatch();
+            for (int count : delete.executeBatch()) {
+                moved += Math.max(0, count);
+            }
+        }
+        return moved;
     }
     
-    @Override
-    public Map<Integer, ItemStack> loadTotems(UUID playerUUID) {
-        Map<Integer, ItemStack> totems = new HashMap<>();
-        String sql = "SELECT slot_id, item_data FROM totems WHERE player_uuid = ?";
+    /**
+     * 將 UUID 轉換為 16 字節的二進制主鍵
+     * @param uuid UUID
+     * @return 16 字節數據
+     */
+    protected static byte[] uuidToBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+    
+    /**
+     * 從 16 字節的二進制主鍵還原 UUID
+     * @param bytes 16 字節數據
+     * @return UUID
+     */
+    protected static UUID uuidFromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    
+    /**
+     * 加載所有壓縮字典，最新的字典用於寫入
+     * @param conn 數據庫連接
+     * @throws SQLException SQL異常
+     */
+    protected void loadDictionaries(Connection conn) throws SQLException {
+        int latest = 0;
+        try (Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, dictionary FROM item_dictionaries ORDER BY id")) {
+            while (resultSet.next()) {
+                int id = resultSet.getInt("id");
+                itemCodecs.registerDictionary(id, resultSet.getBytes("dictionary"), false);
+                latest = id;
+            }
+        }
         
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
-            try (Connection conn = getConnection();
-                 PreparedStatement statement = conn.prepareStatement(sql)) {
-                statement.setString(1, playerUUID.toString());
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    while (resultSet.next()) {
-                        int slotId = resultSet.getInt("slot_id");
-                        String serializedItem = resultSet.getString("item_data");
-                        totems.put(slotId, deserializeItemStack(serializedItem));
-                    }
-                    return totems;
-                } catch (IOException | ClassNotFoundException e) {
-                    if (attempt == MAX_RETRY_ATTEMPTS) {
-                        plugin.getLogger().log(Level.SEVERE, "加載圖騰數據失敗: " + e.getMessage(), e);
-                    } else {
-                        plugin.getLogger().log(Level.WARNING, "加載圖騰數據失敗，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                        try {
-                            Thread.sleep(RETRY_DELAY_MS);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
+        if (latest > 0) {
+            itemCodecs.registerDictionary(latest, itemCodecs.getDictionary(latest), true);
+            plugin.getLogger().info("已加載 " + itemCodecs.getDictionaryCount() + " 個物品壓縮字典，當前使用字典 #" + latest);
+        }
+    }
+    
+    /**
+     * 從現有數據訓練新的壓縮字典並保存，之後的寫入會使用新字典（應在異步線程中調用）
+     * @param sampleLimit 每張表最多讀取的行數
+     * @return 多行結果文本
+     * @throws SQLException SQL異常
+     */
+    public List<String> trainDictionary(int sampleLimit) throws SQLException {
+        List<byte[]> samples = new ArrayList<>();
+        int failed = 0;
+        try (Connection conn = getReadConnection()) {
+            for (String table : new String[]{"totems", "ornaments"}) {
+                try (PreparedStatement statement = conn.prepareStatement(
+                        "SELECT t.item_data, t.item_blob, t.item_hash, i.data AS item_shared FROM " + table + " t " +
+                        "LEFT JOIN items i ON i.hash = t.item_hash LIMIT ?")) {
+                    statement.setInt(1, sampleLimit);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            try {
+                                // 以目前的寫入編解碼器重新編碼，使字典與將來寫入的數據一致
+                                samples.add(itemCodecs.encodeBody(deserializeItemStack(readItemData(resultSet))));
+                            } catch (IOException | IllegalArgumentException e) {
+                                failed++;
+                            }
                         }
-                        continue;
-                    }
-                }
-            } catch (SQLException e) {
-                if (attempt == MAX_RETRY_ATTEMPTS) {
-                    plugin.getLogger().log(Level.SEVERE, "加載圖騰數據時數據庫錯誤: " + e.getMessage(), e);
-                } else {
-                    plugin.getLogger().log(Level.WARNING, "加載圖騰數據時數據庫錯誤，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
                     }
-                    continue;
                 }
             }
         }
         
-        return totems;
+        List<String> lines = new ArrayList<>();
+        if (samples.isEmpty()) {
+            lines.add("§c沒有可用於訓練的物品數據");
+            return lines;
+        }
+        
+        int maxSize = plugin.getConfig().getInt("database.compression.dictionary-size", DictionaryTrainer.MAX_DICTIONARY_SIZE);
+        byte[] dictionary = new DictionaryTrainer(maxSize).train(samples);
+        
+        long rawSize = 0;
+        for (byte[] sample : samples) {
+            rawSize += sample.length;
+        }
+        long plainSize = DictionaryTrainer.compressedSize(samples, null);
+        long dictionarySize = DictionaryTrainer.compressedSize(samples, dictionary);
+        
+        int id;
+        try (Connection conn = getConnection()) {
+            try (Statement statement = conn.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM item_dictionaries")) {
+                id = resultSet.next() ? resultSet.getInt(1) + 1 : 1;
+            }
+            try (PreparedStatement statement = conn.prepareStatement(
+                    "INSERT INTO item_dictionaries (id, dictionary, created_at) VALUES (?, ?, ?)")) {
+                statement.setInt(1, id);
+                statement.setBytes(2, dictionary);
+                statement.setLong(3, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+        }
+        itemCodecs.registerDictionary(id, dictionary, true);
+        plugin.getLogger().info("已訓練物品壓縮字典 #" + id + " (" + dictionary.length + " 字節, " + samples.size() + " 個樣本)");
+        
+        lines.add("§e字典: §f#" + id + " §7(" + dictionary.length + " 字節)");
+        lines.add("§e樣本: §f" + samples.size() + " 個" + (failed > 0 ? " §7(無法讀取 " + failed + " 個)" : ""));
+        lines.add(String.format("§e原始大小: §f%d 字節 §7| §e無字典壓縮: §f%d 字節 (%.1f%%) §7| §e使用字典: §f%d 字節 (%.1f%%)",
+                rawSize, plainSize, plainSize * 100.0 / rawSize, dictionarySize, dictionarySize * 100.0 / rawSize));
+        lines.add("§7之後的寫入會使用新字典，舊數據在玩家下次保存時更新");
+        return lines;
     }
     
     @Override
-    public boolean hasData(UUID playerUUID) {
-        String sql = "SELECT player_uuid FROM ornaments WHERE player_uuid = ? " +
-                     "UNION SELECT player_uuid FROM totems WHERE player_uuid = ? LIMIT 1";
-        
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
-            try (Connection conn = getConnection();
-                 PreparedStatement statement = conn.prepareStatement(sql)) {
-                statement.setString(1, playerUUID.toString());
-                statement.setString(2, playerUUID.toString());
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    return resultSet.next();
-                }
-            } catch (SQLException e) {
-                if (attempt == MAX_RETRY_ATTEMPTS) {
-                    plugin.getLogger().log(Level.SEVERE, "檢查玩家數據失敗: " + e.getMessage(), e);
-                } else {
-                    plugin.getLogger().log(Level.WARNING, "檢查玩家數據失敗，正在重試 (" + attempt + "/" + MAX_RETRY_ATTEMPTS + "): " + e.getMessage());
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
-                    continue;
-                }
+    public List<String> trainDictionaries(int sampleLimit) {
+        try {
+            return trainDictionary(sampleLimit);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "訓練物品壓縮字典失敗: " + e.getMessage(), e);
+            return Collections.singletonList("§c訓練失敗: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 獲取按編號排序的結構遷移；子類可以在此基礎上追加方言專用的遷移
+     * <p>
+     * 舊版插件創建的數據庫沒有 schema_version 表，所有啟動遷移都會重新執行一次，因此必須是冪等的。
+     * @return 遷移列表
+     */
+    protected List<SchemaMigration> getMigrations() {
+        List<SchemaMigration> migrations = new ArrayList<>();
+        // 舊版數據表升級到 v2 存儲格式並添加去重列
+        migrations.add(SchemaMigration.startup(1, "物品數據 BLOB 與去重列", this::ensureItemColumns));
+        // 舊版文本 UUID 主鍵升級為二進制主鍵：#2 在啟動時把舊表改名，#3 在後台把數據逐批移入新表
+        migrations.add(SchemaMigration.startup(2, "舊版文本主鍵數據表改名", this::renameLegacyTables));
+        migrations.add(SchemaMigration.background(3, "二進制 UUID 主鍵", new BinaryKeyMigrator(plugin, this)));
+        // 在移入舊表數據之後轉換；使用文本格式時推遲，等切換到 blob 後再執行
+        migrations.add(SchemaMigration.background(4, "舊版文本數據轉換為 BLOB", new BlobMigrator(plugin, blobStorage)));
+        migrations.add(SchemaMigration.startup(5, "物品欄版本表", conn -> {
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate(getCreateLoadoutsSql());
             }
+        }));
+        return migrations;
+    }
+    
+    /**
+     * 執行尚未應用的啟動遷移（在初始化時調用）
+     * @param conn 數據庫連接
+     * @throws SQLException SQL異常
+     */
+    protected void migrateSchema(Connection conn) throws SQLException {
+        if (schemaMigrator == null) {
+            schemaMigrator = new SchemaMigrator(plugin, this, getMigrations());
         }
-        
-        return false;
+        schemaMigrator.migrate(conn);
+        detectLegacyTables(conn);
     }
     
     /**
-     * 序列化物品
-     * @param itemStack 物品
-     * @return 序列化後的字符串
-     * @throws IOException IO異常
+     * 啟動尚未完成的後台遷移
      */
-    protected String serializeItemStack(ItemStack itemStack) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try (BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream)) {
-            dataOutput.writeObject(itemStack);
+    protected void startBackgroundMigrations() {
+        if (schemaMigrator != null) {
+            schemaMigrator.startBackground();
         }
-        
-        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
     }
     
     /**
-     * 反序列化物品
-     * @param serializedItem 序列化後的字符串
-     * @return 物品
-     * @throws IOException IO異常
-     * @throws ClassNotFoundException 類未找到異常
+     * 獲取創建玩家物品欄版本表的 SQL
+     * @return SQL 語句
+     */
+    protected abstract String getCreateLoadoutsSql();
+    
+    /**
+     * 啟動共享物品的定期回收
+     */
+    protected void startItemCollector() {
+        if (itemCollector != null) {
+            return;
+        }
+        itemCollector = new ItemGarbageCollector(plugin, this, deduplicator.getGracePeriodMs());
+        itemCollector.start();
+    }
+    
+    /**
+     * 創建玩家存在過濾器，並在異步線程中掃描現有數據填充
+     * <p>
+     * 掃描期間保存的玩家同樣會被加入過濾器，掃描完成後才開始用於跳過查詢。
      */
-    protected ItemStack deserializeItemStack(String serializedItem) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64.getDecoder().decode(serializedItem));
-        try (BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream)) {
-            return (ItemStack) dataInput.readObject();
+    protected void startExistenceFilter() {
+        FileConfiguration config = plugin.getConfig();
+        String mode = config.getString("database.existence-filter.enabled", "auto");
+        boolean enabled = "auto".equalsIgnoreCase(mode) ? !isSharedStorage() : Boolean.parseBoolean(mode);
+        if (!enabled || existenceFilter != null) {
+            return;
+        }
+        
+        long expected = Math.max(1000, config.getLong("database.existence-filter.expected-players", 500000));
+        double rate = Math.max(0.0001, Math.min(0.5, config.getDouble("database.existence-filter.false-positive-rate", 0.01)));
+        existenceFilter = new PlayerExistenceFilter(expected, rate);
+        
+        storageExecutor.submit(StorageExecutor.Priority.MAINTENANCE, () -> {
+            long start = System.currentTimeMillis();
+            long rows = 0;
+            try (Connection conn = getReadConnection();
+                 Statement statement = conn.createStatement()) {
+                statement.setFetchSize(1000);
+                // 先掃描舊版數據表，掃描期間被移入新表的玩家之後會在新表中讀到
+                for (String table : new ArrayList<>(legacyTables)) {
+                    try (ResultSet resultSet = statement.executeQuery("SELECT player_uuid FROM " + table + LEGACY_SUFFIX)) {
+                        while (resultSet.next()) {
+                            try {
+                                existenceFilter.add(UUID.fromString(resultSet.getString(1).trim()));
+                                rows++;
+                            } catch (IllegalArgumentException e) {
+                                // 無效的舊版主鍵不會被移入新表
+                            }
+                        }
+                    }
+                }
+                try (ResultSet resultSet = statement.executeQuery(
+                        "SELECT player_uuid FROM ornaments UNION ALL SELECT player_uuid FROM totems")) {
+                    while (resultSet.next()) {
+                        existenceFilter.add(uuidFromBytes(resultSet.getBytes(1)));
+                        rows++;
+                    }
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.WARNING, "構建玩家存在過濾器失敗，將繼續直接查詢數據庫: " + e.getMessage(), e);
+                return;
+            }
+            
+            existenceFilterReady = true;
+            plugin.getLogger().info("玩家存在過濾器已就緒: " + existenceFilter.getInsertions() + " 名玩家 (" + rows + " 行, " +
+                    (System.currentTimeMillis() - start) + "ms)");
+            if (existenceFilter.isOverCapacity()) {
+                plugin.getLogger().warning("有數據的玩家數已超過 database.existence-filter.expected-players，誤判率會升高，建議調大該設置");
+            }
+        });
+    }
+    
+    /**
+     * 數據庫是否可能被其他伺服器同時寫入；此時本地的存在過濾器可能漏判，默認不啟用
+     * @return 是否共享
+     */
+    protected boolean isSharedStorage() {
+        return false;
+    }
+    
+    @Override
+    public int getMaxWriteConcurrency() {
+        return dataSource != null ? dataSource.getMaximumPoolSize() : 1;
+    }
+    
+    /**
+     * 通過存在過濾器判斷玩家是否一定沒有保存的數據
+     * @param playerUUID 玩家UUID
+     * @return 是否一定沒有數據
+     */
+    private boolean isKnownAbsent(UUID playerUUID) {
+        if (!existenceFilterReady || existenceFilter.mightContain(playerUUID)) {
+            return false;
+        }
+        filterSkippedCount.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * 獲取存在過濾器狀態描述
+     * @return 狀態文本
+     */
+    public String getExistenceFilterStatusLine() {
+        if (existenceFilter == null) {
+            return "§e存在過濾器: §f關閉";
+        }
+        if (!existenceFilterReady) {
+            return "§e存在過濾器: §f正在構建";
+        }
+        return String.format("§e存在過濾器: §f%d 名玩家, %d KB, 誤判率約 %.2f%% §7| §e跳過查詢: §f%d §7| §e誤判: §f%d",
+                existenceFilter.getInsertions(), existenceFilter.getSizeBytes() / 1024,
+                existenceFilter.estimatedFalsePositiveRate() * 100, filterSkippedCount.get(), filterFalsePositiveCount.get());
+    }
+    
+    /**
+     * 獲取共享物品回收任務
+     * @return 回收任務，未啟動時為 null
+     */
+    public ItemGarbageCollector getItemCollector() {
+        return itemCollector;
+    }
+    
+    /**
+     * 獲取去重設置
+     * @return 去重器
+     */
+    public ItemDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+    
+    /**
+     * 獲取結構遷移
+     * @return 結構遷移，初始化前為 null
+     */
+    public SchemaMigrator getSchemaMigrator() {
+        return schemaMigrator;
+    }
+    
+    @Override
+    public void close() {
+        if (schemaMigrator != null) {
+            schemaMigrator.stop();
+        }
+        if (itemCollector != null) {
+            itemCollector.stop();
+        }
+        // 等待已入隊的數據庫操作完成後再關閉連接池
+        if (ownsStorageExecutor) {
+            storageExecutor.shutdown(5000);
+        }
+        if (dataSource != null && !dataSource.isClosed()) {
+            dataSource.close();
+            plugin.getLogger().info("已關閉數據庫連接池");
+        }
+    }
+    
+    @Override
+    public boolean saveInventory(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems) {
+        return saveInventories(Collections.singletonList(new PlayerLoadout(playerUUID, ornament, totems))).contains(playerUUID);
+    }
+    
+    @Override
+    public Set<UUID> saveInventories(Collection<PlayerLoadout> loadouts) {
+        Set<UUID> saved = new HashSet<>();
+        List<PendingWrite> writes = new ArrayList<>();
+        
+        // 先序列化目標狀態（上一次寫入之後沒有變更的槽位沿用已寫入的數據），再與最後一次寫入的狀態比較，只寫入有變更的槽位
+        for (PlayerLoadout loadout : loadouts) {
+            UUID playerUUID = loadout.getPlayerUUID();
+            PendingWrite write;
+            try {
+                write = PendingWrite.of(this, loadout, persistedStates.get(playerUUID));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "序列化玩家 " + playerUUID + " 的物品欄數據失敗: " + e.getMessage(), e);
+                continue;
+            }
+            
+            if (write.previous != null && write.previous.matches(write.ornamentData, write.totemData)) {
+                // 與數據庫中的數據完全一致，無需寫入
+                saved.add(playerUUID);
+            } else {
+                writes.add(write);
+            }
+        }
+        
+        if (writes.isEmpty()) {
+            return saved;
+        }
+        
+        // 寫入之前加入存在過濾器，保證之後的加載不會漏判
+        if (existenceFilter != null) {
+            for (PendingWrite write : writes) {
+                if (write.ornamentData != null || !write.totemData.isEmpty()) {
+                    existenceFilter.add(write.playerUUID);
+                }
+            }
+        }
+        
+        CommitResult result = commitWrites(writes);
+        if (result == CommitResult.COMMITTED) {
+            for (PendingWrite write : writes) {
+                saved.add(write.playerUUID);
+            }
+        } else if (result == CommitResult.FAILED && writes.size() > 1) {
+            // 整批提交失敗（數據庫可用）時逐個玩家單獨提交，避免一名玩家的錯誤數據拖累整批
+            plugin.getLogger().warning("批量保存 " + writes.size() + " 名玩家失敗，改為逐個保存");
+            for (PendingWrite write : writes) {
+                if (commitWrites(Collections.singletonList(write)) == CommitResult.COMMITTED) {
+                    saved.add(write.playerUUID);
+                }
+            }
+        }
+        return saved;
+    }
+    
+    @Override
+    public boolean deleteInventory(UUID playerUUID) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement deleteOrnament = conn.prepareStatement("DELETE FROM ornaments WHERE player_uuid = ?");
+                 PreparedStatement deleteTotems = conn.prepareStatement("DELETE FROM totems WHERE player_uuid = ?")) {
+                // 更新版本，刪除之前產生的快照之後不會再寫入
+                claimVersions(conn, Collections.singletonList(
+                        new PendingWrite(playerUUID, null, Collections.emptyMap(), null, PlayerLoadout.nextVersion(0))));
+                moveLegacyRows(conn, Collections.singletonList(playerUUID));
+                deleteOrnament.setBytes(1, uuidToBytes(playerUUID));
+                deleteOrnament.executeUpdate();
+                deleteTotems.setBytes(1, uuidToBytes(playerUUID));
+                deleteTotems.executeUpdate();
+                conn.commit();
+                circuitBreaker.recordSuccess();
+                // 共享物品由回收任務在寬限期後清理；存在過濾器無法移除，之後的加載只會多一次查詢
+                persistedStates.put(playerUUID, PersistedState.of(null, Collections.emptyMap(), 0L));
+                return true;
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    plugin.getLogger().log(Level.SEVERE, "回滾事務失敗: " + rollbackEx.getMessage(), rollbackEx);
+                }
+                persistedStates.remove(playerUUID);
+                recordResult(e);
+                plugin.getLogger().log(Level.SEVERE, "刪除玩家 " + playerUUID + " 的物品欄數據失敗: " + e.getMessage(), e);
+                return false;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.WARNING, "重置自動提交失敗: " + e.getMessage(), e);
+                }
+            }
+        } catch (SQLException e) {
+            recordResult(e);
+            plugin.getLogger().warning("無法獲取數據庫連接: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<PlayerLoadout> loadProfileAsync(UUID playerUUID) {
+        return storageExecutor.supply(StorageExecutor.Priority.LOAD, () -> loadProfile(playerUUID));
+    }
+    
+    @Override
+    public CompletableFuture<Boolean> saveAsync(PlayerLoadout loadout) {
+        SaveQueue queue = saveQueue;
+        if (queue != null) {
+            return queue.enqueue(loadout, true);
+        }
+        return storageExecutor.supply(StorageExecutor.Priority.SAVE,
+                () -> saveInventories(Collections.singletonList(loadout)).contains(loadout.getPlayerUUID()));
+    }
+    
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(UUID playerUUID) {
+        return storageExecutor.supply(StorageExecutor.Priority.SAVE, () -> deleteInventory(playerUUID));
+    }
+    
+    @Override
+    public void setSaveQueue(SaveQueue saveQueue) {
+        this.saveQueue = saveQueue;
+    }
+    
+    /**
+     * 在同一個事務中提交多名玩家的變更，所有語句以 JDBC 批處理方式發送
+     * <p>
+     * 只嘗試一次，不在當前線程中等待重試；失敗的快照由保存隊列按退避時間重新調度。
+     * @param writes 待寫入的玩家數據
+     * @return 提交結果
+     */
+    private CommitResult commitWrites(List<PendingWrite> writes) {
+        if (!circuitBreaker.allowRequest()) {
+            // 沒有執行任何寫入，數據庫中的狀態不變
+            return CommitResult.UNAVAILABLE;
+        }
+        
+        try (Connection conn = getConnection()) {
+            // 開始事務
+            conn.setAutoCommit(false);
+            
+            try (WriteBatch batch = new WriteBatch(conn)) {
+                // 先更新版本，過期的快照不寫入
+                List<PendingWrite> accepted = claimVersions(conn, writes);
+                List<UUID> acceptedUUIDs = new ArrayList<>(accepted.size());
+                for (PendingWrite write : accepted) {
+                    acceptedUUIDs.add(write.playerUUID);
+                }
+                // 玩家在舊版數據表中的行先移入新表，變更只寫入新表
+                moveLegacyRows(conn, acceptedUUIDs);
+                for (PendingWrite write : accepted) {
+                    writeDiff(batch, write);
+                }
+                batch.execute();
+                
+                // 提交事務
+                conn.commit();
+                circuitBreaker.recordSuccess();
+                deduplicator.markTouched(batch.touchedHashes, batch.touchTime);
+                for (PendingWrite write : writes) {
+                    if (write.stale) {
+                        // 數據庫中是其他寫入的數據，狀態未知
+                        versionConflictCount.incrementAndGet();
+                        persistedStates.remove(write.playerUUID);
+                    } else {
+                        persistedStates.put(write.playerUUID, PersistedState.of(write.ornamentData, write.totemData, write.version));
+                    }
+                }
+                return CommitResult.COMMITTED;
+            } catch (SQLException | RuntimeException e) {
+                // 回滾事務（運行時異常也必須回滾，否則重置自動提交時會提交一半的寫入）
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackEx) {
+                    plugin.getLogger().log(Level.SEVERE, "回滾事務失敗: " + rollbackEx.getMessage(), rollbackEx);
+                }
+                
+                forgetStates(writes);
+                if (!(e instanceof SQLException)) {
+                    // 非數據庫錯誤，數據庫仍可訪問；斷路器必須收到結果，否則探測請求一直處於未回報狀態
+                    circuitBreaker.recordSuccess();
+                    plugin.getLogger().log(Level.SEVERE, "保存物品欄數據失敗: " + e.getMessage(), e);
+                    return CommitResult.FAILED;
+                }
+                if (recordResult((SQLException) e)) {
+                    plugin.getLogger().warning("保存物品欄數據失敗，數據庫不可用: " + e.getMessage());
+                    return CommitResult.UNAVAILABLE;
+                }
+                plugin.getLogger().log(Level.SEVERE, "保存物品欄數據失敗: " + e.getMessage(), e);
+                return CommitResult.FAILED;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.WARNING, "重置自動提交失敗: " + e.getMessage(), e);
+                }
+            }
+        } catch (SQLException e) {
+            recordResult(e);
+            plugin.getLogger().warning("無法獲取數據庫連接: " + e.getMessage());
+            forgetStates(writes);
+            return CommitResult.UNAVAILABLE;
+        }
+    }
+    
+    /**
+     * 以比較並設置的方式把每名玩家的版本更新為快照的版本（在寫入數據的同一個事務中執行）
+     * <p>
+     * 數據庫中的版本已經相同或更新時，說明快照比已寫入的數據舊（例如並發的保存中較新的一個先提交），
+     * 標記為過期並跳過；沒有版本記錄的玩家插入新記錄。
+     * @param conn 數據庫連接
+     * @param writes 待寫入的玩家數據
+     * @return 版本更新成功、需要寫入數據的玩家
+     * @throws SQLException SQL異常
+     */
+    private List<PendingWrite> claimVersions(Connection conn, List<PendingWrite> writes) throws SQLException {
+        int[] updated;
+        try (PreparedStatement update = conn.prepareStatement("UPDATE loadouts SET version = ? WHERE player_uuid = ? AND version < ?")) {
+            for (PendingWrite write : writes) {
+                update.setLong(1, write.version);
+                update.setBytes(2, uuidToBytes(write.playerUUID));
+                update.setLong(3, write.version);
+                update.addBatch();
+            }
+            updated = update.executeBatch();
+        }
+        
+        List<PendingWrite> accepted = new ArrayList<>(writes.size());
+        PreparedStatement insert = null;
+        try {
+            for (int i = 0; i < writes.size(); i++) {
+                PendingWrite write = writes.get(i);
+                write.stale = false;
+                if (updated[i] != 0) {
+                    accepted.add(write);
+                    continue;
+                }
+                // 沒有更新任何行：玩家還沒有版本記錄，或數據庫中的版本不比快照舊
+                if (insert == null) {
+                    insert = conn.prepareStatement(getInsertVersionSql());
+                }
+                insert.setBytes(1, uuidToBytes(write.playerUUID));
+                insert.setLong(2, write.version);
+                if (insert.executeUpdate() > 0) {
+                    accepted.add(write);
+                } else {
+                    write.stale = true;
+                }
+            }
+        } finally {
+            if (insert != null) {
+                insert.close();
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * 獲取插入玩家版本記錄的 SQL，記錄已存在時不插入（影響行數為 0），參數依次為 player_uuid、version
+     * @return SQL 語句
+     */
+    protected abstract String getInsertVersionSql();
+    
+    /**
+     * 獲取因數據庫中已有更新版本而被拒絕的快照數
+     * @return 快照數
+     */
+    public long getVersionConflictCount() {
+        return versionConflictCount.get();
+    }
+    
+    /**
+     * 寫入失敗後數據庫中的狀態未知，清除這些玩家的寫入記錄
+     * @param writes 待寫入的玩家數據
+     */
+    private void forgetStates(List<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            persistedStates.remove(write.playerUUID);
+        }
+    }
+    
+    /**
+     * 按異常類型更新斷路器：連接失敗、超時等視為數據庫不可用，其餘錯誤說明數據庫仍可訪問
+     * @param e SQL異常
+     * @return 是否為數據庫不可用
+     */
+    protected boolean recordResult(SQLException e) {
+        String state = e.getSQLState();
+        boolean unavailable = e instanceof SQLTransientException || e instanceof SQLRecoverableException ||
+                (state != null && state.startsWith("08"));
+        if (unavailable) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+            // 錯誤可能是舊版數據表已被其他伺服器遷移完成並刪除
+            scheduleLegacyTableCheck();
+        }
+        return unavailable;
+    }
+    
+    /**
+     * 獲取斷路器
+     * @return 斷路器
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    @Override
+    public void resetCircuitBreaker() {
+        circuitBreaker.reset();
+    }
+    
+    @Override
+    public List<String> getStatsLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(circuitBreaker.getStatusLine());
+        lines.add("§e版本衝突（已拒絕的過期快照）: §f" + getVersionConflictCount());
+        lines.add("§e未變更槽位（跳過序列化）: §f" + reusedSlotCount.get());
+        lines.add(itemCodecs.getStatusLine());
+        lines.add("§e物品去重: §f" + (deduplicator.isEnabled() ? "開啟" : "關閉"));
+        lines.add(getExistenceFilterStatusLine());
+        if (itemCollector != null) {
+            lines.add(itemCollector.getStatusLine());
+        }
+        if (schemaMigrator != null) {
+            lines.add(schemaMigrator.getStatusLine());
+        }
+        return lines;
+    }
+    
+    @Override
+    public List<String> getMigrationStatusLines() {
+        if (schemaMigrator == null) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(schemaMigrator.getStatusLine());
+        lines.addAll(schemaMigrator.getStatusLines());
+        return lines;
+    }
+    
+    @Override
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
+    }
+    
+    /**
+     * 將目標狀態與上一次寫入狀態之間的差異加入批處理
+     * @param batch 寫入批處理
+     * @param write 待寫入的玩家數據
+     * @throws SQLException SQL異常
+     */
+    private void writeDiff(WriteBatch batch, PendingWrite write) throws SQLException {
+        UUID playerUUID = write.playerUUID;
+        PersistedState previous = write.previous;
+        
+        // 處理飾品
+        boolean ornamentKnown = previous != null && previous.ornamentKnown;
+        if (write.ornamentData != null) {
+            if (!ornamentKnown || !Arrays.equals(write.ornamentData, previous.ornament)) {
+                batch.upsertOrnament(playerUUID, write.ornamentData);
+            }
+        } else if (!ornamentKnown || previous.ornament != null) {
+            batch.deleteOrnament(playerUUID);
+        }
+        
+        // 處理圖騰
+        if (previous == null || previous.totems == null) {
+            // 不知道數據庫中的狀態：寫入所有圖騰，並刪除其餘槽位
+            for (Map.Entry<Integer, byte[]> entry : write.totemData.entrySet()) {
+                batch.upsertTotem(playerUUID, entry.getKey(), entry.getValue());
+            }
+            batch.deleteTotemsExcept(playerUUID, write.totemData.keySet());
+            return;
+        }
+        
+        for (Map.Entry<Integer, byte[]> entry : write.totemData.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), previous.totems.get(entry.getKey()))) {
+                batch.upsertTotem(playerUUID, entry.getKey(), entry.getValue());
+            }
+        }
+        for (Integer slotId : previous.totems.keySet()) {
+            if (!write.totemData.containsKey(slotId)) {
+                batch.deleteTotem(playerUUID, slotId);
+            }
+        }
+    }
+    
+    /**
+     * 獲取寫入或更新飾品的 SQL，參數依次為 player_uuid、item_data、item_blob、item_hash
+     * @return SQL 語句
+     */
+    protected abstract String getUpsertOrnamentSql();
+    
+    /**
+     * 獲取寫入或更新單個圖騰的 SQL，參數依次為 player_uuid、slot_id、item_data、item_blob、item_hash
+     * @return SQL 語句
+     */
+    protected abstract String getUpsertTotemSql();
+    
+    /**
+     * 獲取寫入共享物品（已存在時只刷新 last_used）的 SQL，參數依次為 hash、data、last_used
+     * @return SQL 語句
+     */
+    protected abstract String getUpsertItemSql();
+    
+    /**
+     * 按存儲格式綁定物品數據：去重格式只寫入 item_hash，BLOB 格式寫入 item_blob，文本格式寫入 item_data，其餘列清空
+     * @param statement 語句
+     * @param index item_data 參數的位置，item_blob 與 item_hash 緊隨其後
+     * @param data 序列化數據
+     * @param hash 去重模式下的物品哈希，否則為 null
+     * @throws SQLException SQL異常
+     */
+    private void bindItemData(PreparedStatement statement, int index, byte[] data, byte[] hash) throws SQLException {
+        if (hash != null) {
+            statement.setString(index, "");
+            statement.setNull(index + 1, Types.BLOB);
+            statement.setBytes(index + 2, hash);
+        } else if (blobStorage) {
+            statement.setString(index, "");
+            statement.setBytes(index + 1, data);
+            statement.setNull(index + 2, Types.BINARY);
+        } else {
+            statement.setString(index, Base64.getEncoder().encodeToString(data));
+            statement.setNull(index + 1, Types.BLOB);
+            statement.setNull(index + 2, Types.BINARY);
+        }
+    }
+    
+    /**
+     * 從結果集中讀取物品數據，兼容共享物品、BLOB 與舊版 Base64 文本格式
+     * @param resultSet 結果集，需包含 item_data、item_blob、item_hash 列，以及關聯 items 表得到的 item_shared 列
+     * @return 序列化數據
+     * @throws SQLException SQL異常
+     * @throws IOException 引用的共享物品不存在
+     */
+    protected byte[] readItemData(ResultSet resultSet) throws SQLException, IOException {
+        if (resultSet.getBytes("item_hash") != null) {
+            byte[] shared = resultSet.getBytes("item_shared");
+            if (shared == null) {
+                throw new IOException("引用的共享物品數據不存在");
+            }
+            return shared;
+        }
+        byte[] data = resultSet.getBytes("item_blob");
+        if (data != null) {
+            return data;
+        }
+        try {
+            return Base64.getDecoder().decode(resultSet.getString("item_data"));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("物品數據不是有效的 Base64 文本", e);
+        }
+    }
+    
+    /**
+     * 從結果集中讀取並反序列化物品，共享物品會使用緩存的原型
+     * @param resultSet 結果集，列要求同 {@link #readItemData(ResultSet)}
+     * @param data 已讀取的序列化數據
+     * @return 物品
+     * @throws SQLException SQL異常
+     * @throws IOException 反序列化失敗
+     */
+    protected ItemStack readItem(ResultSet resultSet, byte[] data) throws SQLException, IOException {
+        byte[] hash = resultSet.getBytes("item_hash");
+        return hash != null ? deduplicator.decode(hash, data, itemCodecs) : deserializeItemStack(data);
+    }
+    
+    /**
+     * 一個事務內的寫入批處理，每種語句只準備一次，最後統一以 executeBatch 發送
+     */
+    protected class WriteBatch implements AutoCloseable {
+        
+        private final Connection conn;
+        private PreparedStatement upsertItem;
+        private PreparedStatement upsertOrnament;
+        private PreparedStatement deleteOrnament;
+        private PreparedStatement upsertTotem;
+        private PreparedStatement deleteTotem;
+        
+        // 本事務中寫入（或刷新）的共享物品，提交後記錄到去重器
+        private final long touchTime = System.currentTimeMillis();
+        private final List<byte[]> touchedHashes = new ArrayList<>();
+        private final Set<ByteBuffer> batchedHashes = new HashSet<>();
+        
+        protected WriteBatch(Connection conn) {
+            this.conn = conn;
+        }
+        
+        /**
+         * 去重模式下確保共享物品存在並返回其哈希，否則返回 null
+         * @param data 序列化數據
+         * @return 哈希，非去重模式為 null
+         * @throws SQLException SQL異常
+         */
+        private byte[] shareItem(byte[] data) throws SQLException {
+            if (!deduplicator.isEnabled()) {
+                return null;
+            }
+            byte[] hash = ItemDeduplicator.hash(data);
+            if (deduplicator.needsTouch(hash, touchTime) && batchedHashes.add(ByteBuffer.wrap(hash))) {
+                if (upsertItem == null) {
+                    upsertItem = conn.prepareStatement(getUpsertItemSql());
+                }
+                upsertItem.setBytes(1, hash);
+                upsertItem.setBytes(2, data);
+                upsertItem.setLong(3, touchTime);
+                upsertItem.addBatch();
+                touchedHashes.add(hash);
+            }
+            return hash;
+        }
+        
+        /**
+         * 寫入或更新飾品
+         * @param playerUUID 玩家UUID
+         * @param data 序列化數據
+         * @throws SQLException SQL異常
+         */
+        public void upsertOrnament(UUID playerUUID, byte[] data) throws SQLException {
+            if (upsertOrnament == null) {
+                upsertOrnament = conn.prepareStatement(getUpsertOrnamentSql());
+            }
+            upsertOrnament.setBytes(1, uuidToBytes(playerUUID));
+            bindItemData(upsertOrnament, 2, data, shareItem(data));
+            upsertOrnament.addBatch();
+        }
+        
+        /**
+         * 刪除飾品
+         * @param playerUUID 玩家UUID
+         * @throws SQLException SQL異常
+         */
+        public void deleteOrnament(UUID playerUUID) throws SQLException {
+            if (deleteOrnament == null) {
+                deleteOrnament = conn.prepareStatement("DELETE FROM ornaments WHERE player_uuid = ?");
+            }
+            deleteOrnament.setBytes(1, uuidToBytes(playerUUID));
+            deleteOrnament.addBatch();
+        }
+        
+        /**
+         * 寫入或更新單個圖騰
+         * @param playerUUID 玩家UUID
+         * @param slotId 槽位
+         * @param data 序列化數據
+         * @throws SQLException SQL異常
+         */
+        public void upsertTotem(UUID playerUUID, int slotId, byte[] data) throws SQLException {
+            if (upsertTotem == null) {
+                upsertTotem = conn.prepareStatement(getUpsertTotemSql());
+            }
+            upsertTotem.setBytes(1, uuidToBytes(playerUUID));
+            upsertTotem.setInt(2, slotId);
+            bindItemData(upsertTotem, 3, data, shareItem(data));
+            upsertTotem.addBatch();
+        }
+        
+        /**
+         * 刪除單個圖騰
+         * @param playerUUID 玩家UUID
+         * @param slotId 槽位
+         * @throws SQLException SQL異常
+         */
+        public void deleteTotem(UUID playerUUID, int slotId) throws SQLException {
+            if (deleteTotem == null) {
+                deleteTotem = conn.prepareStatement("DELETE FROM totems WHERE player_uuid = ? AND slot_id = ?");
+            }
+            deleteTotem.setBytes(1, uuidToBytes(playerUUID));
+            deleteTotem.setInt(2, slotId);
+            deleteTotem.addBatch();
+        }
+        
+        /**
+         * 刪除玩家除指定槽位以外的所有圖騰（槽位數量不固定，直接執行而不加入批處理）
+         * @param playerUUID 玩家UUID
+         * @param keepSlots 需要保留的槽位
+         * @throws SQLException SQL異常
+         */
+        public void deleteTotemsExcept(UUID playerUUID, Set<Integer> keepSlots) throws SQLException {
+            StringBuilder sql = new StringBuilder("DELETE FROM totems WHERE player_uuid = ?");
+            if (!keepSlots.isEmpty()) {
+                sql.append(" AND slot_id NOT IN (");
+                sql.append(String.join(", ", Collections.nCopies(keepSlots.size(), "?")));
+                sql.append(")");
+            }
+            try (PreparedStatement statement = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                statement.setBytes(index++, uuidToBytes(playerUUID));
+                for (Integer slotId : keepSlots) {
+                    statement.setInt(index++, slotId);
+                }
+                statement.executeUpdate();
+            }
+        }
+        
+        /**
+         * 發送所有批處理語句：先寫入共享物品，再刪除，最後寫入槽位
+         * @throws SQLException SQL異常
+         */
+        public void execute() throws SQLException {
+            for (PreparedStatement statement : new PreparedStatement[]{upsertItem, deleteOrnament, deleteTotem, upsertOrnament, upsertTotem}) {
+                if (statement != null) {
+                    statement.executeBatch();
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws SQLException {
+            for (PreparedStatement statement : new PreparedStatement[]{upsertItem, upsertOrnament, deleteOrnament, upsertTotem, deleteTotem}) {
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public ItemStack loadOrnament(UUID playerUUID) {
+        if (!legacyTables.isEmpty()) {
+            // 舊版數據表中的數據移入新表前，通過同時查詢新舊表的合併查詢讀取
+            PlayerLoadout profile = loadProfile(playerUUID);
+            return profile != null ? profile.getOrnament() : null;
+        }
+        if (isKnownAbsent(playerUUID)) {
+            rememberOrnament(playerUUID, null);
+            return null;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return null;
+        }
+        
+        String sql = "SELECT o.item_data, o.item_blob, o.item_hash, i.data AS item_shared FROM ornaments o " +
+                     "LEFT JOIN items i ON i.hash = o.item_hash WHERE o.player_uuid = ?";
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setBytes(1, uuidToBytes(playerUUID));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                circuitBreaker.recordSuccess();
+                if (resultSet.next()) {
+                    byte[] serializedItem = readItemData(resultSet);
+                    ItemStack ornament = readItem(resultSet, serializedItem);
+                    rememberOrnament(playerUUID, serializedItem);
+                    return ornament;
+                }
+                rememberOrnament(playerUUID, null);
+                return null;
+            }
+        } catch (SQLException e) {
+            recordResult(e);
+            plugin.getLogger().log(Level.SEVERE, "加載飾品數據時數據庫錯誤: " + e.getMessage(), e);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "加載飾品數據失敗: " + e.getMessage(), e);
+        }
+        
+        return null;
+    }
+    
+    @Override
+    public Map<Integer, ItemStack> loadTotems(UUID playerUUID) {
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        if (!legacyTables.isEmpty()) {
+            PlayerLoadout profile = loadProfile(playerUUID);
+            if (profile != null) {
+                totems.putAll(profile.getTotems());
+            }
+            return totems;
+        }
+        if (isKnownAbsent(playerUUID)) {
+            rememberTotems(playerUUID, Collections.emptyMap());
+            return totems;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return totems;
+        }
+        
+        String sql = "SELECT t.slot_id, t.item_data, t.item_blob, t.item_hash, i.data AS item_shared FROM totems t " +
+                     "LEFT JOIN items i ON i.hash = t.item_hash WHERE t.player_uuid = ?";
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setBytes(1, uuidToBytes(playerUUID));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                circuitBreaker.recordSuccess();
+                Map<Integer, byte[]> totemData = new HashMap<>();
+                while (resultSet.next()) {
+                    int slotId = resultSet.getInt("slot_id");
+                    byte[] serializedItem = readItemData(resultSet);
+                    totems.put(slotId, readItem(resultSet, serializedItem));
+                    totemData.put(slotId, serializedItem);
+                }
+                rememberTotems(playerUUID, totemData);
+                return totems;
+            }
+        } catch (SQLException e) {
+            recordResult(e);
+            plugin.getLogger().log(Level.SEVERE, "加載圖騰數據時數據庫錯誤: " + e.getMessage(), e);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "加載圖騰數據失敗: " + e.getMessage(), e);
+        }
+        
+        // 加載失敗時不返回部分數據
+        return new HashMap<>();
+    }
+    
+    @Override
+    public PlayerLoadout loadProfile(UUID playerUUID) {
+        return loadProfiles(Collections.singletonList(playerUUID)).get(playerUUID);
+    }
+    
+    @Override
+    public Map<UUID, PlayerLoadout> loadProfiles(Collection<UUID> playerUUIDs) {
+        Map<UUID, PlayerLoadout> profiles = new HashMap<>();
+        List<UUID> pending = new ArrayList<>();
+        for (UUID playerUUID : new LinkedHashSet<>(playerUUIDs)) {
+            if (isKnownAbsent(playerUUID)) {
+                // 一定沒有數據的玩家無需查詢
+                rememberOrnament(playerUUID, null);
+                rememberTotems(playerUUID, Collections.emptyMap());
+                profiles.put(playerUUID, new PlayerLoadout(playerUUID, null, Collections.emptyMap()));
+            } else {
+                pending.add(playerUUID);
+            }
+        }
+        
+        for (int start = 0; start < pending.size(); start += MAX_PROFILES_PER_QUERY) {
+            List<UUID> chunk = pending.subList(start, Math.min(pending.size(), start + MAX_PROFILES_PER_QUERY));
+            
+            if (!circuitBreaker.allowRequest()) {
+                // 數據庫不可用，其餘玩家視為加載失敗
+                break;
+            }
+            try (Connection conn = getReadConnection()) {
+                Map<UUID, PlayerLoadout> loaded = readProfiles(conn, chunk);
+                circuitBreaker.recordSuccess();
+                if (existenceFilterReady) {
+                    for (PlayerLoadout profile : loaded.values()) {
+                        if (profile.isEmpty()) {
+                            filterFalsePositiveCount.incrementAndGet();
+                        }
+                    }
+                }
+                profiles.putAll(loaded);
+            } catch (SQLException e) {
+                recordResult(e);
+                plugin.getLogger().log(Level.SEVERE, "加載 " + chunk.size() + " 名玩家的物品欄數據時數據庫錯誤: " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                // 非數據庫錯誤，數據庫仍可訪問；斷路器必須收到結果，否則探測請求一直處於未回報狀態
+                circuitBreaker.recordSuccess();
+                plugin.getLogger().log(Level.SEVERE, "加載 " + chunk.size() + " 名玩家的物品欄數據失敗: " + e.getMessage(), e);
+            }
+        }
+        
+        return profiles;
+    }
+    
+    /**
+     * 以一條 UNION ALL 查詢讀取一組玩家的飾品與圖騰（飾品行的 slot_id 為 -1）
+     * <p>
+     * 仍有舊版數據表時一併查詢舊表（以文本主鍵匹配，主鍵在 legacy_uuid 列中返回）；每一行在任何時刻都只存在於
+     * 新舊表之一，在同一條語句中讀取可以保證與並發的移入互不遺漏。
+     * @param conn 數據庫連接
+     * @param playerUUIDs 玩家UUID
+     * @return 成功解碼的玩家物品欄快照
+     * @throws SQLException SQL異常
+     */
+    private Map<UUID, PlayerLoadout> readProfiles(Connection conn, List<UUID> playerUUIDs) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(playerUUIDs.size(), "?"));
+        boolean legacyOrnaments = legacyTables.contains("ornaments");
+        boolean legacyTotems = legacyTables.contains("totems");
+        boolean legacy = legacyOrnaments || legacyTotems;
+        String legacyColumn = legacy ? "NULL AS legacy_uuid, " : "";
+        StringBuilder sql = new StringBuilder(
+                "SELECT o.player_uuid, " + legacyColumn + ORNAMENT_ROW + " AS slot_id, o.item_data, o.item_blob, o.item_hash, i.data AS item_shared " +
+                "FROM ornaments o LEFT JOIN items i ON i.hash = o.item_hash WHERE o.player_uuid IN (" + placeholders + ") " +
+                "UNION ALL " +
+                "SELECT t.player_uuid, " + (legacy ? "NULL, " : "") + "t.slot_id, t.item_data, t.item_blob, t.item_hash, i.data AS item_shared " +
+                "FROM totems t LEFT JOIN items i ON i.hash = t.item_hash WHERE t.player_uuid IN (" + placeholders + ")");
+        if (legacyOrnaments) {
+            sql.append(" UNION ALL SELECT NULL, o.player_uuid, ").append(ORNAMENT_ROW).append(", o.item_data, o.item_blob, o.item_hash, i.data " +
+                    "FROM ornaments").append(LEGACY_SUFFIX).append(" o LEFT JOIN items i ON i.hash = o.item_hash WHERE o.player_uuid IN (")
+                    .append(placeholders).append(")");
+        }
+        if (legacyTotems) {
+            sql.append(" UNION ALL SELECT NULL, t.player_uuid, t.slot_id, t.item_data, t.item_blob, t.item_hash, i.data " +
+                    "FROM totems").append(LEGACY_SUFFIX).append(" t LEFT JOIN items i ON i.hash = t.item_hash WHERE t.player_uuid IN (")
+                    .append(placeholders).append(")");
+        }
+        
+        Map<UUID, ItemStack> ornaments = new HashMap<>();
+        Map<UUID, byte[]> ornamentData = new HashMap<>();
+        Map<UUID, Map<Integer, ItemStack>> totems = new HashMap<>();
+        Map<UUID, Map<Integer, byte[]>> totemData = new HashMap<>();
+        Set<UUID> failed = new HashSet<>();
+        
+        try (PreparedStatement statement = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int i = 0; i < 2; i++) {
+                for (UUID playerUUID : playerUUIDs) {
+                    statement.setBytes(index++, uuidToBytes(playerUUID));
+                }
+            }
+            for (int i = (legacyOrnaments ? 1 : 0) + (legacyTotems ? 1 : 0); i > 0; i--) {
+                for (UUID playerUUID : playerUUIDs) {
+                    statement.setString(index++, playerUUID.toString());
+                }
+            }
+            
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    byte[] key = resultSet.getBytes("player_uuid");
+                    UUID playerUUID = key != null ? uuidFromBytes(key) : UUID.fromString(resultSet.getString("legacy_uuid").trim());
+                    int slotId = resultSet.getInt("slot_id");
+                    try {
+                        byte[] serializedItem = readItemData(resultSet);
+                        ItemStack item = readItem(resultSet, serializedItem);
+                        if (slotId == ORNAMENT_ROW) {
+                            ornaments.put(playerUUID, item);
+                            ornamentData.put(playerUUID, serializedItem);
+                        } else {
+                            totems.computeIfAbsent(playerUUID, k -> new HashMap<>()).put(slotId, item);
+                            totemData.computeIfAbsent(playerUUID, k -> new HashMap<>()).put(slotId, serializedItem);
+                        }
+                    } catch (IOException | IllegalArgumentException e) {
+                        // 只加載部分物品的話，之後的保存會覆蓋掉無法讀取的物品，因此整個玩家視為加載失敗
+                        failed.add(playerUUID);
+                        plugin.getLogger().log(Level.SEVERE, "解碼玩家 " + playerUUID + " 的物品欄數據失敗: " + e.getMessage(), e);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            if (legacyOrnaments && !legacyTables.contains("ornaments") || legacyTotems && !legacyTables.contains("totems")) {
+                // 舊版數據表在查詢期間已全部移入新表並被刪除，按最新狀態重新查詢
+                return readProfiles(conn, playerUUIDs);
+            }
+            throw e;
+        }
+        
+        Map<UUID, PlayerLoadout> profiles = new HashMap<>();
+        for (UUID playerUUID : playerUUIDs) {
+            if (failed.contains(playerUUID)) {
+                continue;
+            }
+            Map<Integer, byte[]> playerTotemData = totemData.getOrDefault(playerUUID, Collections.emptyMap());
+            rememberOrnament(playerUUID, ornamentData.get(playerUUID));
+            rememberTotems(playerUUID, playerTotemData);
+            profiles.put(playerUUID, new PlayerLoadout(playerUUID, ornaments.get(playerUUID),
+                    totems.getOrDefault(playerUUID, Collections.emptyMap())));
+        }
+        return profiles;
+    }
+    
+    @Override
+    public boolean hasData(UUID playerUUID) {
+        if (isKnownAbsent(playerUUID)) {
+            return false;
+        }
+        
+        List<String> legacy = new ArrayList<>(legacyTables);
+        StringBuilder sql = new StringBuilder("SELECT 1 FROM ornaments WHERE player_uuid = ? UNION ALL SELECT 1 FROM totems WHERE player_uuid = ?");
+        for (String table : legacy) {
+            sql.append(" UNION ALL SELECT 1 FROM ").append(table).append(LEGACY_SUFFIX).append(" WHERE player_uuid = ?");
+        }
+        sql.append(" LIMIT 1");
+        
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        
+        try (Connection conn = getReadConnection();
+             PreparedStatement statement = conn.prepareStatement(sql.toString())) {
+            statement.setBytes(1, uuidToBytes(playerUUID));
+            statement.setBytes(2, uuidToBytes(playerUUID));
+            for (int i = 0; i < legacy.size(); i++) {
+                statement.setString(3 + i, playerUUID.toString());
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                circuitBreaker.recordSuccess();
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            if (!legacyTables.containsAll(legacy)) {
+                // 舊版數據表在查詢期間已全部移入新表並被刪除，按最新狀態重新查詢
+                return hasData(playerUUID);
+            }
+            recordResult(e);
+            plugin.getLogger().log(Level.SEVERE, "檢查玩家數據失敗: " + e.getMessage(), e);
+        }
+        
+        return false;
+    }
+    
+    @Override
+    public boolean forEachPlayer(Consumer<UUID> consumer) {
+        if (legacyTables.isEmpty()) {
+            return scanPlayers("ornaments", "totems", false, consumer);
+        }
+        // 先遍歷舊版數據表：遍歷期間被移入新表的玩家會在新表中再次出現，記錄已輸出的玩家以去重
+        Set<UUID> legacyPlayers = new HashSet<>();
+        boolean complete = scanPlayers(legacyTables.contains("ornaments") ? "ornaments" + LEGACY_SUFFIX : null,
+                legacyTables.contains("totems") ? "totems" + LEGACY_SUFFIX : null, true, playerUUID -> {
+                    if (legacyPlayers.add(playerUUID)) {
+                        consumer.accept(playerUUID);
+                    }
+                });
+        return complete && scanPlayers("ornaments", "totems", false, playerUUID -> {
+            if (!legacyPlayers.contains(playerUUID)) {
+                consumer.accept(playerUUID);
+            }
+        });
+    }
+    
+    /**
+     * 按主鍵順序分頁遍歷兩張表中的玩家並合併去重；每頁只短暫佔用一個連接，不會在整個遍歷期間持有快照或鎖
+     * @param ornamentsTable 飾品表名，為 null 時跳過
+     * @param totemsTable 圖騰表名，為 null 時跳過
+     * @param textKeys 是否為舊版文本主鍵
+     * @param consumer 每名玩家調用一次
+     * @return 是否完整遍歷
+     */
+    private boolean scanPlayers(String ornamentsTable, String totemsTable, boolean textKeys, Consumer<UUID> consumer) {
+        byte[] after = null;
+        while (true) {
+            List<byte[]> ornaments;
+            List<byte[]> totems;
+            try (Connection conn = getReadConnection()) {
+                ornaments = readPlayerPage(conn, ornamentsTable, "SELECT player_uuid FROM ", after, textKeys);
+                totems = readPlayerPage(conn, totemsTable, "SELECT DISTINCT player_uuid FROM ", after, textKeys);
+            } catch (SQLException e) {
+                recordResult(e);
+                plugin.getLogger().log(Level.SEVERE, "遍歷玩家數據失敗: " + e.getMessage(), e);
+                return false;
+            }
+            
+            // 讀滿一頁的表在頁末之後還有數據，只輸出不超過兩個頁末中較小者的玩家，其餘留到下一頁
+            byte[] bound = null;
+            if (ornaments.size() == PLAYER_SCAN_PAGE) {
+                bound = ornaments.get(ornaments.size() - 1);
+            }
+            if (totems.size() == PLAYER_SCAN_PAGE) {
+                byte[] last = totems.get(totems.size() - 1);
+                if (bound == null || Arrays.compareUnsigned(last, bound) < 0) {
+                    bound = last;
+                }
+            }
+            
+            int i = 0;
+            int j = 0;
+            while (i < ornaments.size() || j < totems.size()) {
+                byte[] next;
+                if (j >= totems.size()) {
+                    next = ornaments.get(i++);
+                } else if (i >= ornaments.size()) {
+                    next = totems.get(j++);
+                } else {
+                    int compare = Arrays.compareUnsigned(ornaments.get(i), totems.get(j));
+                    next = compare <= 0 ? ornaments.get(i++) : totems.get(j++);
+                    if (compare == 0) {
+                        j++;
+                    }
+                }
+                if (bound != null && Arrays.compareUnsigned(next, bound) > 0) {
+                    break;
+                }
+                if (!textKeys) {
+                    consumer.accept(uuidFromBytes(next));
+                    continue;
+                }
+                try {
+                    consumer.accept(UUID.fromString(new String(next, StandardCharsets.UTF_8).trim()));
+                } catch (IllegalArgumentException e) {
+                    // 無效的舊版主鍵不會被移入新表
+                }
+            }
+            
+            if (bound == null) {
+                return true;
+            }
+            after = bound;
+        }
+    }
+    
+    /**
+     * 按主鍵順序讀取一頁玩家UUID
+     * @param conn 數據庫連接
+     * @param table 表名，為 null 時返回空頁
+     * @param select 讀取 player_uuid 的 SELECT 語句開頭（後接表名）
+     * @param after 上一頁的最後一個主鍵，第一頁為 null
+     * @param textKeys 是否為舊版文本主鍵（以 UTF-8 字節返回）
+     * @return 主鍵
+     * @throws SQLException SQL異常
+     */
+    private List<byte[]> readPlayerPage(Connection conn, String table, String select, byte[] after, boolean textKeys) throws SQLException {
+        List<byte[]> page = new ArrayList<>(PLAYER_SCAN_PAGE);
+        if (table == null) {
+            return page;
+        }
+        String sql = select + table + (after != null ? " WHERE player_uuid > ?" : "") +
+                     " ORDER BY player_uuid LIMIT " + PLAYER_SCAN_PAGE;
+        if (textKeys && !legacyTables.contains(table.substring(0, table.length() - LEGACY_SUFFIX.length()))) {
+            // 舊版數據表已全部移入新表，剩下的玩家會在遍歷新表時讀到
+            return page;
+        }
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            if (after != null) {
+                if (textKeys) {
+                    statement.setString(1, new String(after, StandardCharsets.UTF_8));
+                } else {
+                    statement.setBytes(1, after);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    page.add(textKeys ? resultSet.getString(1).getBytes(StandardCharsets.UTF_8) : resultSet.getBytes(1));
+                }
+            }
+        } catch (SQLException e) {
+            if (textKeys && !legacyTables.contains(table.substring(0, table.length() - LEGACY_SUFFIX.length()))) {
+                // 舊版數據表在查詢期間被刪除
+                page.clear();
+                return page;
+            }
+            throw e;
+        }
+        return page;
+    }
+    
+    /**
+     * 記錄從數據庫加載的飾品數據；只在沒有記錄時寫入，避免覆蓋並發保存產生的新狀態
+     * @param playerUUID 玩家UUID
+     * @param ornamentData 飾品序列化數據，沒有飾品時為 null
+     */
+    private void rememberOrnament(UUID playerUUID, byte[] ornamentData) {
+        synchronized (persistedStates) {
+            PersistedState state = persistedStates.get(playerUUID);
+            if (state == null) {
+                persistedStates.put(playerUUID, new PersistedState(ornamentData, true, null, 0L));
+            } else if (!state.ornamentKnown) {
+                persistedStates.put(playerUUID, new PersistedState(ornamentData, true, state.totems, state.version));
+            }
+        }
+    }
+    
+    /**
+     * 記錄從數據庫加載的圖騰數據；只在沒有記錄時寫入，避免覆蓋並發保存產生的新狀態
+     * @param playerUUID 玩家UUID
+     * @param totemData 圖騰序列化數據（槽位 -> 數據）
+     */
+    private void rememberTotems(UUID playerUUID, Map<Integer, byte[]> totemData) {
+        synchronized (persistedStates) {
+            PersistedState state = persistedStates.get(playerUUID);
+            if (state == null) {
+                persistedStates.put(playerUUID, new PersistedState(null, false, Collections.unmodifiableMap(totemData), 0L));
+            } else if (state.totems == null) {
+                persistedStates.put(playerUUID, new PersistedState(state.ornament, state.ornamentKnown, Collections.unmodifiableMap(totemData), state.version));
+            }
+        }
+    }
+    
+    @Override
+    public ItemCodecRegistry getItemCodecs() {
+        return itemCodecs;
+    }
+    
+    /**
+     * 序列化物品（使用配置的編解碼器，並加上編碼頭）
+     * @param itemStack 物品
+     * @return 序列化後的字節數據
+     * @throws IOException IO異常
+     */
+    protected byte[] serializeItemStack(ItemStack itemStack) throws IOException {
+        return itemCodecs.encode(itemStack);
+    }
+    
+    /**
+     * 反序列化物品（支持任意已註冊的編解碼器以及舊版數據）
+     * @param serializedItem 序列化後的字節數據
+     * @return 物品
+     * @throws IOException IO異常
+     */
+    protected ItemStack deserializeItemStack(byte[] serializedItem) throws IOException {
+        return itemCodecs.decode(serializedItem);
+    }
+    
+    /**
+     * 一次事務提交的結果
+     */
+    private enum CommitResult {
+        // 已提交
+        COMMITTED,
+        // 數據庫可用但提交失敗（例如某名玩家的數據有誤）
+        FAILED,
+        // 數據庫不可用或斷路器已斷開
+        UNAVAILABLE
+    }
+    
+    /**
+     * 一名玩家待寫入的序列化數據，以及寫入前已知的數據庫狀態
+     */
+    private static final class PendingWrite {
+        private final UUID playerUUID;
+        private final byte[] ornamentData;
+        private final Map<Integer, byte[]> totemData;
+        private final PersistedState previous;
+        // 寫入數據庫的版本
+        private final long version;
+        // 數據庫中已有相同或更新的版本，本次不寫入
+        private boolean stale;
+        
+        private PendingWrite(UUID playerUUID, byte[] ornamentData, Map<Integer, byte[]> totemData, PersistedState previous, long version) {
+            this.playerUUID = playerUUID;
+            this.ornamentData = ornamentData;
+            this.totemData = totemData;
+            this.previous = previous;
+            this.version = version;
+        }
+        
+        private static PendingWrite of(AbstractDatabaseManager manager, PlayerLoadout loadout, PersistedState previous) throws IOException {
+            // 數據庫中正是上一次交給保存隊列的快照時，之後沒有變更的槽位與已寫入的數據相同，不必再次序列化
+            boolean reuse = previous != null && loadout.getBaseVersion() != 0 && previous.version == loadout.getBaseVersion();
+            byte[] ornamentData;
+            if (reuse && previous.ornamentKnown && !loadout.isOrnamentChanged()
+                    && (previous.ornament == null) == (loadout.getOrnament() == null)) {
+                ornamentData = previous.ornament;
+                manager.reusedSlotCount.incrementAndGet();
+            } else {
+                ornamentData = loadout.getOrnament() != null ? manager.serializeItemStack(loadout.getOrnament()) : null;
+            }
+            Map<Integer, byte[]> totemData = new HashMap<>();
+            for (Map.Entry<Integer, ItemStack> entry : loadout.getTotems().entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                byte[] persisted = reuse && previous.totems != null && !loadout.isTotemChanged(entry.getKey())
+                        ? previous.totems.get(entry.getKey()) : null;
+                if (persisted != null) {
+                    totemData.put(entry.getKey(), persisted);
+                    manager.reusedSlotCount.incrementAndGet();
+                } else {
+                    totemData.put(entry.getKey(), manager.serializeItemStack(entry.getValue()));
+                }
+            }
+            // 沒有版本的快照（例如管理命令）以當前時間為版本
+            long version = loadout.getVersion() != 0 ? loadout.getVersion() : PlayerLoadout.nextVersion(0);
+            return new PendingWrite(loadout.getPlayerUUID(), ornamentData, totemData, previous, version);
+        }
+    }
+    
+    /**
+     * 數據庫中某位玩家的已知狀態（序列化數據）
+     */
+    private static final class PersistedState {
+        private final byte[] ornament;
+        private final boolean ornamentKnown;
+        // 為 null 表示圖騰狀態未知
+        private final Map<Integer, byte[]> totems;
+        // 寫入這些數據的快照版本，從數據庫加載（或刪除）的狀態為 0
+        private final long version;
+        
+        private PersistedState(byte[] ornament, boolean ornamentKnown, Map<Integer, byte[]> totems, long version) {
+            this.ornament = ornament;
+            this.ornamentKnown = ornamentKnown;
+            this.totems = totems;
+            this.version = version;
+        }
+        
+        private static PersistedState of(byte[] ornament, Map<Integer, byte[]> totems, long version) {
+            return new PersistedState(ornament, true, Collections.unmodifiableMap(new HashMap<>(totems)), version);
+        }
+        
+        private boolean isComplete() {
+            return ornamentKnown && totems != null;
+        }
+        
+        private boolean matches(byte[] ornamentData, Map<Integer, byte[]> totemData) {
+            if (!isComplete() || !Arrays.equals(ornament, ornamentData) || totems.size() != totemData.size()) {
+                return false;
+            }
+            for (Map.Entry<Integer, byte[]> entry : totemData.entrySet()) {
+                if (!Arrays.equals(entry.getValue(), totems.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * 獲取連接的耗時統計
+     */
+    private static final class AcquireStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder failures = new LongAdder();
+        
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
         }
     }
-} 
\ No newline at end of file
+}
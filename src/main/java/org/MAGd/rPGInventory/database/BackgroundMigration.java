@@ -0,0 +1,40 @@
+package org.MAGd.rPGInventory.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 在後台分批執行的數據遷移
+ * <p>
+ * 每批在調用方開啟的事務中執行，進度（檢查點）與該批數據在同一個事務中保存，
+ * 中斷（關閉伺服器、數據庫錯誤）後從最後一次提交的檢查點繼續。
+ * 每批都可能與玩家的保存並發執行，更新語句需要帶上條件，避免用舊數據覆蓋新寫入的行。
+ */
+public interface BackgroundMigration {
+
+    /**
+     * 處理一批數據
+     * @param conn 已關閉自動提交的數據庫連接，由調用方提交或回滾
+     * @param checkpoint 上一批保存的檢查點，第一次執行時為 null
+     * @param chunkSize 每批最多處理的行數
+     * @return 新的檢查點；全部處理完成時返回 null
+     * @throws SQLException SQL異常
+     */
+    byte[] runChunk(Connection conn, byte[] checkpoint, int chunkSize) throws SQLException;
+
+    /**
+     * 獲取本次啟動以來的進度描述
+     * @return 進度文本
+     */
+    String getProgress();
+
+    /**
+     * 是否暫不執行（例如當前配置下不需要轉換）
+     * <p>
+     * 推遲的遷移不會記錄為已應用，也不阻塞之後的後台遷移；條件滿足後在下次啟動時執行。
+     * @return 是否推遲
+     */
+    default boolean isDeferred() {
+        return false;
+    }
+}
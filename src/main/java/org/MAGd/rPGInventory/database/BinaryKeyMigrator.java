@@ -0,0 +1,131 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把改名保留的舊版數據表（文本 UUID 主鍵）中的數據逐批移入二進制主鍵的新表
+ * <p>
+ * 先處理飾品表，再處理圖騰表，均按文本主鍵順序每批處理一組玩家；檢查點記錄當前的表與最後處理的主鍵。
+ * 每名玩家的行在同一個事務中插入新表並從舊表刪除，新表中已有的行（玩家保存時已移入並修改）保持不變。
+ * 舊表處理完後刪除，主鍵無法解析為 UUID 的行隨舊表刪除並記錄在日誌中。
+ */
+public class BinaryKeyMigrator implements BackgroundMigration {
+
+    private static final byte PHASE_ORNAMENTS = 0;
+    private static final byte PHASE_TOTEMS = 1;
+
+    private final RPGInventory plugin;
+    private final AbstractDatabaseManager manager;
+
+    private volatile byte phase = PHASE_ORNAMENTS;
+    private final AtomicLong movedRows = new AtomicLong();
+    private final AtomicLong skippedRows = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param manager 數據庫管理器
+     */
+    public BinaryKeyMigrator(RPGInventory plugin, AbstractDatabaseManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getProgress() {
+        return (phase == PHASE_ORNAMENTS ? "飾品" : "圖騰") + "，本次已移入 " + movedRows.get() + " 行" +
+                (skippedRows.get() > 0 ? "，跳過 " + skippedRows.get() + " 行無效數據" : "");
+    }
+
+    @Override
+    public byte[] runChunk(Connection conn, byte[] checkpoint, int chunkSize) throws SQLException {
+        // 檢查點：階段（1 字節）+ 最後處理的文本主鍵（UTF-8）
+        byte currentPhase = PHASE_ORNAMENTS;
+        String lastKey = "";
+        if (checkpoint != null && checkpoint.length >= 1) {
+            currentPhase = checkpoint[0];
+            lastKey = new String(Arrays.copyOfRange(checkpoint, 1, checkpoint.length), StandardCharsets.UTF_8);
+        }
+        phase = currentPhase;
+
+        String table = currentPhase == PHASE_ORNAMENTS ? "ornaments" : "totems";
+        // 舊表可能已由其他伺服器處理完並刪除
+        String next = manager.tableExists(conn, table + AbstractDatabaseManager.LEGACY_SUFFIX)
+                ? migrateChunk(conn, table, lastKey, chunkSize)
+                : null;
+        if (next == null) {
+            finish(conn, table);
+            if (currentPhase == PHASE_TOTEMS) {
+                return null;
+            }
+            // 飾品已處理完，下一批從圖騰表開始
+            return new byte[]{PHASE_TOTEMS};
+        }
+        byte[] key = next.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[1 + key.length];
+        result[0] = currentPhase;
+        System.arraycopy(key, 0, result, 1, key.length);
+        return result;
+    }
+
+    /**
+     * 移入一批玩家的數據
+     * @return 最後處理的文本主鍵，已處理完整張表時為 null
+     */
+    private String migrateChunk(Connection conn, String table, String lastKey, int chunkSize) throws SQLException {
+        String legacyTable = table + AbstractDatabaseManager.LEGACY_SUFFIX;
+        Map<String, UUID> keys = new LinkedHashMap<>();
+        int rows = 0;
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT DISTINCT player_uuid FROM " + legacyTable + " WHERE player_uuid > ? ORDER BY player_uuid LIMIT ?")) {
+            select.setString(1, lastKey);
+            select.setInt(2, chunkSize);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    rows++;
+                    lastKey = resultSet.getString(1);
+                    try {
+                        keys.put(lastKey, UUID.fromString(lastKey.trim()));
+                    } catch (IllegalArgumentException e) {
+                        plugin.getLogger().warning("數據表 " + legacyTable + " 中的玩家UUID無效，已跳過: " + lastKey);
+                    }
+                }
+            }
+        }
+
+        if (!keys.isEmpty()) {
+            movedRows.addAndGet(manager.moveLegacyRows(conn, table, keys));
+        }
+        return rows < chunkSize ? null : lastKey;
+    }
+
+    /**
+     * 刪除已處理完的舊表
+     */
+    private void finish(Connection conn, String table) throws SQLException {
+        String legacyTable = table + AbstractDatabaseManager.LEGACY_SUFFIX;
+        if (manager.tableExists(conn, legacyTable)) {
+            // 剩下的只有主鍵無效、無法移入的行
+            try (PreparedStatement count = conn.prepareStatement("SELECT COUNT(*) FROM " + legacyTable);
+                 ResultSet resultSet = count.executeQuery()) {
+                long remaining = resultSet.next() ? resultSet.getLong(1) : 0;
+                if (remaining > 0) {
+                    skippedRows.addAndGet(remaining);
+                    plugin.getLogger().warning("數據表 " + legacyTable + " 中有 " + remaining + " 行的玩家UUID無效，已隨舊表刪除");
+                }
+            }
+        }
+        manager.dropLegacyTable(conn, table);
+    }
+}
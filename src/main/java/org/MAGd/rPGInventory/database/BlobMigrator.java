@@ -0,0 +1,180 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 後台將舊版 Base64 文本行（item_data）轉換為 BLOB（item_blob）
+ * <p>
+ * 先處理飾品表，再處理圖騰表，均按主鍵順序分批；檢查點記錄當前的表與最後處理的主鍵，由 {@link SchemaMigrator} 保存。
+ * 更新時帶上 item_blob IS NULL 條件，期間被玩家保存覆蓋的行不會被舊數據改寫；已改用共享物品（item_hash）的行會被跳過。
+ * 使用文本存儲格式時推遲執行，切換到 blob 格式後再轉換。
+ */
+public class BlobMigrator implements BackgroundMigration {
+
+    private static final byte PHASE_ORNAMENTS = 0;
+    private static final byte PHASE_TOTEMS = 1;
+
+    private final RPGInventory plugin;
+    private final boolean blobStorage;
+
+    private volatile byte phase = PHASE_ORNAMENTS;
+    private final AtomicLong migratedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param blobStorage 是否使用 blob 存儲格式
+     */
+    public BlobMigrator(RPGInventory plugin, boolean blobStorage) {
+        this.plugin = plugin;
+        this.blobStorage = blobStorage;
+    }
+
+    @Override
+    public boolean isDeferred() {
+        return !blobStorage;
+    }
+
+    @Override
+    public String getProgress() {
+        return (phase == PHASE_ORNAMENTS ? "飾品" : "圖騰") + "，本次已轉換 " + migratedRows.get() + " 行，失敗 " + failedRows.get() + " 行";
+    }
+
+    @Override
+    public byte[] runChunk(Connection conn, byte[] checkpoint, int chunkSize) throws SQLException {
+        // 檢查點：階段（1 字節）+ 最後的槽位（4 字節）+ 最後的玩家主鍵
+        byte currentPhase = PHASE_ORNAMENTS;
+        int lastSlot = Integer.MIN_VALUE;
+        byte[] lastKey = new byte[0];
+        if (checkpoint != null && checkpoint.length >= 5) {
+            ByteBuffer buffer = ByteBuffer.wrap(checkpoint);
+            currentPhase = buffer.get();
+            lastSlot = buffer.getInt();
+            lastKey = Arrays.copyOfRange(checkpoint, 5, checkpoint.length);
+        }
+        phase = currentPhase;
+
+        Cursor cursor = currentPhase == PHASE_ORNAMENTS
+                ? migrateOrnaments(conn, lastKey, chunkSize)
+                : migrateTotems(conn, lastKey, lastSlot, chunkSize);
+        if (cursor == null) {
+            if (currentPhase == PHASE_TOTEMS) {
+                return null;
+            }
+            // 飾品已處理完，下一批從圖騰表開始
+            return ByteBuffer.allocate(5).put(PHASE_TOTEMS).putInt(Integer.MIN_VALUE).array();
+        }
+        return ByteBuffer.allocate(5 + cursor.key.length).put(currentPhase).putInt(cursor.slot).put(cursor.key).array();
+    }
+
+    /**
+     * 遷移一批飾品數據
+     * @return 最後處理的位置，已處理完所有飾品時為 null
+     */
+    private Cursor migrateOrnaments(Connection conn, byte[] lastKey, int chunkSize) throws SQLException {
+        String selectSql = "SELECT player_uuid, item_data FROM ornaments " +
+                           "WHERE player_uuid > ? AND item_blob IS NULL AND item_hash IS NULL ORDER BY player_uuid LIMIT ?";
+        String updateSql = "UPDATE ornaments SET item_blob = ?, item_data = '' WHERE player_uuid = ? AND item_blob IS NULL AND item_hash IS NULL";
+
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement update = conn.prepareStatement(updateSql)) {
+            select.setBytes(1, lastKey);
+            select.setInt(2, chunkSize);
+
+            int rows = 0;
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    rows++;
+                    lastKey = resultSet.getBytes("player_uuid");
+                    byte[] data = decode(resultSet.getString("item_data"), lastKey);
+                    if (data != null) {
+                        update.setBytes(1, data);
+                        update.setBytes(2, lastKey);
+                        update.addBatch();
+                    }
+                }
+            }
+
+            migratedRows.addAndGet(update.executeBatch().length);
+            return rows < chunkSize ? null : new Cursor(lastKey, Integer.MIN_VALUE);
+        }
+    }
+
+    /**
+     * 遷移一批圖騰數據
+     * @return 最後處理的位置，已處理完所有圖騰時為 null
+     */
+    private Cursor migrateTotems(Connection conn, byte[] lastKey, int lastSlot, int chunkSize) throws SQLException {
+        String selectSql = "SELECT player_uuid, slot_id, item_data FROM totems " +
+                           "WHERE (player_uuid > ? OR (player_uuid = ? AND slot_id > ?)) AND item_blob IS NULL AND item_hash IS NULL " +
+                           "ORDER BY player_uuid, slot_id LIMIT ?";
+        String updateSql = "UPDATE totems SET item_blob = ?, item_data = '' WHERE player_uuid = ? AND slot_id = ? " +
+                           "AND item_blob IS NULL AND item_hash IS NULL";
+
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement update = conn.prepareStatement(updateSql)) {
+            select.setBytes(1, lastKey);
+            select.setBytes(2, lastKey);
+            select.setInt(3, lastSlot);
+            select.setInt(4, chunkSize);
+
+            int rows = 0;
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    rows++;
+                    lastKey = resultSet.getBytes("player_uuid");
+                    lastSlot = resultSet.getInt("slot_id");
+                    byte[] data = decode(resultSet.getString("item_data"), lastKey);
+                    if (data != null) {
+                        update.setBytes(1, data);
+                        update.setBytes(2, lastKey);
+                        update.setInt(3, lastSlot);
+                        update.addBatch();
+                    }
+                }
+            }
+
+            migratedRows.addAndGet(update.executeBatch().length);
+            return rows < chunkSize ? null : new Cursor(lastKey, lastSlot);
+        }
+    }
+
+    /**
+     * 解碼舊版 Base64 文本，無法解碼的行保持原樣並記錄
+     * @param text Base64 文本
+     * @param playerKey 玩家UUID主鍵（用於日誌）
+     * @return 解碼後的數據，失敗時為 null
+     */
+    private byte[] decode(String text, byte[] playerKey) {
+        try {
+            return Base64.getDecoder().decode(text);
+        } catch (IllegalArgumentException e) {
+            failedRows.incrementAndGet();
+            plugin.getLogger().warning("玩家 " + AbstractDatabaseManager.uuidFromBytes(playerKey) + " 的物品數據不是有效的 Base64，已跳過遷移");
+            return null;
+        }
+    }
+
+    /**
+     * 分頁位置
+     */
+    private static final class Cursor {
+        private final byte[] key;
+        private final int slot;
+
+        private Cursor(byte[] key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 緊湊編解碼器：使用伺服器原生的 NBT 字節序列化（ItemStack#serializeAsBytes）
+ * <p>
+ * 該 API 由 Paper 及其分支提供，Spigot 上不存在，因此通過反射調用；
+ * 不可用時 {@link #create()} 返回 null，由調用方回退到舊版編解碼器。
+ * 原生數據自帶數據版本，伺服器升級後讀取時會自動轉換。
+ */
+public class BytesItemCodec implements ItemCodec {
+
+    public static final int ID = 1;
+
+    private final Method serializeMethod;
+    private final Method deserializeMethod;
+
+    private BytesItemCodec(Method serializeMethod, Method deserializeMethod) {
+        this.serializeMethod = serializeMethod;
+        this.deserializeMethod = deserializeMethod;
+    }
+
+    /**
+     * 創建編解碼器
+     * @return 編解碼器，伺服器不支持時為 null
+     */
+    public static BytesItemCodec create() {
+        try {
+            Method serialize = ItemStack.class.getMethod("serializeAsBytes");
+            Method deserialize = ItemStack.class.getMethod("deserializeBytes", byte[].class);
+            return new BytesItemCodec(serialize, deserialize);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "bytes";
+    }
+
+    @Override
+    public byte[] encode(ItemStack itemStack) throws IOException {
+        try {
+            return (byte[]) serializeMethod.invoke(itemStack);
+        } catch (InvocationTargetException e) {
+            throw new IOException("無法編碼物品: " + e.getCause(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("無法編碼物品: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ItemStack decode(byte[] data) throws IOException {
+        try {
+            return (ItemStack) deserializeMethod.invoke(null, (Object) data);
+        } catch (InvocationTargetException e) {
+            throw new IOException("無法解碼物品: " + e.getCause(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("無法解碼物品: " + e.getMessage(), e);
+        }
+    }
+}
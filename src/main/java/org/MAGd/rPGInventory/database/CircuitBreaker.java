@@ -0,0 +1,156 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 數據庫斷路器
+ * <p>
+ * 連續失敗達到閾值後斷開，在斷開期間所有數據庫操作立即失敗，不再佔用線程等待連接超時；
+ * 斷開時間結束後只放行一個探測請求，成功則恢復，失敗則再次斷開（斷開時間加倍，有上限）。
+ * 探測請求若因非數據庫異常中斷而沒有回報結果，超過一個斷開時間後再放行新的探測請求。
+ */
+public class CircuitBreaker {
+
+    /**
+     * 斷路器狀態
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final RPGInventory plugin;
+    private final int failureThreshold;
+    private final long baseOpenMs;
+    private final long maxOpenMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    // OPEN 狀態下為斷開結束時間，HALF_OPEN 狀態下為放行下一個探測請求的時間
+    private long openUntil;
+    private long currentOpenMs;
+
+    // 統計數據
+    private final AtomicLong tripCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public CircuitBreaker(RPGInventory plugin) {
+        this.plugin = plugin;
+        FileConfiguration config = plugin.getConfig();
+        this.failureThreshold = Math.max(1, config.getInt("database.circuit-breaker.failure-threshold", 5));
+        this.baseOpenMs = Math.max(1, config.getLong("database.circuit-breaker.open-duration", 10)) * 1000L;
+        this.maxOpenMs = Math.max(baseOpenMs, config.getLong("database.circuit-breaker.max-open-duration", 120) * 1000L);
+        this.currentOpenMs = baseOpenMs;
+    }
+
+    /**
+     * 檢查是否允許訪問數據庫
+     * @return 是否允許；返回 true 後必須調用 recordSuccess 或 recordFailure
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() >= openUntil) {
+                    // 放行一個探測請求
+                    state = State.HALF_OPEN;
+                    openUntil = System.currentTimeMillis() + currentOpenMs;
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                if (System.currentTimeMillis() >= openUntil) {
+                    // 上一個探測請求沒有回報結果（例如拋出了運行時異常），放行新的探測請求
+                    plugin.getLogger().warning("數據庫探測請求在 " + currentOpenMs / 1000 + " 秒內沒有回報結果，重新探測");
+                    openUntil = System.currentTimeMillis() + currentOpenMs;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 記錄一次成功的數據庫操作
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            plugin.getLogger().info("數據庫已恢復，斷路器閉合");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        currentOpenMs = baseOpenMs;
+    }
+
+    /**
+     * 記錄一次失敗的數據庫操作（連接失敗、超時等）
+     */
+    public synchronized void recordFailure() {
+        failureCount.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            // 探測失敗，延長斷開時間
+            currentOpenMs = Math.min(maxOpenMs, currentOpenMs * 2);
+            trip();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            trip();
+        }
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + currentOpenMs;
+        tripCount.incrementAndGet();
+        plugin.getLogger().warning("數據庫連續失敗 " + consecutiveFailures + " 次，斷路器斷開 " + currentOpenMs / 1000 +
+                " 秒，期間的數據庫操作將立即失敗");
+    }
+
+    /**
+     * 強制閉合斷路器（例如插件關閉前最後一次保存）
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        currentOpenMs = baseOpenMs;
+    }
+
+    /**
+     * 獲取當前狀態
+     * @return 狀態
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 生成斷路器狀態描述
+     * @return 狀態文本
+     */
+    public synchronized String getStatusLine() {
+        String stateText;
+        switch (state) {
+            case OPEN:
+                stateText = "§c斷開 §7(" + Math.max(0, openUntil - System.currentTimeMillis()) / 1000 + " 秒後探測)";
+                break;
+            case HALF_OPEN:
+                stateText = "§e探測中";
+                break;
+            default:
+                stateText = "§a閉合";
+                break;
+        }
+        return "§e斷路器: " + stateText + " §7| §e連續失敗: §f" + consecutiveFailures + " §7| §e失敗: §f" + failureCount.get() +
+                " §7| §e斷開: §f" + tripCount.get() + " 次 §7| §e已拒絕: §f" + rejectedCount.get();
+    }
+}
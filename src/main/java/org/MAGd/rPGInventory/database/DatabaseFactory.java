@@ -26,6 +26,18 @@ public class DatabaseFactory {
                     plugin.getLogger().info("配置為使用 MySQL 數據庫");
                     manager = new MySQLManager(plugin);
                     break;
+                case "sqlite-sharded":
+                    plugin.getLogger().info("配置為使用分片 SQLite 數據庫");
+                    manager = new ShardedSQLiteManager(plugin);
+                    break;
+                case "logstore":
+                    plugin.getLogger().info("配置為使用日誌結構存儲");
+                    manager = new LogStoreManager(plugin);
+                    break;
+                case "h2":
+                    plugin.getLogger().info("配置為使用 H2 內存數據庫（MySQL 模式）");
+                    manager = new H2Manager(plugin);
+                    break;
                 case "sqlite":
                 default:
                     plugin.getLogger().info("配置為使用 SQLite 數據庫");
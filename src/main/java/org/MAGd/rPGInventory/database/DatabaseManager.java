@@ -3,8 +3,14 @@ package org.MAGd.rPGInventory.database;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * 數據庫管理器接口
@@ -31,6 +37,16 @@ public interface DatabaseManager {
      */
     boolean saveInventory(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems);
     
+    /**
+     * 在同一個事務中批量保存多名玩家的物品欄數據（組提交）
+     * <p>
+     * 每名玩家的快照版本以比較並設置的方式寫入；數據庫中已有相同或更新版本的快照不會寫入，
+     * 但同樣視為已完成（重試也不會成功），並計入版本衝突。
+     * @param loadouts 玩家物品欄快照
+     * @return 已保存（或因過期被拒絕）的玩家UUID
+     */
+    Set<UUID> saveInventories(Collection<PlayerLoadout> loadouts);
+    
     /**
      * 加載玩家的飾品欄物品
      * @param playerUUID 玩家UUID
@@ -45,10 +61,134 @@ public interface DatabaseManager {
      */
     Map<Integer, ItemStack> loadTotems(UUID playerUUID);
     
+    /**
+     * 使用一次查詢（一個連接）加載玩家的飾品與圖騰
+     * @param playerUUID 玩家UUID
+     * @return 物品欄快照，沒有數據時為空快照；加載失敗時為 null
+     */
+    PlayerLoadout loadProfile(UUID playerUUID);
+    
+    /**
+     * 批量加載多名玩家的物品欄（IN 查詢）
+     * @param playerUUIDs 玩家UUID
+     * @return 玩家UUID -> 物品欄快照，沒有數據的玩家為空快照；加載失敗的玩家不會出現在結果中
+     */
+    Map<UUID, PlayerLoadout> loadProfiles(Collection<UUID> playerUUIDs);
+    
+    /**
+     * 刪除玩家的所有物品欄數據
+     * <p>
+     * 不會清除保存隊列中該玩家尚未寫入的快照，調用方需要確保玩家不在線。
+     * @param playerUUID 玩家UUID
+     * @return 是否成功
+     */
+    boolean deleteInventory(UUID playerUUID);
+    
+    /**
+     * 在存儲線程池中以加載優先級執行 {@link #loadProfile(UUID)}
+     * <p>
+     * 返回的 Future 在開始執行前被取消或超時時不會查詢數據庫；結果需要回到主線程時使用
+     * {@code thenAcceptAsync(..., getStorageExecutor().mainThread())}。
+     * @param playerUUID 玩家UUID
+     * @return 物品欄快照，加載失敗時結果為 null；線程池隊列已滿時以 RejectedExecutionException 異常完成
+     */
+    CompletableFuture<PlayerLoadout> loadProfileAsync(UUID playerUUID);
+    
+    /**
+     * 異步保存一名玩家的物品欄
+     * <p>
+     * 已設置保存隊列時以快速通道加入隊列（先寫入本地日誌），在該快照或之後的快照寫入數據庫時完成；
+     * 沒有保存隊列時（例如基準測試）在存儲線程池中以保存優先級直接寫入。
+     * @param loadout 玩家物品欄快照
+     * @return 是否已寫入；關閉前未能寫入（已保存到本地日誌）時為 false，直接寫入時線程池隊列已滿以 RejectedExecutionException 異常完成
+     */
+    CompletableFuture<Boolean> saveAsync(PlayerLoadout loadout);
+    
+    /**
+     * 在存儲線程池中以保存優先級執行 {@link #deleteInventory(UUID)}
+     * @param playerUUID 玩家UUID
+     * @return 是否成功；線程池隊列已滿時以 RejectedExecutionException 異常完成
+     */
+    CompletableFuture<Boolean> deleteAsync(UUID playerUUID);
+    
+    /**
+     * 設置寫後保存隊列，之後 {@link #saveAsync(PlayerLoadout)} 經過隊列寫入
+     * @param saveQueue 保存隊列
+     */
+    void setSaveQueue(SaveQueue saveQueue);
+    
+    /**
+     * 獲取執行數據庫操作的存儲線程池
+     * @return 存儲線程池
+     */
+    StorageExecutor getStorageExecutor();
+    
     /**
      * 檢查玩家是否有保存的數據
      * @param playerUUID 玩家UUID
      * @return 是否有數據
      */
     boolean hasData(UUID playerUUID);
+    
+    /**
+     * 遍歷所有有數據的玩家（用於導出），不會一次把所有玩家的數據讀入內存
+     * <p>
+     * 遍歷期間寫入的玩家可能出現也可能不出現在結果中。
+     * @param consumer 接收玩家UUID；拋出的運行時異常會中止遍歷並傳給調用方
+     * @return 是否完整遍歷；讀取失敗時返回 false（已記錄日誌）
+     */
+    boolean forEachPlayer(Consumer<UUID> consumer);
+    
+    /**
+     * 獲取可以同時執行寫入事務的連接數，用於關閉時的並行寫入
+     * @return 連接數
+     */
+    default int getMaxWriteConcurrency() {
+        return 1;
+    }
+    
+    /**
+     * 強制閉合斷路器（例如插件關閉前最後一次保存）；沒有斷路器的存儲後端無需處理
+     */
+    default void resetCircuitBreaker() {
+    }
+    
+    /**
+     * 獲取存儲使用的物品編解碼器，本地日誌、導出與基準測試使用相同的編解碼器
+     * @return 物品編解碼器
+     */
+    ItemCodecRegistry getItemCodecs();
+    
+    /**
+     * 生成存儲後端的統計信息（斷路器、版本衝突、編解碼器等）
+     * @return 多行統計文本
+     */
+    default List<String> getStatsLines() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * 生成連接池統計信息
+     * @return 多行統計文本，沒有連接池的存儲後端為空
+     */
+    default List<String> getPoolStatsLines() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * 生成結構遷移狀態
+     * @return 多行狀態文本，沒有結構遷移的存儲後端為空
+     */
+    default List<String> getMigrationStatusLines() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * 從現有數據訓練新的物品壓縮字典並保存，之後的寫入會使用新字典（應在異步線程中調用）
+     * @param sampleLimit 每張表最多讀取的行數
+     * @return 多行結果文本；訓練失敗時包含錯誤信息（已記錄日誌）
+     */
+    default List<String> trainDictionaries(int sampleLimit) {
+        return Collections.singletonList("§c當前的存儲後端不支持訓練物品壓縮字典");
+    }
 } 
\ No newline at end of file
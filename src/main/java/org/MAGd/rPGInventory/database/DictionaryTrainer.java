@@ -0,0 +1,110 @@
+package org.MAGd.rPGInventory.database;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 從現有物品數據中訓練 Deflate 預設字典
+ * <p>
+ * 同一種 ExecutableItems 物品在不同玩家之間的數據幾乎相同，
+ * 因此按出現次數從高到低挑選樣本，只加入當前字典還不能很好覆蓋的樣本，
+ * 直到填滿 Deflate 的 32KB 窗口。出現次數最多的樣本放在字典末尾，匹配距離最短。
+ */
+public class DictionaryTrainer {
+
+    // Deflate 只能引用最近 32KB 的數據
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    // 參與挑選的不同樣本數上限，避免訓練時間過長
+    private static final int MAX_CANDIDATES = 2000;
+    // 樣本用當前字典壓縮後仍大於原大小的這個比例時，認為還未被覆蓋
+    private static final double COVERAGE_RATIO = 0.25;
+
+    private final int maxSize;
+
+    /**
+     * 構造函數
+     * @param maxSize 字典最大大小（字節）
+     */
+    public DictionaryTrainer(int maxSize) {
+        this.maxSize = Math.max(256, Math.min(MAX_DICTIONARY_SIZE, maxSize));
+    }
+
+    /**
+     * 訓練字典
+     * @param samples 編解碼器輸出的原始物品數據
+     * @return 字典內容，樣本為空時返回空數組
+     */
+    public byte[] train(List<byte[]> samples) {
+        // 統計每種數據出現的次數
+        Map<ByteBuffer, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            if (sample.length > 0 && sample.length <= maxSize) {
+                frequencies.merge(ByteBuffer.wrap(sample), 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<ByteBuffer, Integer>> candidates = new ArrayList<>(frequencies.entrySet());
+        candidates.sort((a, b) -> {
+            int byCount = Integer.compare(b.getValue(), a.getValue());
+            return byCount != 0 ? byCount : Integer.compare(a.getKey().remaining(), b.getKey().remaining());
+        });
+        if (candidates.size() > MAX_CANDIDATES) {
+            candidates = candidates.subList(0, MAX_CANDIDATES);
+        }
+
+        // 按出現次數從高到低挑選
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        byte[] dictionary = new byte[0];
+        for (Map.Entry<ByteBuffer, Integer> candidate : candidates) {
+            byte[] sample = candidate.getKey().array();
+            if (size + sample.length > maxSize) {
+                continue;
+            }
+            if (dictionary.length > 0) {
+                int compressed = ItemCodecRegistry.deflate(sample, dictionary, 6).length;
+                if (compressed < sample.length * COVERAGE_RATIO) {
+                    continue;
+                }
+            }
+            selected.add(sample);
+            size += sample.length;
+            dictionary = assemble(selected, size);
+        }
+        return dictionary;
+    }
+
+    /**
+     * 把已選樣本拼接為字典，出現次數最多的放在最後
+     * @param selected 已選樣本（按出現次數從高到低）
+     * @param size 總大小
+     * @return 字典內容
+     */
+    private byte[] assemble(List<byte[]> selected, int size) {
+        List<byte[]> ordered = new ArrayList<>(selected);
+        Collections.reverse(ordered);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] sample : ordered) {
+            buffer.put(sample);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 計算一組樣本在指定字典下的壓縮後總大小
+     * @param samples 樣本
+     * @param dictionary 字典，可為 null
+     * @return 壓縮後總字節數
+     */
+    public static long compressedSize(List<byte[]> samples, byte[] dictionary) {
+        long total = 0;
+        for (byte[] sample : samples) {
+            total += ItemCodecRegistry.deflate(sample, dictionary, 6).length;
+        }
+        return total;
+    }
+}
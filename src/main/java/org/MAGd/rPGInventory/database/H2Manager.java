@@ -0,0 +1,194 @@
+package org.MAGd.rPGInventory.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.MAGd.rPGInventory.RPGInventory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * H2 內存數據庫管理器（MySQL 兼容模式）
+ * <p>
+ * 沿用 {@link MySQLManager} 的全部 SQL（InnoDB 建表語句、ON DUPLICATE KEY UPDATE、INSERT IGNORE 等）與
+ * HikariCP 連接池設置，不需要 MySQL 伺服器即可在本地測試與基準測試 MySQL 代碼路徑。
+ * 同樣視為共享存儲（默認不啟用存在過濾器），使行為與 MySQL 一致。
+ * <p>
+ * 數據只保存在內存中，伺服器關閉後全部丟失，不應用於正式伺服器。H2 驅動不打包進插件，
+ * 需要時把 h2 的 jar 放到插件數據目錄的 lib 目錄中（或放到伺服器的 classpath 上），運行時再加載。
+ */
+public class H2Manager extends MySQLManager {
+
+    private final String databaseName;
+    // 從 lib 目錄加載 H2 驅動的類加載器，驅動已在 classpath 上時為 null
+    private URLClassLoader driverLoader;
+    // 直接連接內存數據庫的數據源，連接池與關閉數據庫都使用它
+    private DataSource h2DataSource;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public H2Manager(RPGInventory plugin) {
+        this(plugin, plugin.getConfig().getString("database.h2.name", "rpginventory"));
+    }
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param databaseName 內存數據庫名稱，同一進程中名稱相同的實例共用數據
+     */
+    public H2Manager(RPGInventory plugin, String databaseName) {
+        super(plugin);
+        this.databaseName = databaseName;
+    }
+
+    private String getJdbcUrl() {
+        // 數據庫在連接池關閉前一直保留（即使所有連接都已空閒回收），在 close() 中顯式關閉
+        return "jdbc:h2:mem:" + databaseName + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    @Override
+    protected HikariConfig createPoolConfig() {
+        h2DataSource = createH2DataSource();
+        if (h2DataSource == null) {
+            return null;
+        }
+        plugin.getLogger().warning("正在使用 H2 內存數據庫，數據在伺服器關閉後會全部丟失，僅用於測試");
+
+        HikariConfig config = new HikariConfig();
+        // 驅動可能來自插件類加載器看不到的 lib 目錄，直接使用驅動的數據源，不經過 DriverManager
+        config.setDataSource(h2DataSource);
+        config.setPoolName("RPGInventoryH2Pool");
+        // 使用 MySQL 的連接池參數；database.mysql.properties 是 MySQL 驅動的屬性，不適用於 H2
+        getSettings().applyPoolTo(config);
+        return config;
+    }
+
+    /**
+     * 查找 H2 驅動並創建連接內存數據庫的數據源
+     * @return 數據源，找不到驅動時返回 null
+     */
+    private DataSource createH2DataSource() {
+        ClassLoader loader = findDriverLoader();
+        if (loader == null) {
+            plugin.getLogger().severe("找不到 H2 JDBC 驅動：H2 只用於測試，沒有打包進插件，請把 h2 的 jar 放到 " +
+                    new File(plugin.getDataFolder(), "lib").getPath() + " 目錄中");
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName("org.h2.jdbcx.JdbcDataSource", true, loader);
+            DataSource source = (DataSource) type.getConstructor().newInstance();
+            type.getMethod("setURL", String.class).invoke(source, getJdbcUrl());
+            plugin.getLogger().info("H2 JDBC 驅動加載成功");
+            return source;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            plugin.getLogger().severe("無法加載 H2 JDBC 驅動: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 查找能加載 H2 驅動的類加載器：先查 classpath，再查插件數據目錄中 lib 目錄裡的 h2 jar
+     * @return 類加載器，找不到驅動時返回 null
+     */
+    private ClassLoader findDriverLoader() {
+        ClassLoader own = getClass().getClassLoader();
+        if (isDriverOnClasspath()) {
+            return own;
+        }
+        File jar = findDriverJar(plugin);
+        if (jar == null) {
+            return null;
+        }
+        try {
+            driverLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, own);
+            return driverLoader;
+        } catch (MalformedURLException e) {
+            plugin.getLogger().severe("無法讀取 H2 驅動文件 " + jar + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 檢查 H2 驅動是否可用（在 classpath 上，或插件數據目錄的 lib 目錄中有 h2 的 jar）
+     * @param plugin 插件實例
+     * @return 是否可用
+     */
+    public static boolean isDriverAvailable(RPGInventory plugin) {
+        return isDriverOnClasspath() || findDriverJar(plugin) != null;
+    }
+
+    private static boolean isDriverOnClasspath() {
+        try {
+            Class.forName("org.h2.Driver", false, H2Manager.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 查找插件數據目錄中 lib 目錄裡的 h2 jar，有多個版本時使用文件名排序最後的一個
+     * @return jar 文件，找不到時返回 null
+     */
+    private static File findDriverJar(RPGInventory plugin) {
+        File[] jars = new File(plugin.getDataFolder(), "lib").listFiles(
+                (dir, name) -> name.startsWith("h2") && name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            return null;
+        }
+        Arrays.sort(jars);
+        return jars[jars.length - 1];
+    }
+
+    @Override
+    protected String getDisplayName() {
+        return "H2 (MySQL 模式)";
+    }
+
+    @Override
+    protected String describeSettings() {
+        return getSettings().describePool() + ", 內存數據庫 " + databaseName;
+    }
+
+    @Override
+    protected void renameLegacyTable(Connection conn, String table) throws SQLException {
+        // H2 不支持 RENAME TABLE；索引名在整個模式中唯一，改名後刪除原索引，新表重新創建
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("ALTER TABLE `" + table + "` RENAME TO `" + table + LEGACY_SUFFIX + "`");
+            statement.executeUpdate("DROP INDEX IF EXISTS `idx_" + table + "_item_hash`");
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (h2DataSource == null) {
+            return;
+        }
+        // 釋放內存數據庫
+        try (Connection conn = h2DataSource.getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            plugin.getLogger().warning("關閉 H2 內存數據庫失敗: " + e.getMessage());
+        }
+        h2DataSource = null;
+        if (driverLoader != null) {
+            try {
+                driverLoader.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("關閉 H2 驅動類加載器失敗: " + e.getMessage());
+            }
+            driverLoader = null;
+        }
+    }
+}
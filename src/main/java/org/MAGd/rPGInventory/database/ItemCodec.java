@@ -0,0 +1,42 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+
+/**
+ * 物品編解碼器，負責物品與字節數據之間的轉換
+ * <p>
+ * 每種編解碼器都有固定的 ID，寫入數據庫時會連同 ID 一起保存，
+ * 因此已有的 ID 不能更改或重複使用。
+ */
+public interface ItemCodec {
+
+    /**
+     * 獲取編解碼器 ID
+     * @return 編解碼器 ID（0-255）
+     */
+    int getId();
+
+    /**
+     * 獲取編解碼器名稱（用於配置與日誌）
+     * @return 名稱
+     */
+    String getName();
+
+    /**
+     * 編碼物品
+     * @param itemStack 物品
+     * @return 編碼後的字節數據
+     * @throws IOException 編碼失敗
+     */
+    byte[] encode(ItemStack itemStack) throws IOException;
+
+    /**
+     * 解碼物品
+     * @param data 編碼後的字節數據
+     * @return 物品
+     * @throws IOException 解碼失敗
+     */
+    ItemStack decode(byte[] data) throws IOException;
+}
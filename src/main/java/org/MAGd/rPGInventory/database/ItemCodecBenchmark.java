@@ -0,0 +1,103 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 物品編解碼器基準測試，比較各編解碼器的編碼/解碼耗時與數據大小
+ * <p>
+ * 應在異步線程中執行，結果以聊天文本返回。
+ */
+public class ItemCodecBenchmark {
+
+    private final ItemCodecRegistry registry;
+    private final List<ItemStack> samples;
+    private final int iterations;
+
+    /**
+     * 構造函數
+     * @param registry 編解碼器註冊表
+     * @param samples 測試用物品（調用方應傳入副本）
+     * @param iterations 每個物品的重複次數
+     */
+    public ItemCodecBenchmark(ItemCodecRegistry registry, List<ItemStack> samples, int iterations) {
+        this.registry = registry;
+        this.samples = samples;
+        this.iterations = iterations;
+    }
+
+    /**
+     * 執行基準測試
+     * @return 多行結果文本
+     */
+    public List<String> run() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e樣本: §f" + samples.size() + " 個物品 §7| §e重複: §f" + iterations + " 次 §7| §e寫入使用: §f" + registry.getWriteCodec().getName());
+
+        for (ItemCodec codec : registry.getCodecs()) {
+            try {
+                // 預熱，讓 JIT 完成編譯
+                measure(codec, Math.max(1, iterations / 10));
+                Result result = measure(codec, iterations);
+                lines.add(String.format("§e%s: §f編碼 %.2f µs §7| §f解碼 %.2f µs §7| §f平均 %d 字節",
+                        codec.getName(),
+                        result.encodeNanos / 1000.0 / result.operations,
+                        result.decodeNanos / 1000.0 / result.operations,
+                        result.totalBytes / Math.max(1, samples.size())));
+            } catch (IOException e) {
+                lines.add("§e" + codec.getName() + ": §c測試失敗 - " + e.getMessage());
+            }
+        }
+        return lines;
+    }
+
+    private Result measure(ItemCodec codec, int rounds) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(samples.size());
+        for (ItemStack sample : samples) {
+            encoded.add(registry.encode(codec, sample));
+        }
+
+        long totalBytes = 0;
+        for (byte[] data : encoded) {
+            totalBytes += data.length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (ItemStack sample : samples) {
+                registry.encode(codec, sample);
+            }
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (byte[] data : encoded) {
+                registry.decode(data);
+            }
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        return new Result(encodeNanos, decodeNanos, totalBytes, (long) rounds * samples.size());
+    }
+
+    /**
+     * 單個編解碼器的測試結果
+     */
+    private static final class Result {
+        private final long encodeNanos;
+        private final long decodeNanos;
+        private final long totalBytes;
+        private final long operations;
+
+        private Result(long encodeNanos, long decodeNanos, long totalBytes, long operations) {
+            this.encodeNanos = encodeNanos;
+            this.decodeNanos = decodeNanos;
+            this.totalBytes = totalBytes;
+            this.operations = Math.max(1, operations);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 編解碼器註冊表，負責選擇寫入用的編解碼器，並為數據加上編碼頭
+ * <p>
+ * 編碼頭格式（8 字節，大端序）：
+ * <pre>
+ * [0]    魔數 'R' (0x52)
+ * [1]    編碼頭版本
+ * [2]    編解碼器 ID
+ * [3]    標誌位（0x01 = Deflate 壓縮）
+ * [4-7]  寫入時伺服器的數據版本
+ * </pre>
+ * 壓縮的數據在編碼頭之後是 4 字節的字典 ID（0 表示不使用字典），然後是 Deflate 數據流。
+ * 字典保存在 item_dictionaries 表中，只會新增不會刪除，因此舊行始終可以解壓。
+ * <p>
+ * 舊版數據沒有編碼頭，是以 0xACED 開頭的 Java 序列化流，讀取時直接交給舊版編解碼器。
+ */
+public class ItemCodecRegistry {
+
+    private static final byte MAGIC = 0x52;
+    private static final byte HEADER_VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    private static final byte FLAG_DEFLATE = 0x01;
+
+    private final LegacyItemCodec legacyCodec = new LegacyItemCodec();
+    private final ItemCodec[] codecsById = new ItemCodec[256];
+    private final List<ItemCodec> codecs = new ArrayList<>();
+    private final ItemCodec writeCodec;
+    private final int dataVersion;
+
+    // 壓縮設置
+    private final boolean compression;
+    private final int compressionLevel;
+    private final int compressionMinSize;
+    // 已加載的壓縮字典（字典ID -> 字典內容）
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    // 寫入時使用的字典，0 表示不使用字典
+    private volatile int activeDictionaryId;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public ItemCodecRegistry(RPGInventory plugin) {
+        register(legacyCodec);
+        BytesItemCodec bytesCodec = BytesItemCodec.create();
+        if (bytesCodec != null) {
+            register(bytesCodec);
+        }
+
+        String configured = plugin.getConfig().getString("database.item-codec", "bytes");
+        ItemCodec selected = getCodec(configured);
+        if (selected == null) {
+            plugin.getLogger().warning("物品編解碼器 '" + configured + "' 在此伺服器上不可用，改用 legacy");
+            selected = legacyCodec;
+        }
+        this.writeCodec = selected;
+        this.dataVersion = currentDataVersion();
+
+        this.compression = plugin.getConfig().getBoolean("database.compression.enabled", true);
+        this.compressionLevel = Math.max(1, Math.min(9, plugin.getConfig().getInt("database.compression.level", 6)));
+        this.compressionMinSize = Math.max(0, plugin.getConfig().getInt("database.compression.min-size", 64));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int currentDataVersion() {
+        try {
+            return Bukkit.getUnsafe().getDataVersion();
+        } catch (Throwable e) {
+            return 0;
+        }
+    }
+
+    private void register(ItemCodec codec) {
+        codecsById[codec.getId()] = codec;
+        codecs.add(codec);
+    }
+
+    /**
+     * 按名稱獲取編解碼器
+     * @param name 名稱
+     * @return 編解碼器，不存在時為 null
+     */
+    public ItemCodec getCodec(String name) {
+        for (ItemCodec codec : codecs) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 獲取此伺服器上可用的所有編解碼器
+     * @return 不可修改的列表
+     */
+    public List<ItemCodec> getCodecs() {
+        return Collections.unmodifiableList(codecs);
+    }
+
+    /**
+     * 獲取寫入用的編解碼器
+     * @return 編解碼器
+     */
+    public ItemCodec getWriteCodec() {
+        return writeCodec;
+    }
+
+    /**
+     * 檢查是否開啟壓縮
+     * @return 是否開啟
+     */
+    public boolean isCompressionEnabled() {
+        return compression;
+    }
+
+    /**
+     * 註冊壓縮字典
+     * @param id 字典ID
+     * @param dictionary 字典內容
+     * @param activate 是否用作寫入時的字典
+     */
+    public void registerDictionary(int id, byte[] dictionary, boolean activate) {
+        dictionaries.put(id, dictionary);
+        if (activate) {
+            activeDictionaryId = id;
+        }
+    }
+
+    /**
+     * 獲取寫入時使用的字典ID
+     * @return 字典ID，0 表示不使用字典
+     */
+    public int getActiveDictionaryId() {
+        return activeDictionaryId;
+    }
+
+    /**
+     * 獲取壓縮字典
+     * @param id 字典ID
+     * @return 字典內容，不存在時為 null
+     */
+    public byte[] getDictionary(int id) {
+        return dictionaries.get(id);
+    }
+
+    /**
+     * 獲取已加載的字典數量
+     * @return 字典數量
+     */
+    public int getDictionaryCount() {
+        return dictionaries.size();
+    }
+
+    /**
+     * 獲取編碼與壓縮狀態描述
+     * @return 狀態文本
+     */
+    public String getStatusLine() {
+        String compressionState;
+        if (!compression) {
+            compressionState = "關閉";
+        } else if (activeDictionaryId == 0) {
+            compressionState = "開啟 §7(未使用字典)";
+        } else {
+            compressionState = "開啟 §7(字典 #" + activeDictionaryId + ", 共 " + dictionaries.size() + " 個)";
+        }
+        return "§e物品編碼: §f" + writeCodec.getName() + " §7| §e壓縮: §f" + compressionState;
+    }
+
+    /**
+     * 使用寫入用的編解碼器編碼物品，不加編碼頭也不壓縮（用於訓練字典）
+     * @param itemStack 物品
+     * @return 編解碼器輸出的原始數據
+     * @throws IOException 編碼失敗
+     */
+    public byte[] encodeBody(ItemStack itemStack) throws IOException {
+        ItemCodec codec = itemStack.getType().isAir() ? legacyCodec : writeCodec;
+        return codec.encode(itemStack);
+    }
+
+    /**
+     * 使用寫入用的編解碼器編碼物品，並加上編碼頭
+     * @param itemStack 物品
+     * @return 帶編碼頭的字節數據
+     * @throws IOException 編碼失敗
+     */
+    public byte[] encode(ItemStack itemStack) throws IOException {
+        // 原生字節序列化不接受空氣物品，這類物品使用舊版格式
+        ItemCodec codec = itemStack.getType().isAir() ? legacyCodec : writeCodec;
+        return encode(codec, itemStack);
+    }
+
+    /**
+     * 使用指定的編解碼器編碼物品，並加上編碼頭
+     * @param codec 編解碼器
+     * @param itemStack 物品
+     * @return 帶編碼頭的字節數據
+     * @throws IOException 編碼失敗
+     */
+    public byte[] encode(ItemCodec codec, ItemStack itemStack) throws IOException {
+        byte[] body = codec.encode(itemStack);
+
+        if (compression && body.length >= compressionMinSize) {
+            int dictionaryId = activeDictionaryId;
+            byte[] compressed = deflate(body, dictionaries.get(dictionaryId), compressionLevel);
+            // 只有確實變小時才保存壓縮結果
+            if (compressed.length + 4 < body.length) {
+                return ByteBuffer.allocate(HEADER_SIZE + 4 + compressed.length)
+                        .put(MAGIC)
+                        .put(HEADER_VERSION)
+                        .put((byte) codec.getId())
+                        .put(FLAG_DEFLATE)
+                        .putInt(dataVersion)
+                        .putInt(dictionaryId)
+                        .put(compressed)
+                        .array();
+            }
+        }
+
+        return frame(codec, body);
+    }
+
+    /**
+     * 使用寫入用的編解碼器編碼物品並加上編碼頭，不壓縮（用於對延遲敏感的本地日誌）
+     * @param itemStack 物品
+     * @return 帶編碼頭的字節數據
+     * @throws IOException 編碼失敗
+     */
+    public byte[] encodeUncompressed(ItemStack itemStack) throws IOException {
+        ItemCodec codec = itemStack.getType().isAir() ? legacyCodec : writeCodec;
+        return frame(codec, codec.encode(itemStack));
+    }
+
+    private byte[] frame(ItemCodec codec, byte[] body) {
+        return ByteBuffer.allocate(HEADER_SIZE + body.length)
+                .put(MAGIC)
+                .put(HEADER_VERSION)
+                .put((byte) codec.getId())
+                .put((byte) 0)
+                .putInt(dataVersion)
+                .put(body)
+                .array();
+    }
+
+    /**
+     * 解碼物品，同時支持帶編碼頭的數據與舊版數據
+     * @param data 字節數據
+     * @return 物品
+     * @throws IOException 解碼失敗或編解碼器不可用
+     */
+    public ItemStack decode(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC) {
+            return legacyCodec.decode(data);
+        }
+        if (data[1] != HEADER_VERSION) {
+            throw new IOException("不支持的物品編碼頭版本: " + data[1]);
+        }
+        if ((data[3] & ~FLAG_DEFLATE) != 0) {
+            throw new IOException("不支持的物品編碼標誌: " + data[3]);
+        }
+
+        ItemCodec codec = codecsById[data[2] & 0xFF];
+        if (codec == null) {
+            throw new IOException("物品數據使用的編解碼器 (ID " + (data[2] & 0xFF) + ") 在此伺服器上不可用");
+        }
+
+        byte[] body;
+        if ((data[3] & FLAG_DEFLATE) != 0) {
+            int dictionaryId = ByteBuffer.wrap(data, HEADER_SIZE, 4).getInt();
+            byte[] dictionary = dictionaries.get(dictionaryId);
+            if (dictionaryId != 0 && dictionary == null) {
+                throw new IOException("物品數據使用的壓縮字典 #" + dictionaryId + " 不存在");
+            }
+            body = inflate(data, HEADER_SIZE + 4, dictionary);
+        } else {
+            body = new byte[data.length - HEADER_SIZE];
+            System.arraycopy(data, HEADER_SIZE, body, 0, body.length);
+        }
+        return codec.decode(body);
+    }
+
+    /**
+     * 使用 Deflate 壓縮數據
+     * @param data 原始數據
+     * @param dictionary 預設字典，可為 null
+     * @param level 壓縮等級
+     * @return 壓縮後的數據
+     */
+    static byte[] deflate(byte[] data, byte[] dictionary, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解壓 Deflate 數據
+     * @param data 包含壓縮數據的數組
+     * @param offset 壓縮數據的起始位置
+     * @param dictionary 預設字典，可為 null
+     * @return 解壓後的數據
+     * @throws IOException 數據損壞或缺少字典
+     */
+    private static byte[] inflate(byte[] data, int offset, byte[] dictionary) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IOException("壓縮數據需要字典");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("壓縮數據不完整");
+                    }
+                }
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("壓縮數據損壞: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 讀取數據寫入時的伺服器數據版本
+     * @param data 字節數據
+     * @return 數據版本，舊版數據返回 -1
+     */
+    public static int getDataVersion(byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC) {
+            return -1;
+        }
+        return ByteBuffer.wrap(data, 4, 4).getInt();
+    }
+}
@@ -0,0 +1,124 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 內容尋址的物品去重：相同的物品數據只在 items 表中保存一份，槽位只記錄其 SHA-256 哈希
+ * <p>
+ * 為避免每次保存都寫入 items 表，會記住最近寫入（或刷新 last_used）過的哈希；
+ * 記錄超過寬限期的一半後才需要再刷新一次。垃圾回收只刪除超過寬限期未被刷新且沒有任何引用的物品，
+ * 因此正在寫入的引用所指向的物品不會被回收，多台伺服器共用數據庫時也是如此。
+ * <p>
+ * 讀取時每個哈希只反序列化一次，之後返回原型的副本。
+ */
+public class ItemDeduplicator {
+
+    private final boolean enabled;
+    private final long gracePeriodMs;
+    // 最近刷新過 last_used 的哈希 -> 刷新時間
+    private final Map<ByteBuffer, Long> touchedAt;
+    // 已反序列化的物品原型
+    private final Map<ByteBuffer, ItemStack> prototypes;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public ItemDeduplicator(RPGInventory plugin) {
+        FileConfiguration config = plugin.getConfig();
+        this.enabled = config.getBoolean("database.dedup.enabled", false);
+        this.gracePeriodMs = Math.max(1, config.getLong("database.dedup.grace-period", 1440)) * 60_000L;
+        this.touchedAt = lruMap(10000);
+        this.prototypes = lruMap(Math.max(0, config.getInt("database.dedup.prototype-cache-size", 1024)));
+    }
+
+    private static <V> Map<ByteBuffer, V> lruMap(int capacity) {
+        return Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, V> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * 檢查是否以去重模式寫入
+     * @return 是否開啟
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 獲取垃圾回收寬限期
+     * @return 寬限期（毫秒）
+     */
+    public long getGracePeriodMs() {
+        return gracePeriodMs;
+    }
+
+    /**
+     * 計算物品數據的哈希
+     * @param data 物品數據
+     * @return SHA-256 哈希（32 字節）
+     */
+    public static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 Java 實現都必須支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 檢查引用此哈希前是否需要寫入（或刷新）items 表中的物品
+     * @param hash 哈希
+     * @param now 當前時間
+     * @return 是否需要寫入
+     */
+    public boolean needsTouch(byte[] hash, long now) {
+        Long last = touchedAt.get(ByteBuffer.wrap(hash));
+        return last == null || now - last > gracePeriodMs / 2;
+    }
+
+    /**
+     * 記錄已在事務中寫入（或刷新）的哈希，應在事務提交後調用
+     * @param hashes 哈希
+     * @param now 寫入時間
+     */
+    public void markTouched(Collection<byte[]> hashes, long now) {
+        for (byte[] hash : hashes) {
+            touchedAt.put(ByteBuffer.wrap(hash), now);
+        }
+    }
+
+    /**
+     * 解碼共享物品，同一哈希只反序列化一次
+     * @param hash 哈希
+     * @param data 物品數據
+     * @param codecs 編解碼器註冊表
+     * @return 原型的副本
+     * @throws IOException 解碼失敗
+     */
+    public ItemStack decode(byte[] hash, byte[] data, ItemCodecRegistry codecs) throws IOException {
+        ByteBuffer key = ByteBuffer.wrap(hash);
+        ItemStack prototype = prototypes.get(key);
+        if (prototype == null) {
+            prototype = codecs.decode(data);
+            prototypes.put(key, prototype);
+        }
+        return prototype.clone();
+    }
+}
@@ -0,0 +1,112 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * 定期回收 items 表中不再被任何槽位引用的共享物品（標記-清除）
+ * <p>
+ * 引用檢查與刪除在同一條語句中完成；只回收超過寬限期未被刷新的物品，
+ * 避免刪除正在被其他事務引用的物品。
+ */
+public class ItemGarbageCollector {
+
+    private static final String SWEEP_SQL =
+            "DELETE FROM items WHERE last_used < ? " +
+            "AND NOT EXISTS (SELECT 1 FROM ornaments WHERE ornaments.item_hash = items.hash) " +
+            "AND NOT EXISTS (SELECT 1 FROM totems WHERE totems.item_hash = items.hash)";
+
+    private final RPGInventory plugin;
+    private final AbstractDatabaseManager manager;
+    private final long intervalTicks;
+    private final long gracePeriodMs;
+
+    private ScheduledFuture<?> task;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile long lastRunTime;
+    private volatile int lastCollected;
+    private volatile long totalCollected;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param manager 數據庫管理器
+     * @param gracePeriodMs 寬限期（毫秒）
+     */
+    public ItemGarbageCollector(RPGInventory plugin, AbstractDatabaseManager manager, long gracePeriodMs) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.gracePeriodMs = gracePeriodMs;
+        this.intervalTicks = Math.max(1, plugin.getConfig().getLong("database.dedup.gc-interval", 60)) * 60 * 20;
+    }
+
+    /**
+     * 啟動定時回收任務
+     */
+    public void start() {
+        task = manager.getStorageExecutor().scheduleAtFixedRate(StorageExecutor.Priority.MAINTENANCE,
+                this::collect, intervalTicks * 50, intervalTicks * 50);
+    }
+
+    /**
+     * 停止定時回收任務
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * 執行一次回收
+     * @return 回收的物品數，正在執行或失敗時返回 -1
+     */
+    public int collect() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        if (manager.hasLegacyTables()) {
+            // 舊版數據表中的行也可能引用共享物品，全部移入新表前不回收
+            running.set(false);
+            return 0;
+        }
+        try (Connection conn = manager.getConnection();
+             PreparedStatement statement = conn.prepareStatement(SWEEP_SQL)) {
+            statement.setLong(1, System.currentTimeMillis() - gracePeriodMs);
+            int collected = statement.executeUpdate();
+
+            lastRunTime = System.currentTimeMillis();
+            lastCollected = collected;
+            totalCollected += collected;
+            if (collected > 0) {
+                plugin.getLogger().info("已回收 " + collected + " 個不再使用的共享物品");
+            }
+            return collected;
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "回收共享物品失敗: " + e.getMessage(), e);
+            return -1;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 獲取回收狀態描述
+     * @return 狀態文本
+     */
+    public String getStatusLine() {
+        if (lastRunTime == 0) {
+            return "§e共享物品回收: §f尚未執行";
+        }
+        return "§e共享物品回收: §f上次回收 " + lastCollected + " 個 §7(" +
+                (System.currentTimeMillis() - lastRunTime) / 60000 + " 分鐘前, 累計 " + totalCollected + " 個)";
+    }
+}
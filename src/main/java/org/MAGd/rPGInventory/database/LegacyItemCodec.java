@@ -0,0 +1,49 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * 舊版編解碼器：使用 Bukkit 的 Java 對象序列化
+ * <p>
+ * 任何伺服器都可以使用，也是沒有編碼頭的舊數據所使用的格式。
+ */
+public class LegacyItemCodec implements ItemCodec {
+
+    public static final int ID = 0;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "legacy";
+    }
+
+    @Override
+    public byte[] encode(ItemStack itemStack) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream)) {
+            dataOutput.writeObject(itemStack);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    public ItemStack decode(byte[] data) throws IOException {
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+        try (BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream)) {
+            return (ItemStack) dataInput.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("無法反序列化物品: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 物品欄存檔：流式導出與導入所有玩家的物品欄，用於在存儲後端之間或伺服器之間遷移數據
+ * <p>
+ * 存檔格式：16 字節文件頭（魔數、格式版本、保留字段、創建時間），之後是若干數據塊，每塊最多包含 1000 名玩家。
+ * 塊頭依次為原始長度、壓縮後長度、玩家數與壓縮數據的 CRC32C，之後是 Deflate 壓縮的玩家數據；
+ * 玩家數為 0 的塊頭表示結束，其後是玩家總數，用於發現被截斷的存檔。
+ * 物品以帶編碼頭、不單獨壓縮的格式保存（{@link ItemCodecRegistry#encodeUncompressed(ItemStack)}），
+ * 不依賴源數據庫中的壓縮字典，可以導入任何存儲後端。
+ * <p>
+ * 導出時分批遍歷玩家，由工作線程並行加載、編碼與壓縮各數據塊，再按順序寫入文件；
+ * 導入時順序讀取並校驗數據塊，由工作線程並行解壓與解碼，再按順序分批寫入目標存儲。
+ * 同時處理中的數據塊數有上限，內存佔用與玩家數無關。
+ */
+public class LoadoutArchive {
+
+    public static final String EXTENSION = ".rpgarchive";
+
+    // "RPGA"
+    private static final int MAGIC = 0x52504741;
+    private static final short FORMAT_VERSION = 1;
+    private static final int BLOCK_PLAYERS = 1000;
+    // 數據塊長度上限，防止損壞的塊頭導致分配過大的數組
+    private static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
+    // 每處理這麼多名玩家輸出一次進度
+    private static final long PROGRESS_INTERVAL = 100000;
+
+    private final RPGInventory plugin;
+    private final ItemCodecRegistry itemCodecs;
+    private final int threads;
+    private final int compressionLevel;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param itemCodecs 物品編解碼器
+     */
+    public LoadoutArchive(RPGInventory plugin, ItemCodecRegistry itemCodecs) {
+        this.plugin = plugin;
+        this.itemCodecs = itemCodecs;
+
+        FileConfiguration config = plugin.getConfig();
+        int configuredThreads = config.getInt("database.archive.threads", 0);
+        this.threads = configuredThreads > 0 ? Math.min(64, configuredThreads) : Runtime.getRuntime().availableProcessors();
+        this.compressionLevel = Math.max(1, Math.min(9, config.getInt("database.archive.compression-level", 6)));
+    }
+
+    /**
+     * 把存儲中所有玩家的物品欄導出到存檔；先寫入臨時文件，完成後才替換為目標文件
+     * @param source 源存儲
+     * @param file 存檔文件
+     * @return 多行結果文本
+     * @throws IOException 讀取源存儲或寫入文件失敗
+     */
+    public List<String> export(DatabaseManager source, File file) throws IOException {
+        long start = System.nanoTime();
+        File temp = new File(file.getPath() + ".tmp");
+        Progress progress = new Progress("導出");
+        ExecutorService workers = createWorkers();
+        Deque<Future<Block>> pending = new ArrayDeque<>();
+
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeShort(0);
+            out.writeLong(System.currentTimeMillis());
+
+            List<UUID> batch = new ArrayList<>(BLOCK_PLAYERS);
+            boolean complete;
+            try {
+                complete = source.forEachPlayer(playerUUID -> {
+                    batch.add(playerUUID);
+                    if (batch.size() < BLOCK_PLAYERS) {
+                        return;
+                    }
+                    List<UUID> players = new ArrayList<>(batch);
+                    batch.clear();
+                    pending.add(workers.submit(() -> encodeBlock(source, players)));
+                    try {
+                        // 限制同時處理中的數據塊數
+                        while (pending.size() >= threads * 2) {
+                            writeBlock(out, pending.poll(), progress);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (!complete) {
+                throw new IOException("讀取源存儲中的玩家列表失敗，詳情見日誌");
+            }
+            if (!batch.isEmpty()) {
+                List<UUID> players = new ArrayList<>(batch);
+                pending.add(workers.submit(() -> encodeBlock(source, players)));
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(out, pending.poll(), progress);
+            }
+
+            // 結束標記與玩家總數
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeLong(progress.players);
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            for (Future<Block> future : pending) {
+                future.cancel(true);
+            }
+            temp.delete();
+            throw e;
+        } finally {
+            workers.shutdownNow();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        double seconds = Math.max(0.001, (System.nanoTime() - start) / 1_000_000_000.0);
+        List<String> lines = new ArrayList<>();
+        lines.add("§a已導出 §f" + progress.players + " §a名玩家到 §f" + file.getName());
+        lines.add(String.format("§f%d 個數據塊, %.1f MB §7(未壓縮 %.1f MB) §7| §f%.1f 秒, %.0f 名玩家/秒",
+                progress.blocks, file.length() / 1048576.0, progress.rawBytes / 1048576.0, seconds, progress.players / seconds));
+        plugin.getLogger().info("物品欄存檔導出完成: " + progress.players + " 名玩家 -> " + file.getPath());
+        return lines;
+    }
+
+    /**
+     * 從存檔導入物品欄；存檔中的玩家覆蓋目標存儲中的同一玩家，其他玩家不受影響
+     * <p>
+     * 中途失敗時已寫入的數據塊保留，修復後重新導入即可（重複導入寫入的是相同的數據）。
+     * @param file 存檔文件
+     * @param target 目標存儲
+     * @return 多行結果文本
+     * @throws IOException 讀取或校驗存檔失敗
+     */
+    public List<String> importFrom(File file, DatabaseManager target) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress("導入");
+        ExecutorService workers = createWorkers();
+        Deque<Future<List<PlayerLoadout>>> pending = new ArrayDeque<>();
+        long readPlayers = 0;
+        int blockIndex = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("文件 " + file.getName() + " 不是物品欄存檔");
+            }
+            short version = in.readShort();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("不支持的存檔格式版本: " + version);
+            }
+            in.readShort();
+            in.readLong();
+
+            while (true) {
+                int rawLength = in.readInt();
+                int length = in.readInt();
+                int players = in.readInt();
+                int checksum = in.readInt();
+                if (players == 0) {
+                    break;
+                }
+                blockIndex++;
+                if (players < 0 || players > BLOCK_PLAYERS || rawLength <= 0 || rawLength > MAX_BLOCK_SIZE
+                        || length <= 0 || length > MAX_BLOCK_SIZE) {
+                    throw new IOException("存檔第 " + blockIndex + " 個數據塊的塊頭無效，文件可能已損壞");
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                if (checksum(data) != checksum) {
+                    throw new IOException("存檔第 " + blockIndex + " 個數據塊校驗失敗，文件可能已損壞");
+                }
+                readPlayers += players;
+
+                pending.add(workers.submit(() -> decodeBlock(data, rawLength, players)));
+                while (pending.size() >= threads * 2) {
+                    saveBlock(target, pending.poll(), progress);
+                }
+            }
+
+            long expected = in.readLong();
+            while (!pending.isEmpty()) {
+                saveBlock(target, pending.poll(), progress);
+            }
+            if (expected != readPlayers) {
+                throw new IOException("存檔記錄的玩家總數 " + expected + " 與讀取到的 " + readPlayers + " 不一致");
+            }
+        } catch (EOFException e) {
+            throw new IOException("存檔不完整，文件在第 " + (blockIndex + 1) + " 個數據塊處結束", e);
+        } catch (IOException | RuntimeException e) {
+            for (Future<List<PlayerLoadout>> future : pending) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            workers.shutdownNow();
+        }
+
+        double seconds = Math.max(0.001, (System.nanoTime() - start) / 1_000_000_000.0);
+        List<String> lines = new ArrayList<>();
+        lines.add("§a已從 §f" + file.getName() + " §a導入 §f" + progress.players + " §a名玩家" +
+                (progress.failed > 0 ? " §7| §c寫入失敗 " + progress.failed + " 名，詳情見日誌" : ""));
+        lines.add(String.format("§f%d 個數據塊 §7| §f%.1f 秒, %.0f 名玩家/秒",
+                progress.blocks, seconds, progress.players / seconds));
+        plugin.getLogger().info("物品欄存檔導入完成: " + file.getPath() + " -> " + progress.players + " 名玩家, 失敗 " + progress.failed);
+        return lines;
+    }
+
+    private ExecutorService createWorkers() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "RPGInventory-Archive-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 加載一批玩家並編碼、壓縮為數據塊（在工作線程中執行）
+     */
+    private Block encodeBlock(DatabaseManager source, List<UUID> players) throws IOException {
+        Map<UUID, PlayerLoadout> loaded = source.loadProfiles(players);
+        if (loaded.size() < players.size()) {
+            throw new IOException("加載 " + (players.size() - loaded.size()) + " 名玩家的物品欄數據失敗，詳情見日誌");
+        }
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(players.size() * 512);
+        DataOutputStream out = new DataOutputStream(raw);
+        int count = 0;
+        for (UUID playerUUID : players) {
+            PlayerLoadout loadout = loaded.get(playerUUID);
+            if (loadout.isEmpty()) {
+                // 遍歷之後被刪除
+                continue;
+            }
+            out.writeLong(playerUUID.getMostSignificantBits());
+            out.writeLong(playerUUID.getLeastSignificantBits());
+            writeItem(out, loadout.getOrnament());
+            out.writeInt(loadout.getTotems().size());
+            for (Map.Entry<Integer, ItemStack> entry : loadout.getTotems().entrySet()) {
+                out.writeInt(entry.getKey());
+                writeItem(out, entry.getValue());
+            }
+            count++;
+        }
+        out.flush();
+        return new Block(count, raw.toByteArray(), compressionLevel);
+    }
+
+    private void writeItem(DataOutputStream out, ItemStack item) throws IOException {
+        if (item == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] data = itemCodecs.encodeUncompressed(item);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private void writeBlock(DataOutputStream out, Future<Block> future, Progress progress) throws IOException {
+        Block block = await(future);
+        if (block.players == 0) {
+            // 玩家數為 0 的塊頭是結束標記
+            return;
+        }
+        out.writeInt(block.rawLength);
+        out.writeInt(block.data.length);
+        out.writeInt(block.players);
+        out.writeInt(checksum(block.data));
+        out.write(block.data);
+        progress.add(block.players, 0, block.rawLength);
+    }
+
+    /**
+     * 解壓並解碼一個數據塊（在工作線程中執行）
+     */
+    private List<PlayerLoadout> decodeBlock(byte[] data, int rawLength, int players) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(data, rawLength)));
+        List<PlayerLoadout> loadouts = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            UUID playerUUID = new UUID(in.readLong(), in.readLong());
+            ItemStack ornament = readItem(in, rawLength);
+            int totemCount = in.readInt();
+            if (totemCount < 0 || totemCount > rawLength) {
+                throw new IOException("玩家 " + playerUUID + " 的圖騰數量無效: " + totemCount);
+            }
+            Map<Integer, ItemStack> totems = new HashMap<>();
+            for (int j = 0; j < totemCount; j++) {
+                int slot = in.readInt();
+                totems.put(slot, readItem(in, rawLength));
+            }
+            loadouts.add(new PlayerLoadout(playerUUID, ornament, totems));
+        }
+        return loadouts;
+    }
+
+    private ItemStack readItem(DataInputStream in, int rawLength) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > rawLength) {
+            throw new IOException("物品數據長度無效: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return itemCodecs.decode(data);
+    }
+
+    private void saveBlock(DatabaseManager target, Future<List<PlayerLoadout>> future, Progress progress) throws IOException {
+        List<PlayerLoadout> loadouts = await(future);
+        Set<UUID> saved = target.saveInventories(loadouts);
+        int failed = loadouts.size() - saved.size();
+        if (failed > 0) {
+            plugin.getLogger().warning("導入時有 " + failed + " 名玩家的物品欄寫入失敗");
+        }
+        progress.add(saved.size(), failed, 0);
+    }
+
+    private <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待數據塊處理時被中斷");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EOFException) {
+                // 數據塊內容比塊頭描述的短，與文件被截斷區分開
+                throw new IOException("數據塊內容無效，存檔可能已損壞", cause);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("處理數據塊失敗: " + cause, cause);
+        }
+    }
+
+    private static byte[] deflate(byte[] raw, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, length, rawLength - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != rawLength || !inflater.finished()) {
+                throw new IOException("數據塊解壓後的長度與塊頭不符");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("數據塊解壓失敗: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 壓縮後的數據塊
+     */
+    private static final class Block {
+        private final int players;
+        private final int rawLength;
+        private final byte[] data;
+
+        private Block(int players, byte[] raw, int level) {
+            this.players = players;
+            this.rawLength = raw.length;
+            this.data = players > 0 ? deflate(raw, level) : raw;
+        }
+    }
+
+    /**
+     * 導出/導入進度，只在調用線程中更新
+     */
+    private final class Progress {
+        private final String action;
+        private long players;
+        private long failed;
+        private long rawBytes;
+        private int blocks;
+        private long nextReport = PROGRESS_INTERVAL;
+
+        private Progress(String action) {
+            this.action = action;
+        }
+
+        private void add(int players, int failed, long rawBytes) {
+            this.players += players;
+            this.failed += failed;
+            this.rawBytes += rawBytes;
+            this.blocks++;
+            if (this.players >= nextReport) {
+                nextReport += PROGRESS_INTERVAL;
+                plugin.getLogger().info("物品欄存檔" + action + "進度: " + this.players + " 名玩家");
+            }
+        }
+    }
+}
@@ -0,0 +1,856 @@
+package org.MAGd.rPGInventory.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 嵌入式日誌結構鍵值存儲（每名玩家一個值）
+ * <p>
+ * 所有寫入追加到當前的數據文件末尾，寫滿 segment-size 後換到新文件；內存中的哈希索引記錄每名玩家最新記錄的位置，
+ * 讀取只需一次定位讀。被覆蓋的舊記錄由後台壓縮清理：把垃圾比例較高的數據文件中仍然有效的記錄複製到當前文件後刪除舊文件。
+ * 每個值帶有物品欄版本，寫入時拒絕不比現有版本新的快照（與 SQL 存儲的比較並設置語義相同）。
+ * <p>
+ * 正常關閉與每次壓縮後把索引寫入 index.hint，啟動時直接加載索引文件，只需掃描索引之後追加的記錄；
+ * 索引文件缺失或損壞時掃描全部數據文件重建索引。
+ * <p>
+ * 數據文件格式（大端序）：16 字節文件頭（魔數、格式版本、創建時間），之後是連續的記錄：
+ * <pre>
+ * [0-3]   記錄魔數
+ * [4-7]   值的長度（-1 表示刪除玩家的墓碑）
+ * [8-11]  之後所有字節的 CRC32C 校驗和
+ * [12-27] 玩家UUID
+ * [28-35] 物品欄版本
+ * [36-]   值
+ * </pre>
+ * 掃描時遇到魔數不符、長度越界或校驗和不符的記錄即停止讀取該文件；最新的數據文件會在該位置截斷（崩潰時未寫完的記錄）。
+ * 墓碑會一直保留（用於拒絕刪除前的過期快照），每個只佔 36 字節。
+ */
+public class LogStore {
+
+    private static final int FILE_MAGIC = 0x524C5346;
+    private static final int RECORD_MAGIC = 0x524C5352;
+    private static final int HINT_MAGIC = 0x524C5348;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 36;
+    private static final String FILE_PREFIX = "data-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String HINT_FILE = "index.hint";
+    // 壓縮時每次持有寫入鎖複製的記錄數
+    private static final int COMPACTION_BATCH = 256;
+
+    private final Logger logger;
+    private final File directory;
+    private final long segmentSize;
+    private final boolean syncWrites;
+
+    // 寫入鎖：串行化追加、換文件、壓縮複製與索引文件寫入；持有寫入鎖的線程可以不加讀鎖讀取索引
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // 索引鎖：讀取時持有讀鎖，修改索引與刪除數據文件時持有寫鎖
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private LogStoreIndex index = new LogStoreIndex(1024);
+    private final Map<Integer, DataFile> files = new ConcurrentHashMap<>();
+    private volatile DataFile active;
+    private int nextFileId;
+    private volatile boolean open;
+
+    // 統計數據
+    private boolean loadedFromHint;
+    private long openMillis;
+    private final AtomicLong compactedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param logger 日誌
+     * @param directory 數據目錄
+     * @param segmentSize 單個數據文件的大小上限（字節）
+     * @param syncWrites 每次寫入後是否等待數據刷到磁盤
+     */
+    public LogStore(Logger logger, File directory, long segmentSize, boolean syncWrites) {
+        this.logger = logger;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * 打開存儲：加載索引文件（或掃描數據文件重建索引），並創建新的數據文件用於寫入
+     * @throws IOException 讀寫文件失敗
+     */
+    public void open() throws IOException {
+        appendLock.lock();
+        try {
+            if (open) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("無法創建目錄 " + directory);
+            }
+
+            TreeMap<Integer, File> found = new TreeMap<>();
+            File[] listed = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+            if (listed != null) {
+                for (File file : listed) {
+                    int id = fileId(file);
+                    if (id >= 0) {
+                        found.put(id, file);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, File> entry : found.entrySet()) {
+                DataFile dataFile = DataFile.open(entry.getValue(), entry.getKey());
+                if (dataFile != null) {
+                    files.put(entry.getKey(), dataFile);
+                } else {
+                    logger.warning("日誌存儲數據文件 " + entry.getValue().getName() + " 的文件頭無效，已忽略");
+                }
+            }
+
+            long[] coverage = loadHint();
+            loadedFromHint = coverage != null;
+            int newest = found.isEmpty() ? -1 : found.lastKey();
+            for (DataFile dataFile : new ArrayList<>(new TreeMap<>(files).values())) {
+                long from = FILE_HEADER_SIZE;
+                if (coverage != null) {
+                    if (dataFile.id < coverage[0]) {
+                        continue;
+                    }
+                    if (dataFile.id == coverage[0]) {
+                        from = coverage[1];
+                    }
+                }
+                long end = scan(dataFile, from, this::applyScanned);
+                if (end < dataFile.size) {
+                    if (dataFile.id == newest) {
+                        logger.warning("日誌存儲數據文件 " + dataFile.file.getName() + " 在偏移 " + end + " 之後的記錄不完整，已截斷");
+                        dataFile.channel.truncate(end);
+                        dataFile.size = end;
+                    } else {
+                        logger.warning("日誌存儲數據文件 " + dataFile.file.getName() + " 在偏移 " + end + " 處損壞，之後的記錄已忽略");
+                    }
+                }
+            }
+
+            nextFileId = Math.max(newest, coverage != null ? (int) coverage[0] : -1) + 1;
+            active = createFile(nextFileId++);
+            open = true;
+            openMillis = System.currentTimeMillis() - start;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 讀取索引文件
+     * @return 索引覆蓋到的位置 {數據文件編號, 偏移}；沒有可用的索引文件時為 null
+     */
+    private long[] loadHint() {
+        File hint = new File(directory, HINT_FILE);
+        if (!hint.exists()) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(hint), 1 << 16), crc))) {
+            if (input.readInt() != HINT_MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("文件頭無效");
+            }
+            long coveredFile = input.readInt();
+            long coveredOffset = input.readLong();
+            int count = input.readInt();
+            if (count < 0) {
+                throw new IOException("條目數無效");
+            }
+
+            LogStoreIndex loaded = new LogStoreIndex(count);
+            Map<Integer, Long> live = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                UUID playerUUID = new UUID(input.readLong(), input.readLong());
+                long location = input.readLong();
+                long version = input.readLong();
+                int signedSize = input.readInt();
+                int recordSize = Math.abs(signedSize);
+                DataFile dataFile = files.get(LogStoreIndex.fileId(location));
+                if (dataFile == null || recordSize < RECORD_HEADER_SIZE ||
+                        LogStoreIndex.offset(location) + recordSize > dataFile.size) {
+                    // 索引指向的數據文件已不存在（例如壓縮後沒有正常關閉）
+                    throw new IOException("條目指向不存在的記錄");
+                }
+                loaded.put(playerUUID, location, recordSize, version, signedSize < 0);
+                live.merge(dataFile.id, (long) recordSize, Long::sum);
+            }
+            int expected = (int) crc.getValue();
+            if (input.readInt() != expected) {
+                throw new IOException("校驗和不符");
+            }
+
+            index = loaded;
+            for (DataFile dataFile : files.values()) {
+                dataFile.live.set(live.getOrDefault(dataFile.id, 0L));
+                dataFile.total.set(Math.max(0, Math.min(dataFile.size, dataFile.id < coveredFile ? dataFile.size
+                        : dataFile.id == coveredFile ? coveredOffset : FILE_HEADER_SIZE) - FILE_HEADER_SIZE));
+            }
+            return new long[]{coveredFile, coveredOffset};
+        } catch (IOException e) {
+            logger.warning("日誌存儲索引文件不可用（" + e.getMessage() + "），將掃描全部數據文件重建索引");
+            index = new LogStoreIndex(1024);
+            for (DataFile dataFile : files.values()) {
+                dataFile.live.set(0);
+                dataFile.total.set(0);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 把掃描到的記錄加入索引：版本較高的記錄生效，版本相同時（壓縮複製的記錄）位置較後的生效
+     */
+    private void applyScanned(DataFile dataFile, long offset, int recordSize, UUID playerUUID, long version,
+                              boolean tombstone, ByteBuffer record) {
+        long location = LogStoreIndex.location(dataFile.id, offset);
+        dataFile.total.addAndGet(recordSize);
+        int slot = index.find(playerUUID);
+        if (slot >= 0) {
+            long currentVersion = index.getVersion(slot);
+            if (currentVersion > version || (currentVersion == version && index.getLocation(slot) > location)) {
+                return;
+            }
+        }
+        replace(slot, playerUUID, dataFile, location, recordSize, version, tombstone);
+    }
+
+    /**
+     * 更新索引條目並調整數據文件的有效字節數（調用方持有寫入鎖；運行期間還需要持有索引寫鎖）
+     */
+    private void replace(int slot, UUID playerUUID, DataFile dataFile, long location, int recordSize, long version, boolean tombstone) {
+        if (slot >= 0) {
+            DataFile previous = files.get(LogStoreIndex.fileId(index.getLocation(slot)));
+            if (previous != null) {
+                previous.live.addAndGet(-index.getRecordSize(slot));
+            }
+        }
+        index.put(playerUUID, location, recordSize, version, tombstone);
+        dataFile.live.addAndGet(recordSize);
+    }
+
+    /**
+     * 順序讀取數據文件中的記錄
+     * @param dataFile 數據文件
+     * @param from 起始偏移
+     * @param visitor 處理每條有效記錄
+     * @return 最後一條有效記錄之後的偏移
+     * @throws IOException 讀取失敗
+     */
+    private long scan(DataFile dataFile, long from, RecordVisitor visitor) throws IOException {
+        long position = from;
+        InputStream stream = Channels.newInputStream(dataFile.channel.position(from));
+        DataInputStream input = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        byte[] header = new byte[RECORD_HEADER_SIZE];
+        CRC32C crc = new CRC32C();
+        while (position + RECORD_HEADER_SIZE <= dataFile.size) {
+            try {
+                input.readFully(header);
+                ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+                int valueLength = headerBuffer.getInt(4);
+                if (headerBuffer.getInt(0) != RECORD_MAGIC || valueLength < -1 ||
+                        position + RECORD_HEADER_SIZE + Math.max(0, valueLength) > dataFile.size) {
+                    break;
+                }
+                int recordSize = RECORD_HEADER_SIZE + Math.max(0, valueLength);
+                byte[] record = new byte[recordSize];
+                System.arraycopy(header, 0, record, 0, RECORD_HEADER_SIZE);
+                input.readFully(record, RECORD_HEADER_SIZE, recordSize - RECORD_HEADER_SIZE);
+                crc.reset();
+                crc.update(record, 12, recordSize - 12);
+                if ((int) crc.getValue() != headerBuffer.getInt(8)) {
+                    break;
+                }
+                visitor.visit(dataFile, position, recordSize, new UUID(headerBuffer.getLong(12), headerBuffer.getLong(20)),
+                        headerBuffer.getLong(28), valueLength < 0, ByteBuffer.wrap(record));
+                position += recordSize;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 讀取玩家的值
+     * @param playerUUID 玩家UUID
+     * @return 值，沒有數據（或已刪除）時為 null
+     * @throws IOException 讀取失敗或記錄校驗失敗
+     */
+    public byte[] get(UUID playerUUID) throws IOException {
+        indexLock.readLock().lock();
+        try {
+            ensureOpen();
+            int slot = index.find(playerUUID);
+            if (slot < 0 || index.isTombstone(slot)) {
+                return null;
+            }
+            long location = index.getLocation(slot);
+            DataFile dataFile = files.get(LogStoreIndex.fileId(location));
+            ByteBuffer record = ByteBuffer.allocate(index.getRecordSize(slot));
+            readFully(dataFile.channel, record, LogStoreIndex.offset(location));
+
+            CRC32C crc = new CRC32C();
+            crc.update(record.array(), 12, record.capacity() - 12);
+            if (record.getInt(0) != RECORD_MAGIC || (int) crc.getValue() != record.getInt(8) ||
+                    record.getLong(12) != playerUUID.getMostSignificantBits() || record.getLong(20) != playerUUID.getLeastSignificantBits()) {
+                throw new IOException("玩家 " + playerUUID + " 的記錄校驗失敗 (" + dataFile.file.getName() + " @ " + LogStoreIndex.offset(location) + ")");
+            }
+            byte[] value = new byte[record.capacity() - RECORD_HEADER_SIZE];
+            record.position(RECORD_HEADER_SIZE);
+            record.get(value);
+            return value;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 玩家是否有數據
+     * @param playerUUID 玩家UUID
+     * @return 是否有數據
+     */
+    public boolean contains(UUID playerUUID) {
+        indexLock.readLock().lock();
+        try {
+            int slot = index.find(playerUUID);
+            return slot >= 0 && !index.isTombstone(slot);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 複製所有有數據的玩家（不包括墓碑）
+     * @return 依次為每名玩家UUID的高 64 位與低 64 位
+     */
+    public long[] snapshotPlayers() {
+        indexLock.readLock().lock();
+        try {
+            long[] players = new long[index.liveCount() * 2];
+            int count = 0;
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                if (index.isUsed(slot) && !index.isTombstone(slot)) {
+                    UUID playerUUID = index.getPlayerUUID(slot);
+                    players[count++] = playerUUID.getMostSignificantBits();
+                    players[count++] = playerUUID.getLeastSignificantBits();
+                }
+            }
+            return players;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 獲取玩家最新記錄的版本（包括墓碑）
+     * @param playerUUID 玩家UUID
+     * @return 版本，從未寫入時為 0
+     */
+    public long getVersion(UUID playerUUID) {
+        indexLock.readLock().lock();
+        try {
+            int slot = index.find(playerUUID);
+            return slot >= 0 ? index.getVersion(slot) : 0L;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 追加一批寫入，全部寫入（及按設置刷盤）後才更新索引
+     * <p>
+     * 版本不比現有記錄新的寫入不會追加；同一批中同一名玩家的多次寫入同樣按版本比較。
+     * 寫入失敗時當前數據文件回退到這批寫入之前的長度，索引不變。
+     * @param writes 寫入
+     * @return 因版本過期被拒絕的玩家
+     * @throws IOException 寫入失敗
+     */
+    public Set<UUID> write(Collection<Write> writes) throws IOException {
+        Set<UUID> stale = new HashSet<>();
+        appendLock.lock();
+        try {
+            ensureOpen();
+            Map<UUID, Long> batchVersions = new HashMap<>();
+            List<Write> accepted = new ArrayList<>(writes.size());
+            List<ByteBuffer> records = new ArrayList<>(writes.size());
+            for (Write write : writes) {
+                Long batchVersion = batchVersions.get(write.playerUUID);
+                long current;
+                if (batchVersion != null) {
+                    current = batchVersion;
+                } else {
+                    int slot = index.find(write.playerUUID);
+                    current = slot >= 0 ? index.getVersion(slot) : 0L;
+                }
+                if (write.version <= current) {
+                    stale.add(write.playerUUID);
+                    continue;
+                }
+                batchVersions.put(write.playerUUID, write.version);
+                accepted.add(write);
+                records.add(encodeRecord(write.playerUUID, write.version, write.value));
+            }
+            if (accepted.isEmpty()) {
+                return stale;
+            }
+
+            DataFile batchFile = active;
+            long batchStart = active.size;
+            long[] locations = new long[accepted.size()];
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    locations[i] = append(records.get(i));
+                }
+                if (syncWrites) {
+                    active.channel.force(false);
+                }
+            } catch (IOException e) {
+                if (active == batchFile) {
+                    active.channel.truncate(batchStart);
+                    active.size = batchStart;
+                }
+                throw e;
+            }
+
+            indexLock.writeLock().lock();
+            try {
+                for (int i = 0; i < accepted.size(); i++) {
+                    Write write = accepted.get(i);
+                    DataFile dataFile = files.get(LogStoreIndex.fileId(locations[i]));
+                    dataFile.total.addAndGet(records.get(i).capacity());
+                    replace(index.find(write.playerUUID), write.playerUUID, dataFile, locations[i],
+                            records.get(i).capacity(), write.version, write.value == null);
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            return stale;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 把一條記錄追加到當前數據文件，寫滿時換到新文件（調用方持有寫入鎖）
+     * @return 記錄位置
+     */
+    private long append(ByteBuffer record) throws IOException {
+        if (active.size > FILE_HEADER_SIZE && active.size + record.remaining() > segmentSize) {
+            active.channel.force(false);
+            active = createFile(nextFileId++);
+        }
+        long offset = active.size;
+        record.rewind();
+        writeFully(active.channel, record, offset);
+        active.size += record.capacity();
+        return LogStoreIndex.location(active.id, offset);
+    }
+
+    private static ByteBuffer encodeRecord(UUID playerUUID, long version, byte[] value) {
+        int valueLength = value != null ? value.length : -1;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + Math.max(0, valueLength));
+        record.putInt(RECORD_MAGIC).putInt(valueLength).putInt(0)
+                .putLong(playerUUID.getMostSignificantBits()).putLong(playerUUID.getLeastSignificantBits())
+                .putLong(version);
+        if (value != null) {
+            record.put(value);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 12, record.capacity() - 12);
+        record.putInt(8, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * 把當前數據文件刷到磁盤（關閉 sync-writes 時由後台定期調用）
+     * @throws IOException 刷盤失敗
+     */
+    public void sync() throws IOException {
+        DataFile current = active;
+        if (open && current != null) {
+            try {
+                current.channel.force(false);
+            } catch (ClosedChannelException e) {
+                // 已關閉或剛被換掉的文件在關閉或換文件時已經刷盤
+            }
+        }
+    }
+
+    /**
+     * 壓縮垃圾比例達到下限的數據文件（不包括當前寫入的文件）
+     * <p>
+     * 有效記錄分批複製到當前數據文件，每批只短暫持有寫入鎖；全部複製並刷盤後重寫索引文件，再刪除舊文件。
+     * @param minGarbageRatio 垃圾比例下限（0-1）
+     * @return 刪除的數據文件數
+     * @throws IOException 讀寫失敗
+     */
+    public int compact(double minGarbageRatio) throws IOException {
+        List<DataFile> candidates = new ArrayList<>();
+        appendLock.lock();
+        try {
+            ensureOpen();
+            for (DataFile dataFile : new TreeMap<>(files).values()) {
+                long total = dataFile.total.get();
+                long live = dataFile.live.get();
+                if (dataFile != active && (live == 0 || (total > 0 && 1.0 - (double) live / total >= minGarbageRatio))) {
+                    candidates.add(dataFile);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        for (DataFile dataFile : candidates) {
+            List<ByteBuffer> batch = new ArrayList<>(COMPACTION_BATCH);
+            List<long[]> batchMeta = new ArrayList<>(COMPACTION_BATCH);
+            // 已封存的數據文件不會再被修改，可以在不持有鎖的情況下讀取
+            scan(dataFile, FILE_HEADER_SIZE, (file, offset, recordSize, playerUUID, version, tombstone, record) -> {
+                batch.add(record);
+                batchMeta.add(new long[]{LogStoreIndex.location(file.id, offset)});
+                if (batch.size() >= COMPACTION_BATCH) {
+                    copyLive(batch, batchMeta);
+                    batch.clear();
+                    batchMeta.clear();
+                }
+            });
+            copyLive(batch, batchMeta);
+        }
+
+        appendLock.lock();
+        try {
+            ensureOpen();
+            active.channel.force(false);
+            writeHint();
+            int deleted = 0;
+            indexLock.writeLock().lock();
+            try {
+                for (DataFile dataFile : candidates) {
+                    if (dataFile.live.get() != 0) {
+                        continue;
+                    }
+                    files.remove(dataFile.id);
+                    dataFile.channel.close();
+                    long size = dataFile.file.length();
+                    if (dataFile.file.delete()) {
+                        deleted++;
+                        compactedFiles.incrementAndGet();
+                        reclaimedBytes.addAndGet(size);
+                    }
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            return deleted;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 把仍被索引引用的記錄複製到當前數據文件
+     */
+    private void copyLive(List<ByteBuffer> batch, List<long[]> batchMeta) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            ensureOpen();
+            List<Long> locations = new ArrayList<>();
+            List<ByteBuffer> copied = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                ByteBuffer record = batch.get(i);
+                UUID playerUUID = new UUID(record.getLong(12), record.getLong(20));
+                int slot = index.find(playerUUID);
+                if (slot < 0 || index.getLocation(slot) != batchMeta.get(i)[0]) {
+                    // 已被更新的快照覆蓋
+                    continue;
+                }
+                locations.add(append(record));
+                copied.add(record);
+            }
+            if (copied.isEmpty()) {
+                return;
+            }
+            indexLock.writeLock().lock();
+            try {
+                for (int i = 0; i < copied.size(); i++) {
+                    ByteBuffer record = copied.get(i);
+                    int slot = index.find(new UUID(record.getLong(12), record.getLong(20)));
+                    DataFile dataFile = files.get(LogStoreIndex.fileId(locations.get(i)));
+                    dataFile.total.addAndGet(record.capacity());
+                    replace(slot, index.getPlayerUUID(slot), dataFile, locations.get(i), record.capacity(),
+                            index.getVersion(slot), index.isTombstone(slot));
+                }
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 把索引寫入索引文件（調用方持有寫入鎖，當前數據文件已刷盤）
+     */
+    private void writeHint() throws IOException {
+        File temp = new File(directory, HINT_FILE + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileOutputStream fileOutput = new FileOutputStream(temp);
+             DataOutputStream output = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOutput, 1 << 16), crc))) {
+            output.writeInt(HINT_MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(active.id);
+            output.writeLong(active.size);
+            output.writeInt(index.size());
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                if (!index.isUsed(slot)) {
+                    continue;
+                }
+                UUID playerUUID = index.getPlayerUUID(slot);
+                output.writeLong(playerUUID.getMostSignificantBits());
+                output.writeLong(playerUUID.getLeastSignificantBits());
+                output.writeLong(index.getLocation(slot));
+                output.writeLong(index.getVersion(slot));
+                output.writeInt(index.isTombstone(slot) ? -index.getRecordSize(slot) : index.getRecordSize(slot));
+            }
+            output.flush();
+            // 校驗和不計入自身
+            new DataOutputStream(fileOutput).writeInt((int) crc.getValue());
+            fileOutput.getFD().sync();
+        }
+        Files.move(temp.toPath(), new File(directory, HINT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 刷盤、寫入索引文件並關閉所有數據文件
+     */
+    public void close() {
+        appendLock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            try {
+                active.channel.force(false);
+                writeHint();
+            } catch (IOException e) {
+                logger.warning("寫入日誌存儲索引文件失敗，下次啟動時將掃描全部數據文件: " + e.getMessage());
+            }
+            indexLock.writeLock().lock();
+            try {
+                open = false;
+                for (DataFile dataFile : files.values()) {
+                    try {
+                        dataFile.channel.close();
+                    } catch (IOException e) {
+                        logger.warning("關閉數據文件 " + dataFile.file.getName() + " 失敗: " + e.getMessage());
+                    }
+                }
+                files.clear();
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new IOException("日誌存儲已關閉");
+        }
+    }
+
+    private DataFile createFile(int id) throws IOException {
+        File file = new File(directory, String.format("%s%08x%s", FILE_PREFIX, id, FILE_SUFFIX));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE)
+                .putInt(FILE_MAGIC).putInt(FORMAT_VERSION).putLong(System.currentTimeMillis());
+        header.flip();
+        writeFully(channel, header, 0);
+        DataFile dataFile = new DataFile(file, id, channel, FILE_HEADER_SIZE);
+        files.put(id, dataFile);
+        return dataFile;
+    }
+
+    private static int fileId(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("記錄超出數據文件末尾");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 獲取有數據的玩家數
+     * @return 玩家數
+     */
+    public int getLiveCount() {
+        indexLock.readLock().lock();
+        try {
+            return index.liveCount();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 生成存儲狀態描述
+     * @return 狀態文本
+     */
+    public String getStatusLine() {
+        long total = 0;
+        long live = 0;
+        for (DataFile dataFile : files.values()) {
+            total += dataFile.total.get();
+            live += dataFile.live.get();
+        }
+        long indexBytes;
+        int entries;
+        indexLock.readLock().lock();
+        try {
+            indexBytes = index.memoryBytes();
+            entries = index.size();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return String.format("§e日誌存儲: §f%d 名玩家 (%d 條索引, %d MB) §7| §f%d 個數據文件, %d MB, 垃圾 %.0f%% §7| §e壓縮: §f已刪除 %d 個文件, 回收 %d MB §7| §e啟動: §f%d ms (%s)",
+                getLiveCount(), entries, indexBytes / 1024 / 1024, files.size(), total / 1024 / 1024,
+                total == 0 ? 0.0 : (1.0 - (double) live / total) * 100, compactedFiles.get(), reclaimedBytes.get() / 1024 / 1024,
+                openMillis, loadedFromHint ? "索引文件" : "完整掃描");
+    }
+
+    /**
+     * 一次寫入
+     */
+    public static final class Write {
+        private final UUID playerUUID;
+        private final long version;
+        private final byte[] value;
+
+        /**
+         * 構造函數
+         * @param playerUUID 玩家UUID
+         * @param version 物品欄版本，必須大於 0
+         * @param value 值，為 null 時刪除玩家（寫入墓碑）
+         */
+        public Write(UUID playerUUID, long version, byte[] value) {
+            this.playerUUID = playerUUID;
+            this.version = version;
+            this.value = value;
+        }
+
+        /**
+         * 獲取玩家UUID
+         * @return 玩家UUID
+         */
+        public UUID getPlayerUUID() {
+            return playerUUID;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(DataFile dataFile, long offset, int recordSize, UUID playerUUID, long version, boolean tombstone,
+                   ByteBuffer record) throws IOException;
+    }
+
+    /**
+     * 一個數據文件
+     */
+    private static final class DataFile {
+        private final File file;
+        private final int id;
+        private final FileChannel channel;
+        // 文件長度，只在寫入鎖內修改
+        private long size;
+        // 記錄的總字節數與仍被索引引用的字節數（不包括文件頭）
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong live = new AtomicLong();
+
+        private DataFile(File file, int id, FileChannel channel, long size) {
+            this.file = file;
+            this.id = id;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        private static DataFile open(File file, int id) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            if (channel.size() < FILE_HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+            readFully(channel, header, 0);
+            if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                channel.close();
+                return null;
+            }
+            return new DataFile(file, id, channel, channel.size());
+        }
+    }
+}
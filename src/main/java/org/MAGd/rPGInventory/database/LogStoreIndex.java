@@ -0,0 +1,196 @@
+package org.MAGd.rPGInventory.database;
+
+import java.util.UUID;
+
+/**
+ * 日誌結構存儲的內存哈希索引（玩家UUID -> 最新記錄的位置與版本）
+ * <p>
+ * 使用線性探測的開放定址表，按列保存在基本類型數組中：每名玩家約 36 字節，沒有對象頭與裝箱開銷，
+ * 百萬玩家時約 70MB（{@code HashMap<UUID, ...>} 需要兩倍以上）。條目只會被覆蓋、不會被移除
+ * （刪除的玩家以墓碑條目保留版本號），因此不需要處理刪除標記。
+ * <p>
+ * 本類不是線程安全的，由 {@link LogStore} 負責同步。
+ */
+public class LogStoreIndex {
+
+    private static final float MAX_LOAD = 0.75f;
+    // 位置的低 40 位為文件內偏移，高 24 位為數據文件編號
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] locations;
+    private long[] versions;
+    // 記錄的總長度；墓碑為負數，0 表示空槽位
+    private int[] sizes;
+    private int size;
+    private int liveCount;
+
+    /**
+     * 構造函數
+     * @param expected 預計的玩家數
+     */
+    public LogStoreIndex(int expected) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        locations = new long[capacity];
+        versions = new long[capacity];
+        sizes = new int[capacity];
+    }
+
+    public static long location(int fileId, long offset) {
+        return ((long) fileId << OFFSET_BITS) | offset;
+    }
+
+    public static int fileId(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    public static long offset(long location) {
+        return location & OFFSET_MASK;
+    }
+
+    private int slot(long most, long least) {
+        int mask = sizes.length - 1;
+        int hash = Long.hashCode(most ^ least);
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (sizes[index] != 0 && (mostBits[index] != most || leastBits[index] != least)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * 查找玩家的條目
+     * @param playerUUID 玩家UUID
+     * @return 槽位，不存在時為 -1
+     */
+    public int find(UUID playerUUID) {
+        int index = slot(playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits());
+        return sizes[index] != 0 ? index : -1;
+    }
+
+    /**
+     * 寫入或覆蓋玩家的條目
+     * @param playerUUID 玩家UUID
+     * @param location 記錄位置
+     * @param recordSize 記錄長度
+     * @param version 版本
+     * @param tombstone 是否為墓碑
+     * @return 被覆蓋的條目的記錄長度（墓碑為負數），沒有舊條目時為 0
+     */
+    public int put(UUID playerUUID, long location, int recordSize, long version, boolean tombstone) {
+        return put(playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits(), location,
+                tombstone ? -recordSize : recordSize, version);
+    }
+
+    private int put(long most, long least, long location, int signedSize, long version) {
+        int index = slot(most, least);
+        if (sizes[index] == 0 && size + 1 > sizes.length * MAX_LOAD) {
+            // 只有插入新玩家時才擴容，覆蓋已有條目不會改變其他條目的槽位
+            resize();
+            index = slot(most, least);
+        }
+        int previous = sizes[index];
+        if (previous == 0) {
+            size++;
+            mostBits[index] = most;
+            leastBits[index] = least;
+        } else if (previous > 0) {
+            liveCount--;
+        }
+        if (signedSize > 0) {
+            liveCount++;
+        }
+        locations[index] = location;
+        versions[index] = version;
+        sizes[index] = signedSize;
+        return previous;
+    }
+
+    private void resize() {
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        long[] oldLocations = locations;
+        long[] oldVersions = versions;
+        int[] oldSizes = sizes;
+        allocate(oldSizes.length << 1);
+        size = 0;
+        liveCount = 0;
+        for (int i = 0; i < oldSizes.length; i++) {
+            if (oldSizes[i] != 0) {
+                put(oldMost[i], oldLeast[i], oldLocations[i], oldSizes[i], oldVersions[i]);
+            }
+        }
+    }
+
+    public long getLocation(int slot) {
+        return locations[slot];
+    }
+
+    public long getVersion(int slot) {
+        return versions[slot];
+    }
+
+    /**
+     * 獲取記錄長度
+     * @param slot 槽位
+     * @return 記錄長度（墓碑同樣為正數）
+     */
+    public int getRecordSize(int slot) {
+        return Math.abs(sizes[slot]);
+    }
+
+    public boolean isTombstone(int slot) {
+        return sizes[slot] < 0;
+    }
+
+    public UUID getPlayerUUID(int slot) {
+        return new UUID(mostBits[slot], leastBits[slot]);
+    }
+
+    /**
+     * 獲取槽位總數（用於遍歷，空槽位的 {@link #isUsed(int)} 為 false）
+     * @return 槽位總數
+     */
+    public int capacity() {
+        return sizes.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return sizes[slot] != 0;
+    }
+
+    /**
+     * 獲取條目數（包括墓碑）
+     * @return 條目數
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 獲取有數據的玩家數（不包括墓碑）
+     * @return 玩家數
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * 估算佔用的內存
+     * @return 字節數
+     */
+    public long memoryBytes() {
+        return (long) sizes.length * (8 * 4 + 4);
+    }
+}
@@ -0,0 +1,344 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * 基於嵌入式日誌結構存儲（{@link LogStore}）的數據庫管理器
+ * <p>
+ * 每名玩家的飾品與圖騰編碼為一個值，保存時整體追加，不經過 SQL 解析、兩張數據表與索引維護；
+ * 加載只需一次內存索引查找與一次文件讀取。適合單伺服器使用（數據文件不能被多個伺服器共享）。
+ * 不支持共享物品去重與壓縮字典訓練，物品仍按 database.compression 設置壓縮。
+ */
+public class LogStoreManager implements DatabaseManager {
+
+    private final RPGInventory plugin;
+    private final File directory;
+    private final StorageExecutor storageExecutor;
+    private final ItemCodecRegistry itemCodecs;
+    private final LogStore store;
+    private final long compactionIntervalMs;
+    private final double compactionMinGarbage;
+    private final boolean syncWrites;
+    private final long syncIntervalMs;
+    private ScheduledFuture<?> compactionTask;
+    private ScheduledFuture<?> syncTask;
+    // 寫後保存隊列，設置後異步保存經過隊列與本地日誌
+    private volatile SaveQueue saveQueue;
+
+    // 因存儲中已有更新版本而被拒絕的過期快照數
+    private final AtomicLong versionConflictCount = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public LogStoreManager(RPGInventory plugin) {
+        this(plugin, new File(new File(plugin.getDataFolder(), "database"), "logstore"));
+    }
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param directory 數據目錄
+     */
+    public LogStoreManager(RPGInventory plugin, File directory) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.storageExecutor = new StorageExecutor(plugin);
+        this.itemCodecs = new ItemCodecRegistry(plugin);
+
+        FileConfiguration config = plugin.getConfig();
+        long segmentSize = Math.max(1, Math.min(1024, config.getLong("database.logstore.segment-size", 64))) * 1024 * 1024;
+        this.syncWrites = config.getBoolean("database.logstore.sync-writes", false);
+        this.syncIntervalMs = Math.max(100, config.getLong("database.logstore.sync-interval", 1000));
+        this.store = new LogStore(plugin.getLogger(), directory, segmentSize, syncWrites);
+        this.compactionIntervalMs = Math.max(10, config.getLong("database.logstore.compaction.interval", 300)) * 1000;
+        this.compactionMinGarbage = Math.max(0.1, Math.min(0.9, config.getDouble("database.logstore.compaction.min-garbage", 0.5)));
+    }
+
+    @Override
+    public boolean initialize() {
+        try {
+            store.open();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "無法打開日誌結構存儲: " + e.getMessage(), e);
+            return false;
+        }
+        compactionTask = storageExecutor.scheduleAtFixedRate(StorageExecutor.Priority.MAINTENANCE,
+                this::compact, compactionIntervalMs, compactionIntervalMs);
+        if (!syncWrites) {
+            syncTask = storageExecutor.scheduleAtFixedRate(StorageExecutor.Priority.MAINTENANCE,
+                    this::sync, syncIntervalMs, syncIntervalMs);
+        }
+        plugin.getLogger().info("日誌結構存儲初始化成功！" + store.getLiveCount() + " 名玩家 (" + directory.getPath() + ")");
+        return true;
+    }
+
+    /**
+     * 壓縮垃圾比例較高的數據文件
+     */
+    private void compact() {
+        try {
+            int deleted = store.compact(compactionMinGarbage);
+            if (deleted > 0) {
+                plugin.getLogger().info("日誌存儲壓縮完成，刪除了 " + deleted + " 個數據文件");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "日誌存儲壓縮失敗，稍後重試: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把最近的寫入刷到磁盤
+     */
+    private void sync() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "日誌存儲刷盤失敗: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+            compactionTask = null;
+        }
+        if (syncTask != null) {
+            syncTask.cancel(false);
+            syncTask = null;
+        }
+        // 等待已入隊的操作完成後再關閉存儲
+        storageExecutor.shutdown(5000);
+        store.close();
+        plugin.getLogger().info("已關閉日誌結構存儲");
+    }
+
+    @Override
+    public boolean saveInventory(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems) {
+        return saveInventories(Collections.singletonList(new PlayerLoadout(playerUUID, ornament, totems))).contains(playerUUID);
+    }
+
+    @Override
+    public Set<UUID> saveInventories(Collection<PlayerLoadout> loadouts) {
+        List<LogStore.Write> writes = new ArrayList<>(loadouts.size());
+        for (PlayerLoadout loadout : loadouts) {
+            long version = loadout.getVersion() != 0 ? loadout.getVersion() : PlayerLoadout.nextVersion(0);
+            try {
+                // 沒有任何物品時寫入墓碑，與 SQL 存儲刪除所有行的行為相同
+                writes.add(new LogStore.Write(loadout.getPlayerUUID(), version, loadout.isEmpty() ? null : encode(loadout)));
+            } catch (IOException | IllegalArgumentException e) {
+                plugin.getLogger().log(Level.SEVERE, "序列化玩家 " + loadout.getPlayerUUID() + " 的物品欄數據失敗: " + e.getMessage(), e);
+            }
+        }
+
+        Set<UUID> saved = new HashSet<>();
+        try {
+            Set<UUID> stale = store.write(writes);
+            versionConflictCount.addAndGet(stale.size());
+            for (LogStore.Write write : writes) {
+                saved.add(write.getPlayerUUID());
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "寫入 " + writes.size() + " 名玩家的物品欄數據失敗: " + e.getMessage(), e);
+        }
+        return saved;
+    }
+
+    @Override
+    public ItemStack loadOrnament(UUID playerUUID) {
+        PlayerLoadout loadout = loadProfile(playerUUID);
+        return loadout != null ? loadout.getOrnament() : null;
+    }
+
+    @Override
+    public Map<Integer, ItemStack> loadTotems(UUID playerUUID) {
+        PlayerLoadout loadout = loadProfile(playerUUID);
+        // 加載失敗時不返回部分數據
+        return loadout != null ? new HashMap<>(loadout.getTotems()) : new HashMap<>();
+    }
+
+    @Override
+    public PlayerLoadout loadProfile(UUID playerUUID) {
+        try {
+            byte[] value = store.get(playerUUID);
+            if (value == null) {
+                return new PlayerLoadout(playerUUID, null, Collections.emptyMap());
+            }
+            return decode(playerUUID, value);
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "加載玩家 " + playerUUID + " 的物品欄數據失敗: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerLoadout> loadProfiles(Collection<UUID> playerUUIDs) {
+        Map<UUID, PlayerLoadout> profiles = new HashMap<>();
+        for (UUID playerUUID : new LinkedHashSet<>(playerUUIDs)) {
+            PlayerLoadout loadout = loadProfile(playerUUID);
+            if (loadout != null) {
+                profiles.put(playerUUID, loadout);
+            }
+        }
+        return profiles;
+    }
+
+    @Override
+    public boolean deleteInventory(UUID playerUUID) {
+        try {
+            store.write(Collections.singletonList(new LogStore.Write(playerUUID,
+                    PlayerLoadout.nextVersion(store.getVersion(playerUUID)), null)));
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "刪除玩家 " + playerUUID + " 的物品欄數據失敗: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<PlayerLoadout> loadProfileAsync(UUID playerUUID) {
+        return storageExecutor.supply(StorageExecutor.Priority.LOAD, () -> loadProfile(playerUUID));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> saveAsync(PlayerLoadout loadout) {
+        SaveQueue queue = saveQueue;
+        if (queue != null) {
+            return queue.enqueue(loadout, true);
+        }
+        return storageExecutor.supply(StorageExecutor.Priority.SAVE,
+                () -> saveInventories(Collections.singletonList(loadout)).contains(loadout.getPlayerUUID()));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(UUID playerUUID) {
+        return storageExecutor.supply(StorageExecutor.Priority.SAVE, () -> deleteInventory(playerUUID));
+    }
+
+    @Override
+    public void setSaveQueue(SaveQueue saveQueue) {
+        this.saveQueue = saveQueue;
+    }
+
+    @Override
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
+    }
+
+    @Override
+    public boolean hasData(UUID playerUUID) {
+        // 索引常駐內存，不需要訪問磁盤
+        return store.contains(playerUUID);
+    }
+
+    @Override
+    public boolean forEachPlayer(Consumer<UUID> consumer) {
+        // 索引本身常駐內存，複製一份玩家列表（每名玩家 16 字節）後遍歷，不阻塞寫入
+        long[] players = store.snapshotPlayers();
+        for (int i = 0; i < players.length; i += 2) {
+            consumer.accept(new UUID(players[i], players[i + 1]));
+        }
+        return true;
+    }
+
+    /**
+     * 編碼物品欄：飾品長度（-1 表示沒有）與數據，之後是圖騰數量及每個圖騰的槽位、長度與數據
+     */
+    private byte[] encode(PlayerLoadout loadout) throws IOException {
+        byte[] ornament = loadout.getOrnament() != null ? itemCodecs.encode(loadout.getOrnament()) : null;
+        List<byte[]> totems = new ArrayList<>(loadout.getTotems().size());
+        int size = 4 + (ornament != null ? ornament.length : 0) + 4;
+        for (ItemStack totem : loadout.getTotems().values()) {
+            byte[] data = itemCodecs.encode(totem);
+            totems.add(data);
+            size += 8 + data.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        if (ornament != null) {
+            buffer.putInt(ornament.length).put(ornament);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putInt(totems.size());
+        int index = 0;
+        for (Integer slot : loadout.getTotems().keySet()) {
+            byte[] data = totems.get(index++);
+            buffer.putInt(slot).putInt(data.length).put(data);
+        }
+        return buffer.array();
+    }
+
+    private PlayerLoadout decode(UUID playerUUID, byte[] value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        ItemStack ornament = null;
+        int ornamentLength = buffer.getInt();
+        if (ornamentLength >= 0) {
+            byte[] data = new byte[ornamentLength];
+            buffer.get(data);
+            ornament = itemCodecs.decode(data);
+        }
+        int totemCount = buffer.getInt();
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        for (int i = 0; i < totemCount; i++) {
+            int slot = buffer.getInt();
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            totems.put(slot, itemCodecs.decode(data));
+        }
+        return new PlayerLoadout(playerUUID, ornament, totems);
+    }
+
+    /**
+     * 獲取底層存儲
+     * @return 日誌結構存儲
+     */
+    public LogStore getStore() {
+        return store;
+    }
+
+    @Override
+    public ItemCodecRegistry getItemCodecs() {
+        return itemCodecs;
+    }
+
+    /**
+     * 獲取因存儲中已有更新版本而被拒絕的過期快照數
+     * @return 快照數
+     */
+    public long getVersionConflictCount() {
+        return versionConflictCount.get();
+    }
+
+    @Override
+    public List<String> getStatsLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(store.getStatusLine());
+        lines.add("§e版本衝突（已拒絕的過期快照）: §f" + getVersionConflictCount());
+        lines.add(itemCodecs.getStatusLine());
+        return lines;
+    }
+}
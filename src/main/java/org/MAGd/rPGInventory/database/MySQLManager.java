@@ -4,12 +4,8 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.MAGd.rPGInventory.RPGInventory;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.inventory.ItemStack;
 
-import java.io.IOException;
 import java.sql.*;
-import java.util.Map;
-import java.util.UUID;
 import java.util.logging.Level;
 
 /**
@@ -19,6 +15,7 @@ public class MySQLManager extends AbstractDatabaseManager {
     
     private String host, database, username, password;
     private int port;
+    private MySQLSettings settings;
     
     /**
      * 構造函數
@@ -39,36 +36,69 @@ public class MySQLManager extends AbstractDatabaseManager {
         database = config.getString("database.mysql.database", "rpginventory");
         username = config.getString("database.mysql.username", "root");
         password = config.getString("database.mysql.password", "password");
+        settings = MySQLSettings.fromConfig(config);
+    }
+    
+    /**
+     * 註冊 JDBC 驅動並生成連接池配置
+     * @return 連接池配置，驅動註冊失敗時返回 null
+     */
+    protected HikariConfig createPoolConfig() {
+        // 手動註冊 MySQL 驅動
+        try {
+            Class.forName("org.MAGd.rPGInventory.libs.mysql.cj.jdbc.Driver");
+            plugin.getLogger().info("MySQL JDBC 驅動註冊成功");
+        } catch (ClassNotFoundException e) {
+            plugin.getLogger().severe("無法註冊 MySQL JDBC 驅動: " + e.getMessage());
+            return null;
+        }
+        
+        // 配置 HikariCP
+        HikariConfig config = new HikariConfig();
+        // 驅動屬性（SSL、編碼、預編譯語句緩存、批處理改寫等）由 database.mysql.properties 設置
+        config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database);
+        // 不再設置驅動類名，讓 HikariCP 自動檢測
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setPoolName("RPGInventoryMySQLPool");
+        
+        // MySQL 連接池設置
+        settings.applyTo(config);
+        return config;
+    }
+    
+    /**
+     * 獲取連接池設置
+     * @return 設置
+     */
+    protected MySQLSettings getSettings() {
+        return settings;
+    }
+    
+    /**
+     * 獲取日誌中顯示的數據庫名稱
+     * @return 名稱
+     */
+    protected String getDisplayName() {
+        return "MySQL";
+    }
+    
+    /**
+     * 獲取日誌中顯示的連接設置
+     * @return 設置描述
+     */
+    protected String describeSettings() {
+        return settings.describe();
     }
     
     @Override
     public boolean initialize() {
         try {
-            // 手動註冊 MySQL 驅動
-            try {
-                Class.forName("org.MAGd.rPGInventory.libs.mysql.cj.jdbc.Driver");
-                plugin.getLogger().info("MySQL JDBC 驅動註冊成功");
-            } catch (ClassNotFoundException e) {
-                plugin.getLogger().severe("無法註冊 MySQL JDBC 驅動: " + e.getMessage());
+            HikariConfig config = createPoolConfig();
+            if (config == null) {
                 return false;
             }
             
-            // 配置 HikariCP
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + 
-                           "?useSSL=false&autoReconnect=true&useUnicode=true&characterEncoding=UTF-8");
-            // 不再設置驅動類名，讓 HikariCP 自動檢測
-            config.setUsername(username);
-            config.setPassword(password);
-            config.setPoolName("RPGInventoryMySQLPool");
-            
-            // MySQL 連接池設置
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(5);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
-            
             // 創建連接池
             dataSource = new HikariDataSource(config);
             
@@ -77,76 +107,132 @@ public class MySQLManager extends AbstractDatabaseManager {
                  Statement statement = conn.createStatement()) {
                 
                 // 玩家飾品表
+                statement.executeUpdate(getCreateOrnamentsSql("ornaments"));
+                
+                // 玩家圖騰表
+                statement.executeUpdate(getCreateTotemsSql("totems"));
+                
+                // 共享物品表（內容尋址去重）
                 statement.executeUpdate(
-                        "CREATE TABLE IF NOT EXISTS `ornaments` (" +
-                        "`player_uuid` VARCHAR(36) PRIMARY KEY, " +
-                        "`item_data` TEXT NOT NULL" +
+                        "CREATE TABLE IF NOT EXISTS `items` (" +
+                        "`hash` BINARY(32) PRIMARY KEY, " +
+                        "`data` MEDIUMBLOB NOT NULL, " +
+                        "`last_used` BIGINT NOT NULL" +
                         ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;"
                 );
                 
-                // 玩家圖騰表
+                // 物品壓縮字典表
                 statement.executeUpdate(
-                        "CREATE TABLE IF NOT EXISTS `totems` (" +
-                        "`id` INT AUTO_INCREMENT PRIMARY KEY, " +
-                        "`player_uuid` VARCHAR(36) NOT NULL, " +
-                        "`slot_id` INT NOT NULL, " +
-                        "`item_data` TEXT NOT NULL, " +
-                        "UNIQUE KEY `player_slot` (`player_uuid`, `slot_id`)" +
+                        "CREATE TABLE IF NOT EXISTS `item_dictionaries` (" +
+                        "`id` INT PRIMARY KEY, " +
+                        "`dictionary` MEDIUMBLOB NOT NULL, " +
+                        "`created_at` BIGINT NOT NULL" +
                         ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;"
                 );
+                
+                // 按編號執行尚未應用的結構遷移（v2 存儲格式、二進制主鍵、版本表等）
+                migrateSchema(conn);
+                
+                // 加載物品壓縮字典
+                loadDictionaries(conn);
             }
             
-            plugin.getLogger().info("MySQL 數據庫連接池初始化成功！");
+            startBackgroundMigrations();
+            startItemCollector();
+            startExistenceFilter();
+            plugin.getLogger().info(getDisplayName() + " 數據庫連接池初始化成功！設置: " + describeSettings());
             return true;
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "無法初始化 MySQL 數據庫連接池: " + e.getMessage(), e);
+            plugin.getLogger().log(Level.SEVERE, "無法初始化 " + getDisplayName() + " 數據庫連接池: " + e.getMessage(), e);
             return false;
         }
     }
     
     @Override
-    public void saveOrnament(Connection conn, UUID playerUUID, ItemStack ornament) throws SQLException, IOException {
-        String sql = "INSERT INTO ornaments (player_uuid, item_data) VALUES (?, ?) " +
-                     "ON DUPLICATE KEY UPDATE item_data = ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            String serializedItem = serializeItemStack(ornament);
-            statement.setString(1, playerUUID.toString());
-            statement.setString(2, serializedItem);
-            statement.setString(3, serializedItem);
-            statement.executeUpdate();
-        }
+    protected String getCreateOrnamentsSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS `" + table + "` (" +
+               "`player_uuid` BINARY(16) PRIMARY KEY, " +
+               "`item_data` TEXT NOT NULL, " +
+               "`item_blob` MEDIUMBLOB NULL, " +
+               "`item_hash` BINARY(32) NULL" +
+               ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
     }
     
     @Override
-    public void deleteOrnament(Connection conn, UUID playerUUID) throws SQLException {
-        String sql = "DELETE FROM ornaments WHERE player_uuid = ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, playerUUID.toString());
-            statement.executeUpdate();
-        }
+    protected String getCreateLoadoutsSql() {
+        return "CREATE TABLE IF NOT EXISTS `loadouts` (" +
+               "`player_uuid` BINARY(16) PRIMARY KEY, " +
+               "`version` BIGINT NOT NULL" +
+               ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
     }
     
     @Override
-    public void deleteTotems(Connection conn, UUID playerUUID) throws SQLException {
-        String sql = "DELETE FROM totems WHERE player_uuid = ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, playerUUID.toString());
-            statement.executeUpdate();
-        }
+    protected String getCreateTotemsSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS `" + table + "` (" +
+               "`player_uuid` BINARY(16) NOT NULL, " +
+               "`slot_id` INT NOT NULL, " +
+               "`item_data` TEXT NOT NULL, " +
+               "`item_blob` MEDIUMBLOB NULL, " +
+               "`item_hash` BINARY(32) NULL, " +
+               "PRIMARY KEY (`player_uuid`, `slot_id`)" +
+               ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
     }
     
     @Override
-    public void saveTotems(Connection conn, UUID playerUUID, Map<Integer, ItemStack> totems) throws SQLException, IOException {
-        String sql = "INSERT INTO totems (player_uuid, slot_id, item_data) VALUES (?, ?, ?)";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            for (Map.Entry<Integer, ItemStack> entry : totems.entrySet()) {
-                if (entry.getValue() != null) {
-                    statement.setString(1, playerUUID.toString());
-                    statement.setInt(2, entry.getKey());
-                    statement.setString(3, serializeItemStack(entry.getValue()));
-                    statement.executeUpdate();
-                }
-            }
+    protected void renameLegacyTable(Connection conn, String table) throws SQLException {
+        // MySQL 的索引名只在表內唯一，改名後無需刪除索引
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("RENAME TABLE `" + table + "` TO `" + table + LEGACY_SUFFIX + "`");
         }
     }
-} 
\ No newline at end of file
+    
+    @Override
+    protected String getBlobColumnType() {
+        return "MEDIUMBLOB";
+    }
+    
+    @Override
+    protected String getHashColumnType() {
+        return "BINARY(32)";
+    }
+    
+    @Override
+    protected boolean isSharedStorage() {
+        // 多台伺服器可能共用同一個 MySQL 數據庫
+        return true;
+    }
+    
+    @Override
+    protected String getUpsertOrnamentSql() {
+        return "INSERT INTO ornaments (player_uuid, item_data, item_blob, item_hash) VALUES (?, ?, ?, ?) " +
+               "ON DUPLICATE KEY UPDATE item_data = VALUES(item_data), item_blob = VALUES(item_blob), item_hash = VALUES(item_hash)";
+    }
+    
+    @Override
+    protected String getUpsertTotemSql() {
+        return "INSERT INTO totems (player_uuid, slot_id, item_data, item_blob, item_hash) VALUES (?, ?, ?, ?, ?) " +
+               "ON DUPLICATE KEY UPDATE item_data = VALUES(item_data), item_blob = VALUES(item_blob), item_hash = VALUES(item_hash)";
+    }
+    
+    @Override
+    protected String getUpsertItemSql() {
+        return "INSERT INTO items (hash, data, last_used) VALUES (?, ?, ?) " +
+               "ON DUPLICATE KEY UPDATE last_used = VALUES(last_used)";
+    }
+    
+    @Override
+    protected String getInsertVersionSql() {
+        return "INSERT IGNORE INTO loadouts (player_uuid, version) VALUES (?, ?)";
+    }
+    
+    @Override
+    protected String getInsertIgnorePrefix(String table) {
+        return "INSERT IGNORE INTO " + table;
+    }
+    
+    @Override
+    protected String getLockingReadSuffix() {
+        // InnoDB 的寫入事務可以並發執行，移動舊版數據前需要鎖定舊表中的行
+        return " FOR UPDATE";
+    }
+}
@@ -0,0 +1,134 @@
+package org.MAGd.rPGInventory.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MySQL 連接池與 JDBC 驅動設置
+ * <p>
+ * 連接池參數讀取自 {@code database.mysql.pool}，驅動屬性讀取自 {@code database.mysql.properties}。
+ * 默認的驅動屬性針對大量批量 upsert：客戶端與服務端的預編譯語句緩存、把批處理改寫為多值 INSERT，
+ * 以及在本地記錄會話狀態，省去每個事務的 autocommit 往返。配置中的屬性會覆蓋同名的默認值。
+ */
+public class MySQLSettings {
+
+    private static final Map<String, String> DEFAULT_PROPERTIES;
+
+    static {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("useSSL", "false");
+        defaults.put("useUnicode", "true");
+        defaults.put("characterEncoding", "UTF-8");
+        defaults.put("rewriteBatchedStatements", "true");
+        defaults.put("cachePrepStmts", "true");
+        defaults.put("prepStmtCacheSize", "250");
+        defaults.put("prepStmtCacheSqlLimit", "2048");
+        defaults.put("useServerPrepStmts", "true");
+        defaults.put("useLocalSessionState", "true");
+        defaults.put("elideSetAutoCommits", "true");
+        defaults.put("cacheResultSetMetadata", "true");
+        defaults.put("cacheServerConfiguration", "true");
+        defaults.put("maintainTimeStats", "false");
+        DEFAULT_PROPERTIES = Collections.unmodifiableMap(defaults);
+    }
+
+    private final int maximumPoolSize;
+    private final int minimumIdle;
+    private final long connectionTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final long keepaliveTimeMs;
+    private final long leakDetectionThresholdMs;
+    private final Map<String, String> properties;
+
+    private MySQLSettings(int maximumPoolSize, int minimumIdle, long connectionTimeoutMs, long idleTimeoutMs,
+                          long maxLifetimeMs, long keepaliveTimeMs, long leakDetectionThresholdMs,
+                          Map<String, String> properties) {
+        this.maximumPoolSize = maximumPoolSize;
+        this.minimumIdle = minimumIdle;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.keepaliveTimeMs = keepaliveTimeMs;
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        this.properties = properties;
+    }
+
+    /**
+     * 從配置文件讀取設置
+     * @param config 配置
+     * @return 設置
+     */
+    public static MySQLSettings fromConfig(FileConfiguration config) {
+        int maximumPoolSize = Math.max(1, config.getInt("database.mysql.pool.maximum-pool-size", 10));
+        Map<String, String> properties = new LinkedHashMap<>(DEFAULT_PROPERTIES);
+        ConfigurationSection section = config.getConfigurationSection("database.mysql.properties");
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                Object value = section.get(key);
+                if (value != null) {
+                    properties.put(key, String.valueOf(value));
+                }
+            }
+        }
+        return new MySQLSettings(
+                maximumPoolSize,
+                Math.max(0, Math.min(maximumPoolSize, config.getInt("database.mysql.pool.minimum-idle", maximumPoolSize))),
+                // 超出 HikariCP 允許範圍的時間會由 HikariCP 改回默認值並輸出警告
+                Math.max(250, config.getLong("database.mysql.pool.connection-timeout", 10000)),
+                Math.max(0, config.getLong("database.mysql.pool.idle-timeout", 600000)),
+                Math.max(0, config.getLong("database.mysql.pool.max-lifetime", 1800000)),
+                Math.max(0, config.getLong("database.mysql.pool.keepalive-time", 300000)),
+                Math.max(0, config.getLong("database.mysql.pool.leak-detection-threshold", 0)),
+                Collections.unmodifiableMap(properties));
+    }
+
+    /**
+     * 把連接池參數與驅動屬性寫入 HikariCP 配置
+     * @param config HikariCP 配置
+     */
+    public void applyTo(HikariConfig config) {
+        applyPoolTo(config);
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            config.addDataSourceProperty(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 只把連接池參數寫入 HikariCP 配置（驅動屬性只適用於 MySQL 驅動）
+     * @param config HikariCP 配置
+     */
+    public void applyPoolTo(HikariConfig config) {
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setIdleTimeout(idleTimeoutMs);
+        config.setMaxLifetime(maxLifetimeMs);
+        config.setKeepaliveTime(keepaliveTimeMs);
+        config.setLeakDetectionThreshold(leakDetectionThresholdMs);
+    }
+
+    /**
+     * 生成設置描述
+     * @return 描述文本
+     */
+    public String describe() {
+        return describePool() +
+                ", useServerPrepStmts=" + properties.get("useServerPrepStmts") +
+                ", rewriteBatchedStatements=" + properties.get("rewriteBatchedStatements") +
+                ", 驅動屬性 " + properties.size() + " 項";
+    }
+
+    /**
+     * 生成連接池參數的描述
+     * @return 描述文本
+     */
+    public String describePool() {
+        return minimumIdle + "-" + maximumPoolSize + " 個連接, 獲取超時 " + connectionTimeoutMs + " 毫秒";
+    }
+}
@@ -0,0 +1,124 @@
+package org.MAGd.rPGInventory.database;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 記錄數據庫中有保存數據的玩家的布隆過濾器
+ * <p>
+ * 過濾器判定不存在的玩家一定沒有數據，可以跳過查詢；判定存在時仍需查詢數據庫確認（可能誤判）。
+ * 玩家的數據在寫入數據庫之前就會被加入，因此不會漏判。布隆過濾器不支持刪除，
+ * 刪除數據的玩家之後只會成為一次誤判。
+ */
+public class PlayerExistenceFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedEntries;
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param expectedEntries 預計的玩家數
+     * @param falsePositiveRate 目標誤判率
+     */
+    public PlayerExistenceFilter(long expectedEntries, double falsePositiveRate) {
+        this.expectedEntries = Math.max(1, expectedEntries);
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-this.expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2));
+        // 向上取整到 64 的倍數
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, Math.min(16, (int) Math.round((double) bitCount / this.expectedEntries * ln2)));
+    }
+
+    /**
+     * 記錄玩家有保存的數據
+     * @param playerUUID 玩家UUID
+     */
+    public void add(UUID playerUUID) {
+        long h1 = mix(playerUUID.getMostSignificantBits() ^ Long.rotateLeft(playerUUID.getLeastSignificantBits(), 32));
+        long h2 = mix(playerUUID.getLeastSignificantBits() + h1) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+                changed = true;
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 檢查玩家是否可能有保存的數據
+     * @param playerUUID 玩家UUID
+     * @return false 表示一定沒有數據
+     */
+    public boolean mightContain(UUID playerUUID) {
+        long h1 = mix(playerUUID.getMostSignificantBits() ^ Long.rotateLeft(playerUUID.getLeastSignificantBits(), 32));
+        long h2 = mix(playerUUID.getLeastSignificantBits() + h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 估算當前的誤判率
+     * @return 誤判率
+     */
+    public double estimatedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions.get() / bitCount), hashCount);
+    }
+
+    /**
+     * 獲取已記錄的玩家數（近似值，重複記錄同一玩家只計算一次）
+     * @return 玩家數
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * 檢查記錄的玩家數是否已超過預計值（誤判率會隨之升高，但不會漏判）
+     * @return 是否超過
+     */
+    public boolean isOverCapacity() {
+        return insertions.get() > expectedEntries;
+    }
+
+    /**
+     * 獲取過濾器佔用的內存
+     * @return 字節數
+     */
+    public long getSizeBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * 64 位哈希混合函數（MurmurHash3 fmix64）
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
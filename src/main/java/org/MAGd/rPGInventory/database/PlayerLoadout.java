@@ -0,0 +1,148 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 玩家物品欄快照（不可變），用於在主線程與數據庫線程之間傳遞數據
+ */
+public final class PlayerLoadout {
+
+    // 版本的低 10 位留給同一毫秒內的多次變更
+    private static final int VERSION_CLOCK_SHIFT = 10;
+
+    private final UUID playerUUID;
+    private final ItemStack ornament;
+    private final Map<Integer, ItemStack> totems;
+    private final long version;
+    // 上一次交給保存隊列的快照版本，以及之後變更過的槽位；為 0 / null 時表示未知，所有槽位都視為已變更
+    private final long baseVersion;
+    private final boolean ornamentChanged;
+    private final Set<Integer> changedTotemSlots;
+
+    /**
+     * 構造函數
+     * @param playerUUID 玩家UUID
+     * @param ornament 飾品欄物品，可為 null
+     * @param totems 圖騰欄物品（槽位 -> 物品）
+     */
+    public PlayerLoadout(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems) {
+        this(playerUUID, ornament, totems, 0L);
+    }
+
+    /**
+     * 構造函數
+     * @param playerUUID 玩家UUID
+     * @param ornament 飾品欄物品，可為 null
+     * @param totems 圖騰欄物品（槽位 -> 物品）
+     * @param version 生成快照時的物品欄版本，0 表示沒有版本（寫入時使用當前時間）
+     */
+    public PlayerLoadout(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems, long version) {
+        this(playerUUID, ornament, totems, version, 0L, true, null);
+    }
+
+    /**
+     * 構造函數
+     * @param playerUUID 玩家UUID
+     * @param ornament 飾品欄物品，可為 null
+     * @param totems 圖騰欄物品（槽位 -> 物品）
+     * @param version 生成快照時的物品欄版本，0 表示沒有版本（寫入時使用當前時間）
+     * @param baseVersion 上一次交給保存隊列的快照版本，0 表示未知
+     * @param ornamentChanged 飾品欄在 baseVersion 之後是否變更過
+     * @param changedTotemSlots 在 baseVersion 之後變更過的圖騰槽位，為 null 表示未知
+     */
+    public PlayerLoadout(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems, long version,
+                         long baseVersion, boolean ornamentChanged, Set<Integer> changedTotemSlots) {
+        this.playerUUID = playerUUID;
+        this.version = version;
+        this.baseVersion = changedTotemSlots != null ? baseVersion : 0L;
+        this.ornamentChanged = ornamentChanged;
+        this.changedTotemSlots = changedTotemSlots != null ? Set.copyOf(changedTotemSlots) : null;
+        this.ornament = ornament;
+        this.totems = totems == null || totems.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(totems));
+    }
+
+    /**
+     * 獲取玩家UUID
+     * @return 玩家UUID
+     */
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * 獲取飾品欄物品
+     * @return 飾品欄物品，沒有則為 null
+     */
+    public ItemStack getOrnament() {
+        return ornament;
+    }
+
+    /**
+     * 獲取圖騰欄物品
+     * @return 不可修改的圖騰映射
+     */
+    public Map<Integer, ItemStack> getTotems() {
+        return totems;
+    }
+
+    /**
+     * 獲取生成快照時的物品欄版本
+     * @return 版本
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 獲取上一次交給保存隊列的快照版本；數據庫中已寫入該版本時，沒有變更的槽位可以沿用已寫入的數據
+     * @return 版本，未知時為 0
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * 檢查飾品欄在 {@link #getBaseVersion()} 之後是否變更過
+     * @return 是否變更過，未知時為 true
+     */
+    public boolean isOrnamentChanged() {
+        return baseVersion == 0 || ornamentChanged;
+    }
+
+    /**
+     * 檢查圖騰槽位在 {@link #getBaseVersion()} 之後是否變更過
+     * @param slotId 槽位
+     * @return 是否變更過，未知時為 true
+     */
+    public boolean isTotemChanged(int slotId) {
+        return baseVersion == 0 || changedTotemSlots.contains(slotId);
+    }
+
+    /**
+     * 檢查快照是否為空
+     * @return 沒有飾品也沒有圖騰時返回 true
+     */
+    public boolean isEmpty() {
+        return ornament == null && totems.isEmpty();
+    }
+
+    /**
+     * 生成下一個物品欄版本
+     * <p>
+     * 版本以當前時間為基準並且一定大於上一個版本，因此重啟後或在其他伺服器上產生的快照也可以按變更時間比較新舊；
+     * 數據庫據此拒絕比已寫入版本更舊的快照。
+     * @param previous 上一個版本，沒有時為 0
+     * @return 新版本
+     */
+    public static long nextVersion(long previous) {
+        return Math.max(previous + 1, System.currentTimeMillis() << VERSION_CLOCK_SHIFT);
+    }
+}
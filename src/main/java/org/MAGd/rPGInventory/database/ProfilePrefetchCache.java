@@ -0,0 +1,251 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登入前預取的玩家物品欄緩存
+ * <p>
+ * 在 AsyncPlayerPreLoginEvent（登入線程）中加載玩家數據，進入伺服器時在主線程直接取用，
+ * 主線程不再執行任何數據庫查詢。條目只保留很短的時間，並且只能被取用一次；
+ * 預取之後若該玩家又有快照進入保存隊列（例如重複登入時舊連接退出），預取的數據視為過期。
+ * <p>
+ * 預取未命中時通過 {@link DatabaseManager#loadProfileAsync(UUID)} 加載；加載失敗或線程池隊列已滿時按退避時間重新調度，而不是在線程中等待。
+ * 異步加載以 CompletableFuture 返回，整體有超時時間，玩家退出時取消。
+ */
+public class ProfilePrefetchCache {
+
+    private final RPGInventory plugin;
+    private final SaveQueue saveQueue;
+    private final boolean enabled;
+    private final long ttlMs;
+    private final boolean syncFallback;
+    private final RetryBackoff backoff;
+    private final int maxLoadAttempts;
+    private final long loadTimeoutMs;
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    // 進行中的異步加載，同一玩家的多次請求共用一個 Future
+    private final Map<UUID, CompletableFuture<PlayerLoadout>> loads = new ConcurrentHashMap<>();
+
+    // 統計數據
+    private final AtomicLong prefetchedCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong loadRetryCount = new AtomicLong();
+    private final AtomicLong loadFailedCount = new AtomicLong();
+    private final AtomicLong loadRejectedCount = new AtomicLong();
+    private final AtomicLong loadTimeoutCount = new AtomicLong();
+    private final AtomicLong loadCancelledCount = new AtomicLong();
+    private final AtomicLong sharedLoadCount = new AtomicLong();
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param saveQueue 保存隊列
+     */
+    public ProfilePrefetchCache(RPGInventory plugin, SaveQueue saveQueue) {
+        this.plugin = plugin;
+        this.saveQueue = saveQueue;
+
+        FileConfiguration config = plugin.getConfig();
+        this.enabled = config.getBoolean("database.prefetch.enabled", true);
+        // 入隊時間只保留 10 分鐘，TTL 不能超過這個範圍
+        this.ttlMs = Math.max(1, Math.min(300, config.getLong("database.prefetch.ttl", 30))) * 1000L;
+        this.syncFallback = "sync".equalsIgnoreCase(config.getString("database.prefetch.miss-fallback", "async"));
+        this.backoff = new RetryBackoff(config);
+        this.maxLoadAttempts = Math.max(1, config.getInt("database.retry.max-load-attempts", 5));
+        this.loadTimeoutMs = Math.max(0, config.getLong("database.retry.load-timeout", 30)) * 1000L;
+    }
+
+    /**
+     * 檢查是否開啟預取
+     * @return 是否開啟
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 預取未命中時是否在主線程同步加載（舊行為）
+     * @return 是否同步加載
+     */
+    public boolean isSyncFallback() {
+        return syncFallback;
+    }
+
+    /**
+     * 預取玩家數據（阻塞，應在登入線程等異步線程中調用）
+     * @param playerUUID 玩家UUID
+     */
+    public void prefetch(UUID playerUUID) {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        PlayerLoadout profile = plugin.fetchProfile(playerUUID);
+        if (profile != null) {
+            entries.put(playerUUID, new Entry(profile, startedAt));
+            prefetchedCount.incrementAndGet();
+        }
+        prune(startedAt);
+    }
+
+    /**
+     * 取出預取的玩家數據（應在主線程調用）
+     * @param playerUUID 玩家UUID
+     * @return 玩家數據，沒有預取、已過期或已被新的保存取代時為 null
+     */
+    public PlayerLoadout consume(UUID playerUUID) {
+        Entry entry = entries.remove(playerUUID);
+        if (entry == null || System.currentTimeMillis() - entry.loadedAt > ttlMs) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (saveQueue.getLastEnqueueTime(playerUUID) >= entry.loadedAt) {
+            staleCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.profile;
+    }
+
+    /**
+     * 在存儲線程池中加載玩家數據，失敗時按退避時間重新調度
+     * <p>
+     * 同一玩家已有進行中的加載時返回同一個 Future；超過 {@code database.retry.load-timeout} 時以 TimeoutException 完成，
+     * 玩家退出時由 {@link #cancelLoads(UUID)} 取消，之後的嘗試不再執行。結果在存儲線程中完成，
+     * 需要操作玩家時使用 {@code thenAcceptAsync(..., executor.mainThread())} 回到主線程。
+     * @param playerUUID 玩家UUID
+     * @return 玩家數據，所有嘗試都失敗時結果為 null
+     */
+    public CompletableFuture<PlayerLoadout> loadAsync(UUID playerUUID) {
+        CompletableFuture<PlayerLoadout> future = new CompletableFuture<>();
+        CompletableFuture<PlayerLoadout> existing = loads.putIfAbsent(playerUUID, future);
+        if (existing != null) {
+            sharedLoadCount.incrementAndGet();
+            return existing;
+        }
+        if (loadTimeoutMs > 0) {
+            future.orTimeout(loadTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        future.whenComplete((profile, error) -> {
+            loads.remove(playerUUID, future);
+            if (error instanceof TimeoutException) {
+                loadTimeoutCount.incrementAndGet();
+            }
+        });
+        attemptLoad(playerUUID, future, 1);
+        return future;
+    }
+
+    /**
+     * 取消玩家進行中的加載（玩家退出時調用）
+     * @param playerUUID 玩家UUID
+     */
+    public void cancelLoads(UUID playerUUID) {
+        CompletableFuture<PlayerLoadout> future = loads.remove(playerUUID);
+        if (future != null && future.cancel(false)) {
+            loadCancelledCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 保存隊列中尚未寫入的快照比數據庫中的數據更新，優先使用；否則在存儲線程池中查詢數據庫
+     */
+    private void attemptLoad(UUID playerUUID, CompletableFuture<PlayerLoadout> future, int attempt) {
+        if (future.isDone()) {
+            // 已取消或超時
+            return;
+        }
+        PlayerLoadout unsaved = saveQueue.getUnsavedSnapshot(playerUUID);
+        if (unsaved != null) {
+            future.complete(unsaved);
+            return;
+        }
+        CompletableFuture<PlayerLoadout> load = plugin.getDatabaseManager().loadProfileAsync(playerUUID);
+        // 超時或玩家退出時，尚未開始的查詢直接跳過
+        future.whenComplete((result, error) -> load.cancel(false));
+        load.whenComplete((profile, error) -> {
+            if (error instanceof RejectedExecutionException) {
+                loadRejectedCount.incrementAndGet();
+            }
+            if (profile == null) {
+                retryLater(playerUUID, future, attempt);
+                return;
+            }
+            // 查詢期間入隊的快照更新
+            PlayerLoadout latest = saveQueue.getUnsavedSnapshot(playerUUID);
+            future.complete(latest != null ? latest : profile);
+        });
+    }
+
+    /**
+     * 加載失敗或線程池隊列已滿時按退避時間重新提交，次數用完後以 null 完成
+     */
+    private void retryLater(UUID playerUUID, CompletableFuture<PlayerLoadout> future, int attempt) {
+        if (future.isDone()) {
+            return;
+        }
+        if (attempt < maxLoadAttempts) {
+            loadRetryCount.incrementAndGet();
+            executor().schedule(StorageExecutor.Priority.LOAD, () -> attemptLoad(playerUUID, future, attempt + 1),
+                    backoff.delayMs(attempt), () -> {
+                        loadRejectedCount.incrementAndGet();
+                        retryLater(playerUUID, future, attempt + 1);
+                    });
+            return;
+        }
+        loadFailedCount.incrementAndGet();
+        future.complete(null);
+    }
+
+    private StorageExecutor executor() {
+        return plugin.getDatabaseManager().getStorageExecutor();
+    }
+
+    /**
+     * 移除過期的條目（例如預取後登入被其他插件拒絕）
+     * @param now 當前時間
+     */
+    private void prune(long now) {
+        entries.values().removeIf(entry -> now - entry.loadedAt > ttlMs);
+    }
+
+    /**
+     * 生成預取統計信息
+     * @return 統計文本
+     */
+    public String getStatsLine() {
+        String retries = " §7| §e加載重試: §f" + loadRetryCount.get() + " §7(隊列已滿 " + loadRejectedCount.get() + ") §7| §e加載失敗: §f" + loadFailedCount.get() +
+                " §7| §e超時: §f" + loadTimeoutCount.get() + " §7| §e已取消: §f" + loadCancelledCount.get() + " §7| §e合併: §f" + sharedLoadCount.get();
+        if (!enabled) {
+            return "§e登入預取: §f關閉" + retries;
+        }
+        return "§e登入預取: §f已預取 " + prefetchedCount.get() + " §7| §e命中: §f" + hitCount.get() +
+                " §7| §e未命中: §f" + missCount.get() + " §7| §e已過期: §f" + staleCount.get() + retries;
+    }
+
+    /**
+     * 預取的數據及開始加載的時間
+     */
+    private static final class Entry {
+        private final PlayerLoadout profile;
+        private final long loadedAt;
+
+        private Entry(PlayerLoadout profile, long loadedAt) {
+            this.profile = profile;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
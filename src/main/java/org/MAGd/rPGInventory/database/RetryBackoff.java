@@ -0,0 +1,36 @@
+package org.MAGd.rPGInventory.database;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 帶隨機抖動的指數退避
+ * <p>
+ * 第 n 次重試的等待時間在 [上限/2, 上限] 之間隨機選取，上限為 base-delay * 2^(n-1)，不超過 max-delay；
+ * 抖動避免大量重試在數據庫恢復的同一時刻一起湧入。
+ */
+public class RetryBackoff {
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    /**
+     * 構造函數
+     * @param config 配置
+     */
+    public RetryBackoff(FileConfiguration config) {
+        this.baseDelayMs = Math.max(50, config.getLong("database.retry.base-delay", 500));
+        this.maxDelayMs = Math.max(baseDelayMs, config.getLong("database.retry.max-delay", 30000));
+    }
+
+    /**
+     * 計算第 n 次重試前的等待時間
+     * @param attempt 重試次數（從 1 開始）
+     * @return 等待時間（毫秒）
+     */
+    public long delayMs(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(20, Math.max(0, attempt - 1)));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+}
@@ -3,13 +3,11 @@ package org.MAGd.rPGInventory.database;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.MAGd.rPGInventory.RPGInventory;
-import org.bukkit.inventory.ItemStack;
 
 import java.io.File;
-import java.io.IOException;
 import java.sql.*;
-import java.util.Map;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -17,22 +15,55 @@ import java.util.logging.Level;
  */
 public class SQLiteManager extends AbstractDatabaseManager {
     
+    private final File databaseFile;
+    private final SQLiteSettings settings;
+    // 連接池名稱前綴，分片存儲中用於區分各分片的連接池
+    private final String poolPrefix;
+    // tuned 設置下的讀取連接池（寫入使用 dataSource 中唯一的連接）
+    private HikariDataSource readDataSource;
+    
     /**
      * 構造函數
      * @param plugin 插件實例
      */
     public SQLiteManager(RPGInventory plugin) {
-        super(plugin);
+        this(plugin, new File(new File(plugin.getDataFolder(), "database"), "rpginventory.db"),
+                SQLiteSettings.fromConfig(plugin.getConfig()));
+    }
+    
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param databaseFile 數據庫文件
+     * @param settings 連接設置
+     */
+    public SQLiteManager(RPGInventory plugin, File databaseFile, SQLiteSettings settings) {
+        this(plugin, databaseFile, settings, null, "RPGInventorySQLite");
+    }
+    
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param databaseFile 數據庫文件
+     * @param settings 連接設置
+     * @param storageExecutor 共用的存儲線程池，為 null 時創建自己的線程池
+     * @param poolPrefix 連接池名稱前綴
+     */
+    public SQLiteManager(RPGInventory plugin, File databaseFile, SQLiteSettings settings,
+                         StorageExecutor storageExecutor, String poolPrefix) {
+        super(plugin, storageExecutor);
+        this.databaseFile = databaseFile;
+        this.settings = settings;
+        this.poolPrefix = poolPrefix;
     }
     
     @Override
     public boolean initialize() {
-        File dataFolder = new File(plugin.getDataFolder(), "database");
+        File dataFolder = databaseFile.getParentFile();
         if (!dataFolder.exists()) {
             dataFolder.mkdirs();
         }
         
-        File databaseFile = new File(dataFolder, "rpginventory.db");
         String jdbcUrl = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
         
         try {
@@ -57,47 +88,53 @@ public class SQLiteManager extends AbstractDatabaseManager {
                 return false;
             }
             
-            // 配置 HikariCP
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(jdbcUrl);
-            // 顯式設置驅動類名
-            config.setDriverClassName("org.sqlite.JDBC");
-            config.setPoolName("RPGInventorySQLitePool");
-            
-            // SQLite 連接池設置
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(5);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
-            
             // 創建連接池
-            dataSource = new HikariDataSource(config);
+            if (settings.isTuned()) {
+                // 唯一的寫入連接串行化所有寫入，讀取使用獨立的連接池
+                dataSource = createPool(jdbcUrl, poolPrefix + "Writer", 1, 1);
+                readDataSource = createPool(jdbcUrl, poolPrefix + "Reader", settings.getReaderPoolSize(), 1);
+            } else {
+                dataSource = createPool(jdbcUrl, poolPrefix + "Pool", 10, 5);
+            }
             
             // 創建表
             try (Connection conn = getConnection();
                  Statement statement = conn.createStatement()) {
                 // 玩家飾品表
+                statement.executeUpdate(getCreateOrnamentsSql("ornaments"));
+                
+                // 玩家圖騰表
+                statement.executeUpdate(getCreateTotemsSql("totems"));
+                
+                // 共享物品表（內容尋址去重）
                 statement.executeUpdate(
-                        "CREATE TABLE IF NOT EXISTS ornaments (" +
-                        "player_uuid VARCHAR(36) PRIMARY KEY, " +
-                        "item_data TEXT NOT NULL" +
+                        "CREATE TABLE IF NOT EXISTS items (" +
+                        "hash BLOB PRIMARY KEY, " +
+                        "data BLOB NOT NULL, " +
+                        "last_used BIGINT NOT NULL" +
                         ");"
                 );
                 
-                // 玩家圖騰表
+                // 物品壓縮字典表
                 statement.executeUpdate(
-                        "CREATE TABLE IF NOT EXISTS totems (" +
-                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                        "player_uuid VARCHAR(36) NOT NULL, " +
-                        "slot_id INTEGER NOT NULL, " +
-                        "item_data TEXT NOT NULL, " +
-                        "UNIQUE(player_uuid, slot_id)" +
+                        "CREATE TABLE IF NOT EXISTS item_dictionaries (" +
+                        "id INTEGER PRIMARY KEY, " +
+                        "dictionary BLOB NOT NULL, " +
+                        "created_at BIGINT NOT NULL" +
                         ");"
                 );
+                
+                // 按編號執行尚未應用的結構遷移（v2 存儲格式、二進制主鍵、版本表等）
+                migrateSchema(conn);
+                
+                // 加載物品壓縮字典
+                loadDictionaries(conn);
             }
             
-            plugin.getLogger().info("SQLite 數據庫連接池初始化成功！");
+            startBackgroundMigrations();
+            startItemCollector();
+            startExistenceFilter();
+            plugin.getLogger().info("SQLite 數據庫連接池初始化成功！設置: " + settings.describe());
             return true;
         } catch (SQLException e) {
             plugin.getLogger().log(Level.SEVERE, "無法初始化 SQLite 數據庫連接池: " + e.getMessage(), e);
@@ -105,46 +142,144 @@ public class SQLiteManager extends AbstractDatabaseManager {
         }
     }
     
+    /**
+     * 創建 SQLite 連接池
+     * @param jdbcUrl 連接地址
+     * @param poolName 連接池名稱
+     * @param maxSize 最大連接數
+     * @param minIdle 最小空閒連接數
+     * @return 連接池
+     */
+    private HikariDataSource createPool(String jdbcUrl, String poolName, int maxSize, int minIdle) {
+        // 配置 HikariCP
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        // 顯式設置驅動類名
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setPoolName(poolName);
+        
+        // SQLite 連接池設置
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(minIdle);
+        config.setConnectionTimeout(30000);
+        config.setIdleTimeout(600000);
+        config.setMaxLifetime(1800000);
+        settings.applyPragmas(config);
+        
+        return new HikariDataSource(config);
+    }
+    
     @Override
-    public void saveOrnament(Connection conn, UUID playerUUID, ItemStack ornament) throws SQLException, IOException {
-        String sql = "INSERT OR REPLACE INTO ornaments (player_uuid, item_data) VALUES (?, ?)";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, playerUUID.toString());
-            statement.setString(2, serializeItemStack(ornament));
-            statement.executeUpdate();
-        }
+    protected Connection getReadConnection() throws SQLException {
+        return readDataSource != null ? acquire(readDataSource) : getConnection();
     }
     
     @Override
-    public void deleteOrnament(Connection conn, UUID playerUUID) throws SQLException {
-        String sql = "DELETE FROM ornaments WHERE player_uuid = ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, playerUUID.toString());
-            statement.executeUpdate();
+    protected List<HikariDataSource> getPools() {
+        List<HikariDataSource> pools = new ArrayList<>(super.getPools());
+        if (readDataSource != null) {
+            pools.add(readDataSource);
         }
+        return pools;
     }
     
     @Override
-    public void deleteTotems(Connection conn, UUID playerUUID) throws SQLException {
-        String sql = "DELETE FROM totems WHERE player_uuid = ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, playerUUID.toString());
-            statement.executeUpdate();
-        }
+    public int getMaxWriteConcurrency() {
+        // SQLite 同一時間只允許一個寫入事務
+        return 1;
     }
     
     @Override
-    public void saveTotems(Connection conn, UUID playerUUID, Map<Integer, ItemStack> totems) throws SQLException, IOException {
-        String sql = "INSERT INTO totems (player_uuid, slot_id, item_data) VALUES (?, ?, ?)";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            for (Map.Entry<Integer, ItemStack> entry : totems.entrySet()) {
-                if (entry.getValue() != null) {
-                    statement.setString(1, playerUUID.toString());
-                    statement.setInt(2, entry.getKey());
-                    statement.setString(3, serializeItemStack(entry.getValue()));
-                    statement.executeUpdate();
-                }
-            }
+    public void close() {
+        super.close();
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 獲取數據庫文件
+     * @return 數據庫文件
+     */
+    public File getDatabaseFile() {
+        return databaseFile;
+    }
+    
+    /**
+     * 獲取連接設置
+     * @return 連接設置
+     */
+    public SQLiteSettings getSettings() {
+        return settings;
+    }
+    
+    @Override
+    protected String getCreateOrnamentsSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+               "player_uuid BLOB PRIMARY KEY, " +
+               "item_data TEXT NOT NULL, " +
+               "item_blob BLOB NULL, " +
+               "item_hash BLOB NULL" +
+               ") WITHOUT ROWID";
+    }
+    
+    @Override
+    protected String getCreateLoadoutsSql() {
+        return "CREATE TABLE IF NOT EXISTS loadouts (" +
+               "player_uuid BLOB PRIMARY KEY, " +
+               "version BIGINT NOT NULL" +
+               ") WITHOUT ROWID";
+    }
+    
+    @Override
+    protected String getCreateTotemsSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+               "player_uuid BLOB NOT NULL, " +
+               "slot_id INTEGER NOT NULL, " +
+               "item_data TEXT NOT NULL, " +
+               "item_blob BLOB NULL, " +
+               "item_hash BLOB NULL, " +
+               "PRIMARY KEY (player_uuid, slot_id)" +
+               ") WITHOUT ROWID";
+    }
+    
+    @Override
+    protected String getBlobColumnType() {
+        return "BLOB";
+    }
+    
+    @Override
+    protected String getHashColumnType() {
+        return "BLOB";
+    }
+    
+    @Override
+    protected String getUpsertOrnamentSql() {
+        return "INSERT INTO ornaments (player_uuid, item_data, item_blob, item_hash) VALUES (?, ?, ?, ?) " +
+               "ON CONFLICT(player_uuid) DO UPDATE SET item_data = excluded.item_data, item_blob = excluded.item_blob, " +
+               "item_hash = excluded.item_hash";
+    }
+    
+    @Override
+    protected String getUpsertTotemSql() {
+        return "INSERT INTO totems (player_uuid, slot_id, item_data, item_blob, item_hash) VALUES (?, ?, ?, ?, ?) " +
+               "ON CONFLICT(player_uuid, slot_id) DO UPDATE SET item_data = excluded.item_data, item_blob = excluded.item_blob, " +
+               "item_hash = excluded.item_hash";
+    }
+    
+    @Override
+    protected String getUpsertItemSql() {
+        return "INSERT INTO items (hash, data, last_used) VALUES (?, ?, ?) " +
+               "ON CONFLICT(hash) DO UPDATE SET last_used = excluded.last_used";
+    }
+    
+    @Override
+    protected String getInsertVersionSql() {
+        return "INSERT OR IGNORE INTO loadouts (player_uuid, version) VALUES (?, ?)";
+    }
+    
+    @Override
+    protected String getInsertIgnorePrefix(String table) {
+        return "INSERT OR IGNORE INTO " + table;
+    }
+}
@@ -0,0 +1,113 @@
+package org.MAGd.rPGInventory.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * SQLite 連接設置
+ * <p>
+ * tuned：WAL 日誌模式，所有寫入經由唯一的寫入連接串行執行，讀取使用獨立的小連接池，
+ * 寫入不會因爭搶數據庫鎖而失敗（SQLITE_BUSY），讀取也不會被寫入阻塞。
+ * legacy：舊版設置，10 個連接共用一個連接池，使用 SQLite 默認的日誌模式。
+ */
+public class SQLiteSettings {
+
+    private final String name;
+    private final boolean tuned;
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSizeKb;
+    private final long mmapSizeMb;
+    private final int busyTimeoutMs;
+    private final int readerPoolSize;
+
+    private SQLiteSettings(String name, boolean tuned, String journalMode, String synchronous,
+                           int cacheSizeKb, long mmapSizeMb, int busyTimeoutMs, int readerPoolSize) {
+        this.name = name;
+        this.tuned = tuned;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeMb = mmapSizeMb;
+        this.busyTimeoutMs = busyTimeoutMs;
+        this.readerPoolSize = readerPoolSize;
+    }
+
+    /**
+     * 從配置文件讀取設置
+     * @param config 配置
+     * @return 設置
+     */
+    public static SQLiteSettings fromConfig(FileConfiguration config) {
+        if ("legacy".equalsIgnoreCase(config.getString("database.sqlite.profile", "tuned"))) {
+            return legacy();
+        }
+        return new SQLiteSettings("tuned", true,
+                config.getString("database.sqlite.journal-mode", "WAL").toUpperCase(),
+                config.getString("database.sqlite.synchronous", "NORMAL").toUpperCase(),
+                Math.max(0, config.getInt("database.sqlite.cache-size", 8192)),
+                Math.max(0, config.getLong("database.sqlite.mmap-size", 128)),
+                Math.max(0, config.getInt("database.sqlite.busy-timeout", 5000)),
+                Math.max(1, config.getInt("database.sqlite.reader-pool-size", 4)));
+    }
+
+    /**
+     * 舊版設置
+     * @return 設置
+     */
+    public static SQLiteSettings legacy() {
+        return new SQLiteSettings("legacy", false, null, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * 獲取設置名稱
+     * @return 名稱
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 是否使用單一寫入連接與獨立讀取連接池
+     * @return 是否為 tuned 設置
+     */
+    public boolean isTuned() {
+        return tuned;
+    }
+
+    /**
+     * 獲取讀取連接池大小
+     * @return 連接數
+     */
+    public int getReaderPoolSize() {
+        return readerPoolSize;
+    }
+
+    /**
+     * 將 PRAGMA 設置為連接屬性，由 SQLite 驅動在每個連接打開時執行
+     * @param config 連接池配置
+     */
+    public void applyPragmas(HikariConfig config) {
+        if (!tuned) {
+            return;
+        }
+        config.addDataSourceProperty("journal_mode", journalMode);
+        config.addDataSourceProperty("synchronous", synchronous);
+        // 負數表示以 KB 為單位
+        config.addDataSourceProperty("cache_size", String.valueOf(-cacheSizeKb));
+        config.addDataSourceProperty("mmap_size", String.valueOf(mmapSizeMb * 1024 * 1024));
+        config.addDataSourceProperty("busy_timeout", String.valueOf(busyTimeoutMs));
+        config.addDataSourceProperty("temp_store", "MEMORY");
+    }
+
+    /**
+     * 生成設置描述
+     * @return 描述文本
+     */
+    public String describe() {
+        if (!tuned) {
+            return "legacy (10 個共用連接, 默認日誌模式)";
+        }
+        return "tuned (" + journalMode + ", synchronous=" + synchronous + ", 1 個寫入連接 + " + readerPoolSize + " 個讀取連接)";
+    }
+}
@@ -0,0 +1,619 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.zip.CRC32C;
+
+/**
+ * 保存隊列的本地預寫日誌（write-ahead journal）
+ * <p>
+ * 每個快照在進入保存隊列時先追加到內存映射的日誌段文件中，數據庫確認寫入（或被同一玩家更新的快照取代）後
+ * 才釋放；所有記錄都已釋放的日誌段在檢查點時刪除。伺服器崩潰或關閉時數據庫不可用，
+ * 下次啟動時從日誌中恢復每名玩家最新的快照並重新放入保存隊列。
+ * <p>
+ * 追加只是把數據複製到映射內存，調用線程不等待磁盤；寫入的數據在進程崩潰後仍保留在系統頁緩存中，
+ * 由後台任務按 fsync-interval 刷到磁盤（斷電時最多丟失這段時間內的記錄）。
+ * <p>
+ * 日誌段格式（大端序）：16 字節段頭（魔數、格式版本、創建時間），之後是連續的記錄：
+ * <pre>
+ * [0-3]   記錄魔數
+ * [4-7]   內容長度
+ * [8-15]  序號
+ * [16-19] 序號與內容的 CRC32C 校驗和
+ * [20-]   內容：玩家UUID、物品欄版本、飾品、圖騰（物品使用帶編碼頭、不壓縮的格式）
+ * </pre>
+ * 掃描時遇到魔數為 0（段文件未寫入的部分）、長度越界或校驗和不符的記錄即停止讀取該段。
+ * <p>
+ * 關閉預寫（journal.enabled: false）時日誌只用於保存關閉伺服器時未能在期限內寫入數據庫的快照，
+ * 啟動時的恢復流程相同。
+ */
+public class SaveJournal {
+
+    private static final int SEGMENT_MAGIC = 0x524A5347;
+    private static final int RECORD_MAGIC = 0x524A5243;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final RPGInventory plugin;
+    private final ItemCodecRegistry itemCodecs;
+    // 刷盤、檢查點與預備日誌段在存儲線程池中以維護優先級執行
+    private final StorageExecutor storageExecutor;
+    private final File directory;
+    private final int segmentSize;
+    private final long fsyncIntervalMs;
+    // 是否在快照入隊時寫入日誌；為 false 時只在關閉時寫入未保存的快照
+    private final boolean writeAhead;
+
+    // 當前寫入的日誌段與預先創建的下一個日誌段，只在 appendLock 內訪問
+    private final Object appendLock = new Object();
+    private Segment active;
+    private volatile Segment spare;
+    private boolean preparingSpare;
+    private long nextSegmentId;
+    private long nextSeq = 1;
+    // 已寫滿的日誌段，按序號遞增排列
+    private final ConcurrentLinkedDeque<Segment> sealed = new ConcurrentLinkedDeque<>();
+    // 尚未被數據庫確認的記錄序號
+    private final ConcurrentSkipListSet<Long> outstanding = new ConcurrentSkipListSet<>();
+    private volatile boolean dirty;
+    private volatile boolean failed;
+    private ScheduledFuture<?> syncTask;
+
+    // 統計數據
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong appendNanos = new AtomicLong();
+    private final AtomicLong deletedSegmentCount = new AtomicLong();
+    private int recoveredCount;
+
+    private SaveJournal(RPGInventory plugin, ItemCodecRegistry itemCodecs, StorageExecutor storageExecutor, File directory,
+                        int segmentSize, long fsyncIntervalMs, boolean writeAhead) {
+        this.plugin = plugin;
+        this.writeAhead = writeAhead;
+        this.itemCodecs = itemCodecs;
+        this.storageExecutor = storageExecutor;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+    }
+
+    /**
+     * 按配置創建日誌
+     * @param plugin 插件實例
+     * @param databaseManager 數據庫管理器（用於共用物品編解碼器與存儲線程池）
+     * @return 日誌
+     */
+    public static SaveJournal create(RPGInventory plugin, DatabaseManager databaseManager) {
+        FileConfiguration config = plugin.getConfig();
+        ItemCodecRegistry itemCodecs = databaseManager.getItemCodecs();
+        int segmentSize = (int) Math.max(1, Math.min(256, config.getLong("database.journal.segment-size", 4))) * 1024 * 1024;
+        long fsyncIntervalMs = Math.max(0, config.getLong("database.journal.fsync-interval", 1000));
+        return new SaveJournal(plugin, itemCodecs, databaseManager.getStorageExecutor(), new File(new File(plugin.getDataFolder(), "database"), "journal"),
+                segmentSize, fsyncIntervalMs, config.getBoolean("database.journal.enabled", true));
+    }
+
+    /**
+     * 是否在快照入隊時寫入日誌
+     * @return 是否開啟預寫
+     */
+    public boolean isWriteAhead() {
+        return writeAhead;
+    }
+
+    /**
+     * 讀取現有的日誌段，返回每名玩家最新的未確認快照；開啟預寫時打開新的日誌段並啟動後台刷盤任務
+     * <p>
+     * 返回的快照仍視為未確認，調用方應把它們放回保存隊列，並在寫入後調用 {@link #release(long)}。
+     * @return 玩家UUID -> 恢復的記錄
+     */
+    public Map<UUID, Recovered> recover() {
+        Map<UUID, Recovered> latest = new HashMap<>();
+        if (!directory.exists() && !directory.mkdirs()) {
+            plugin.getLogger().severe("無法創建本地日誌目錄: " + directory.getAbsolutePath());
+            failed = true;
+            return latest;
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(segmentId(a), segmentId(b)));
+
+        long maxSeq = 0;
+        for (File file : files) {
+            long id = segmentId(file);
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            Segment segment;
+            try {
+                segment = Segment.map(file, 0);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "無法打開日誌段 " + file.getName() + ": " + e.getMessage(), e);
+                continue;
+            }
+            if (segment.buffer.capacity() < SEGMENT_HEADER_SIZE || segment.buffer.getInt(0) != SEGMENT_MAGIC) {
+                plugin.getLogger().warning("日誌段 " + file.getName() + " 的段頭無效，已跳過（文件保留）");
+                continue;
+            }
+            int corrupt = scan(segment, latest);
+            if (corrupt > 0) {
+                segment.corrupt = true;
+                plugin.getLogger().warning("日誌段 " + file.getName() + " 在偏移 " + segment.position +
+                        " 處有損壞或未完成的記錄，之後的 " + corrupt + " 字節已忽略（該段之後會改名為 .corrupt 保留）");
+            }
+            maxSeq = Math.max(maxSeq, segment.maxSeq);
+            segment.synced = true;
+            sealed.add(segment);
+        }
+        nextSeq = maxSeq + 1;
+
+        for (Recovered recovered : latest.values()) {
+            outstanding.add(recovered.seq);
+        }
+        recoveredCount = latest.size();
+        if (!latest.isEmpty()) {
+            plugin.getLogger().warning("已從本地日誌恢復 " + latest.size() + " 名玩家尚未寫入數據庫的物品欄數據");
+        }
+        checkpoint();
+        if (!writeAhead) {
+            return latest;
+        }
+
+        synchronized (appendLock) {
+            try {
+                active = newSegment(segmentSize);
+                prepareSpare();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "無法創建日誌段，本地日誌已停用: " + e.getMessage(), e);
+                failed = true;
+            }
+        }
+
+        long intervalMs = fsyncIntervalMs > 0 ? fsyncIntervalMs : 1000;
+        syncTask = storageExecutor.scheduleAtFixedRate(StorageExecutor.Priority.MAINTENANCE, this::sync, intervalMs, intervalMs);
+        plugin.getLogger().info("本地預寫日誌已啟動 (每段 " + segmentSize / 1024 / 1024 + " MB, " +
+                (fsyncIntervalMs > 0 ? "每 " + fsyncIntervalMs + " ms 刷盤" : "由系統刷盤") + ")");
+        return latest;
+    }
+
+    /**
+     * 讀取日誌段中的記錄，保留每名玩家序號最大的記錄
+     * @return 損壞記錄之後被忽略的字節數
+     */
+    private int scan(Segment segment, Map<UUID, Recovered> latest) {
+        ByteBuffer buffer = segment.buffer;
+        int position = SEGMENT_HEADER_SIZE;
+        CRC32C crc = new CRC32C();
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int magic = buffer.getInt(position);
+            if (magic == 0) {
+                break;
+            }
+            int length = buffer.getInt(position + 4);
+            if (magic != RECORD_MAGIC || length < 24 || length > buffer.capacity() - position - RECORD_HEADER_SIZE) {
+                segment.position = position;
+                return buffer.capacity() - position;
+            }
+            long seq = buffer.getLong(position + 8);
+            crc.reset();
+            crc.update(buffer.duplicate().position(position + 8).limit(position + 16));
+            crc.update(buffer.duplicate().position(position + RECORD_HEADER_SIZE).limit(position + RECORD_HEADER_SIZE + length));
+            if ((int) crc.getValue() != buffer.getInt(position + 16)) {
+                segment.position = position;
+                return buffer.capacity() - position;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(position + RECORD_HEADER_SIZE, payload);
+            segment.maxSeq = Math.max(segment.maxSeq, seq);
+            position += RECORD_HEADER_SIZE + length;
+
+            try {
+                PlayerLoadout loadout = decode(payload);
+                Recovered previous = latest.get(loadout.getPlayerUUID());
+                if (previous == null || previous.seq < seq) {
+                    latest.put(loadout.getPlayerUUID(), new Recovered(loadout, seq));
+                }
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().warning("無法解碼日誌記錄 #" + seq + ": " + e.getMessage());
+            }
+        }
+        segment.position = position;
+        return 0;
+    }
+
+    /**
+     * 追加一個快照
+     * @param loadout 玩家物品欄快照
+     * @return 記錄序號，日誌不可用或寫入失敗時為 0（快照仍會照常進入保存隊列）
+     */
+    public long append(PlayerLoadout loadout) {
+        if (failed) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        byte[] payload;
+        try {
+            payload = encode(loadout);
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "無法把玩家 " + loadout.getPlayerUUID() + " 的快照寫入本地日誌: " + e.getMessage(), e);
+            return 0;
+        }
+
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        long seq;
+        synchronized (appendLock) {
+            if (active == null) {
+                // 未開啟預寫時在第一次寫入（關閉時）才創建日誌段
+                try {
+                    active = newSegment(Math.max(segmentSize, SEGMENT_HEADER_SIZE + recordSize));
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "無法創建日誌段: " + e.getMessage(), e);
+                    return 0;
+                }
+            }
+            if (active.remaining() < recordSize) {
+                try {
+                    rotate(recordSize);
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "無法創建日誌段，本地日誌已停用: " + e.getMessage(), e);
+                    failed = true;
+                    return 0;
+                }
+            }
+
+            seq = nextSeq++;
+            // 先登記為未確認，再寫入段文件：檢查點只刪除已寫滿的段，不會刪除剛寫入的記錄
+            outstanding.add(seq);
+
+            CRC32C crc = new CRC32C();
+            crc.update(ByteBuffer.allocate(8).putLong(0, seq));
+            crc.update(payload);
+
+            MappedByteBuffer buffer = active.buffer;
+            int position = active.position;
+            buffer.putInt(position + 4, payload.length);
+            buffer.putLong(position + 8, seq);
+            buffer.putInt(position + 16, (int) crc.getValue());
+            buffer.put(position + RECORD_HEADER_SIZE, payload);
+            // 最後寫入魔數，掃描時不會讀到只寫了一半的記錄
+            buffer.putInt(position, RECORD_MAGIC);
+            active.position = position + recordSize;
+            active.maxSeq = seq;
+        }
+        dirty = true;
+        appendedCount.incrementAndGet();
+        appendNanos.addAndGet(System.nanoTime() - start);
+        return seq;
+    }
+
+    /**
+     * 釋放一條記錄：快照已寫入數據庫，或已被同一玩家更新的快照取代
+     * @param seq 記錄序號，0 會被忽略
+     */
+    public void release(long seq) {
+        if (seq > 0) {
+            outstanding.remove(seq);
+        }
+    }
+
+    /**
+     * 把當前日誌段換成預先創建的段，沒有可用的預備段（或記錄太大）時在當前線程創建
+     * @param recordSize 需要容納的記錄大小
+     */
+    private void rotate(int recordSize) throws IOException {
+        Segment next = spare;
+        spare = null;
+        if (next == null || next.remaining() < recordSize) {
+            if (next != null) {
+                next.delete();
+            }
+            next = newSegment(Math.max(segmentSize, SEGMENT_HEADER_SIZE + recordSize));
+        }
+        // 寫滿的段由後台任務刷盤
+        sealed.add(active);
+        active = next;
+        prepareSpare();
+    }
+
+    /**
+     * 在存儲線程池中預先創建下一個日誌段，避免換段時在調用線程創建文件；隊列已滿時換段時再在當前線程創建
+     */
+    private void prepareSpare() {
+        if (!writeAhead || preparingSpare || !plugin.isEnabled()) {
+            return;
+        }
+        preparingSpare = true;
+        long id = nextSegmentId++;
+        boolean submitted = storageExecutor.submit(StorageExecutor.Priority.MAINTENANCE, () -> {
+            try {
+                Segment segment = Segment.create(new File(directory, segmentName(id)), segmentSize);
+                synchronized (appendLock) {
+                    spare = segment;
+                    preparingSpare = false;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "無法預先創建日誌段: " + e.getMessage(), e);
+                synchronized (appendLock) {
+                    preparingSpare = false;
+                }
+            }
+        });
+        if (!submitted) {
+            preparingSpare = false;
+        }
+    }
+
+    private Segment newSegment(int size) throws IOException {
+        long id = nextSegmentId++;
+        return Segment.create(new File(directory, segmentName(id)), size);
+    }
+
+    /**
+     * 後台任務：把有新記錄的當前日誌段刷到磁盤，然後執行檢查點
+     */
+    private void sync() {
+        if (fsyncIntervalMs > 0) {
+            for (Segment segment : sealed) {
+                if (!segment.synced) {
+                    segment.buffer.force();
+                    segment.synced = true;
+                }
+            }
+        }
+        if (fsyncIntervalMs > 0 && dirty) {
+            dirty = false;
+            Segment current;
+            synchronized (appendLock) {
+                current = active;
+            }
+            if (current != null) {
+                current.buffer.force();
+            }
+        }
+        checkpoint();
+    }
+
+    /**
+     * 刪除所有記錄都已釋放的日誌段
+     */
+    private void checkpoint() {
+        Long floor = outstanding.isEmpty() ? null : outstanding.first();
+        Segment segment;
+        while ((segment = sealed.peekFirst()) != null) {
+            if (floor != null && segment.maxSeq >= floor) {
+                return;
+            }
+            if (!segment.delete()) {
+                // 文件仍被佔用（例如 Windows 上尚未解除映射），下次檢查點再試
+                return;
+            }
+            sealed.pollFirst();
+            deletedSegmentCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 停止後台任務；所有記錄都已確認時刪除全部日誌段，否則刷盤並保留，下次啟動時恢復
+     * @return 未確認的記錄數
+     */
+    public int close() {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+            syncTask = null;
+        }
+        int remaining = outstanding.size();
+        synchronized (appendLock) {
+            if (remaining == 0) {
+                sealed.forEach(Segment::delete);
+                sealed.clear();
+                if (active != null) {
+                    active.delete();
+                }
+            } else {
+                for (Segment segment : sealed) {
+                    if (!segment.synced) {
+                        segment.buffer.force();
+                    }
+                }
+                if (active != null) {
+                    active.buffer.force();
+                }
+                plugin.getLogger().warning("本地日誌中還有 " + remaining + " 條未寫入數據庫的記錄，將在下次啟動時恢復");
+            }
+            if (spare != null) {
+                spare.delete();
+                spare = null;
+            }
+            active = null;
+            failed = true;
+        }
+        return remaining;
+    }
+
+    private byte[] encode(PlayerLoadout loadout) throws IOException {
+        byte[] ornament = loadout.getOrnament() != null ? itemCodecs.encodeUncompressed(loadout.getOrnament()) : null;
+        List<byte[]> totems = new ArrayList<>(loadout.getTotems().size());
+        int size = 16 + 8 + 4 + (ornament != null ? ornament.length : 0) + 4;
+        for (ItemStack totem : loadout.getTotems().values()) {
+            byte[] data = itemCodecs.encodeUncompressed(totem);
+            totems.add(data);
+            size += 8 + data.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(loadout.getPlayerUUID().getMostSignificantBits());
+        buffer.putLong(loadout.getPlayerUUID().getLeastSignificantBits());
+        buffer.putLong(loadout.getVersion());
+        if (ornament != null) {
+            buffer.putInt(ornament.length).put(ornament);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putInt(totems.size());
+        int index = 0;
+        for (Integer slot : loadout.getTotems().keySet()) {
+            byte[] data = totems.get(index++);
+            buffer.putInt(slot).putInt(data.length).put(data);
+        }
+        return buffer.array();
+    }
+
+    private PlayerLoadout decode(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        UUID playerUUID = new UUID(buffer.getLong(), buffer.getLong());
+        long version = buffer.getLong();
+        ItemStack ornament = null;
+        int ornamentLength = buffer.getInt();
+        if (ornamentLength >= 0) {
+            byte[] data = new byte[ornamentLength];
+            buffer.get(data);
+            ornament = itemCodecs.decode(data);
+        }
+        int totemCount = buffer.getInt();
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        for (int i = 0; i < totemCount; i++) {
+            int slot = buffer.getInt();
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            totems.put(slot, itemCodecs.decode(data));
+        }
+        return new PlayerLoadout(playerUUID, ornament, totems, version);
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%016x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseUnsignedLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 生成日誌統計信息
+     * @return 統計文本
+     */
+    public String getStatusLine() {
+        if (!writeAhead) {
+            return "§e本地日誌: §f關閉 §7(只保存關閉時未能寫入的數據, 已恢復 " + recoveredCount + ")";
+        }
+        if (failed) {
+            return "§e本地日誌: §c已停用";
+        }
+        long appended = appendedCount.get();
+        return String.format("§e本地日誌: §f%d 段 §7| §e未確認: §f%d §7| §e已追加: §f%d §7(平均 %.1f µs) §7| §e已恢復: §f%d §7| §e已刪除段: §f%d",
+                sealed.size() + 1, outstanding.size(), appended,
+                appended == 0 ? 0.0 : appendNanos.get() / 1000.0 / appended, recoveredCount, deletedSegmentCount.get());
+    }
+
+    /**
+     * 從日誌中恢復的快照及其記錄序號
+     */
+    public static final class Recovered {
+        private final PlayerLoadout loadout;
+        private final long seq;
+
+        private Recovered(PlayerLoadout loadout, long seq) {
+            this.loadout = loadout;
+            this.seq = seq;
+        }
+
+        /**
+         * 獲取恢復的快照
+         * @return 快照
+         */
+        public PlayerLoadout getLoadout() {
+            return loadout;
+        }
+
+        /**
+         * 獲取記錄序號
+         * @return 序號
+         */
+        public long getSeq() {
+            return seq;
+        }
+    }
+
+    /**
+     * 內存映射的日誌段文件
+     */
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        // 下一條記錄的寫入位置與段內最大的記錄序號
+        private int position = SEGMENT_HEADER_SIZE;
+        private long maxSeq;
+        // 有損壞記錄的段在釋放後改名保留，便於排查
+        private boolean corrupt;
+        // 寫滿後是否已刷盤
+        private volatile boolean synced;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 創建新的日誌段並寫入段頭
+         */
+        private static Segment create(File file, int size) throws IOException {
+            Segment segment = map(file, size);
+            segment.buffer.putInt(4, FORMAT_VERSION);
+            segment.buffer.putLong(8, System.currentTimeMillis());
+            segment.buffer.putInt(0, SEGMENT_MAGIC);
+            return segment;
+        }
+
+        /**
+         * 映射日誌段文件，size 為 0 時按文件的現有大小映射
+         */
+        private static Segment map(File file, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                if (size > 0) {
+                    raf.setLength(size);
+                }
+                long length = Math.min(Integer.MAX_VALUE, channel.size());
+                // 映射在通道關閉後仍然有效
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+            }
+        }
+
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        private boolean delete() {
+            if (!file.exists()) {
+                return true;
+            }
+            return corrupt ? file.renameTo(new File(file.getPath() + ".corrupt")) : file.delete();
+        }
+    }
+}
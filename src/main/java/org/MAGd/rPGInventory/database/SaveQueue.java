@@ -0,0 +1,566 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * 寫後（write-behind）保存隊列
+ * <p>
+ * 同一玩家只保留最新的快照，由定時任務按批次寫入數據庫；
+ * 玩家退出等緊急保存會走快速通道，立即觸發一次寫入。
+ * 開啟組提交時，一次刷新會把隊列中所有玩家按 max-batch 分組，每組只使用一個事務。
+ * 所有寫入都由同一個刷新流程串行執行，避免同一玩家的舊快照覆蓋新快照。
+ * 寫入失敗的快照留在隊列中，按帶抖動的指數退避時間之後再重試，不會阻塞刷新線程。
+ * <p>
+ * 開啟本地日誌時，快照在入隊前先追加到 {@link SaveJournal}，寫入數據庫或被新快照取代後才從日誌釋放；
+ * 插件關閉時未能在期限內寫入的快照也保存到日誌。啟動時日誌中未釋放的快照會重新放入隊列，由刷新流程寫入數據庫。
+ * <p>
+ * 每次入隊返回一個 Future，在該快照（或取代它的更新快照）寫入數據庫時以 true 完成，
+ * 插件關閉時仍未寫入（已保存到本地日誌）時以 false 完成。
+ */
+public class SaveQueue {
+
+    private final RPGInventory plugin;
+    private final DatabaseManager databaseManager;
+
+    // 待保存的快照（玩家UUID -> 最新快照）
+    private final Map<UUID, PendingSave> pending = new ConcurrentHashMap<>();
+    // 快速通道中等待寫入的玩家
+    private final ConcurrentLinkedQueue<UUID> urgent = new ConcurrentLinkedQueue<>();
+    // 已從隊列取出、正在寫入的快照
+    private final Map<UUID, PlayerLoadout> inFlight = new ConcurrentHashMap<>();
+    // 每名玩家最近一次入隊的時間，用於判斷預取的數據是否已過期
+    private final Map<UUID, Long> lastEnqueued = new ConcurrentHashMap<>();
+    // 是否有刷新流程正在執行
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    private final long flushIntervalTicks;
+    private final int batchSize;
+    // 組提交設置
+    private final boolean groupCommit;
+    private final int maxGroupSize;
+    private final RetryBackoff backoff;
+    // 關閉時的並行寫入設置
+    private final int shutdownParallelism;
+    private final long shutdownDeadlineMs;
+    // 本地日誌：開啟預寫時保存所有入隊的快照，否則只保存關閉時未能寫入的快照
+    private final SaveJournal journal;
+    private ScheduledFuture<?> flushTask;
+    // 是否已有刷新任務在存儲線程池中排隊
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    // 統計數據
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong groupCommitCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private volatile long lastFlushDurationMs;
+    private volatile long lastFlushTime;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param databaseManager 數據庫管理器
+     */
+    public SaveQueue(RPGInventory plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        FileConfiguration config = plugin.getConfig();
+        this.batchSize = Math.max(1, config.getInt("database.save-queue.batch-size", 50));
+        this.groupCommit = config.getBoolean("database.save-queue.group-commit.enabled", true);
+        this.maxGroupSize = Math.max(1, config.getInt("database.save-queue.group-commit.max-batch", 100));
+        this.backoff = new RetryBackoff(config);
+        this.journal = SaveJournal.create(plugin, databaseManager);
+        this.shutdownParallelism = Math.max(1, config.getInt("database.shutdown.parallelism", 4));
+        this.shutdownDeadlineMs = Math.max(1, config.getLong("database.shutdown.deadline", 10)) * 1000L;
+        
+        if (groupCommit) {
+            // 組提交模式下刷新間隔即為最長等待時間（毫秒轉換為 tick）
+            long maxLatencyMs = Math.max(50, config.getLong("database.save-queue.group-commit.max-latency", 1000));
+            this.flushIntervalTicks = (maxLatencyMs + 49) / 50;
+        } else {
+            this.flushIntervalTicks = Math.max(1, config.getLong("database.save-queue.flush-interval", 20));
+        }
+    }
+
+    /**
+     * 從本地日誌恢復未寫入的快照，然後啟動定時刷新任務
+     */
+    public void start() {
+        if (flushTask != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (SaveJournal.Recovered recovered : journal.recover().values()) {
+            pending.put(recovered.getLoadout().getPlayerUUID(),
+                    new PendingSave(recovered.getLoadout(), now, 0, 0, recovered.getSeq(), new CompletableFuture<>()));
+        }
+        long intervalMs = flushIntervalTicks * 50;
+        flushTask = databaseManager.getStorageExecutor().scheduleAtFixedRate(StorageExecutor.Priority.SAVE, this::flush, intervalMs, intervalMs);
+        if (groupCommit) {
+            plugin.getLogger().info("寫後保存隊列已啟動 (組提交, 間隔 " + flushIntervalTicks + " tick, 每個事務最多 " + maxGroupSize + " 名玩家)");
+        } else {
+            plugin.getLogger().info("寫後保存隊列已啟動 (間隔 " + flushIntervalTicks + " tick, 每批 " + batchSize + " 名玩家)");
+        }
+    }
+
+    /**
+     * 將玩家快照加入隊列，同一玩家未寫入的舊快照會被覆蓋
+     * @param loadout 玩家物品欄快照
+     * @param urgentSave 是否走快速通道（例如玩家退出）
+     * @return 是否已寫入數據庫；插件關閉前未能寫入（已保存到本地日誌）時為 false
+     */
+    public CompletableFuture<Boolean> enqueue(PlayerLoadout loadout, boolean urgentSave) {
+        UUID playerUUID = loadout.getPlayerUUID();
+        long now = System.currentTimeMillis();
+        enqueuedCount.incrementAndGet();
+        lastEnqueued.put(playerUUID, now);
+        // 先寫入本地日誌，數據庫不可用或伺服器崩潰時快照不會丟失
+        long journalSeq = journal.isWriteAhead() ? journal.append(loadout) : 0;
+
+        CompletableFuture<Boolean> completion = new CompletableFuture<>();
+        pending.merge(playerUUID, new PendingSave(loadout, now, 0, 0, journalSeq, completion), (previous, latest) -> {
+            coalescedCount.incrementAndGet();
+            // 舊快照已被取代，不再需要保留在日誌中，隨新快照一起完成
+            releaseJournal(previous.journalSeq);
+            latest.completion.thenAccept(previous.completion::complete);
+            // 保留最早的入隊時間（用於計算寫入延遲）以及重試狀態
+            return new PendingSave(latest.loadout, previous.queuedAt, previous.attempts, previous.retryAt, latest.journalSeq, latest.completion);
+        });
+
+        if (urgentSave) {
+            urgent.add(playerUUID);
+            if (plugin.isEnabled()) {
+                requestFlush();
+            }
+        } else if (groupCommit && pending.size() >= maxGroupSize && !flushing.get() && plugin.isEnabled()) {
+            // 已湊滿一組，不必等到最長等待時間
+            requestFlush();
+        }
+        return completion;
+    }
+
+    /**
+     * 在存儲線程池中安排一次刷新，已有刷新在排隊時不重複提交
+     * <p>
+     * 線程池隊列已滿時放棄本次提交，快照仍在隊列中，由下一次定時刷新寫入。
+     */
+    private void requestFlush() {
+        if (!flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = databaseManager.getStorageExecutor().submit(StorageExecutor.Priority.SAVE, () -> {
+            flushRequested.set(false);
+            flush();
+        });
+        if (!submitted) {
+            flushRequested.set(false);
+        }
+    }
+
+    /**
+     * 獲取玩家尚未寫入數據庫的最新快照（排隊中或正在寫入）
+     * @param playerUUID 玩家UUID
+     * @return 快照，沒有時為 null
+     */
+    public PlayerLoadout getUnsavedSnapshot(UUID playerUUID) {
+        // 先查隊列再查寫入中：快照總是先放入寫入中再從隊列移除
+        PendingSave save = pending.get(playerUUID);
+        if (save != null) {
+            return save.loadout;
+        }
+        return inFlight.get(playerUUID);
+    }
+    
+    /**
+     * 獲取玩家最近一次入隊的時間
+     * @param playerUUID 玩家UUID
+     * @return 時間戳，最近沒有入隊時為 0
+     */
+    public long getLastEnqueueTime(UUID playerUUID) {
+        return lastEnqueued.getOrDefault(playerUUID, 0L);
+    }
+
+    /**
+     * 執行一次刷新：先處理快速通道，再處理普通保存
+     * <p>
+     * 普通模式下每次最多寫入 batch-size 名玩家，每名玩家一個事務；
+     * 組提交模式下寫入隊列中的所有玩家，每 max-batch 名玩家一個事務。
+     */
+    public void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            // 另一個刷新流程正在執行，它會處理新加入的快照
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int processed = 0;
+        try {
+            processed = drain(groupCommit ? pending.size() : batchSize, false);
+            pruneEnqueueTimes();
+        } finally {
+            flushing.set(false);
+            if (processed > 0) {
+                lastFlushDurationMs = System.currentTimeMillis() - start;
+                lastFlushTime = System.currentTimeMillis();
+            }
+        }
+
+        // 釋放鎖之後才加入的緊急保存需要再跑一次
+        if (!urgent.isEmpty() && plugin.isEnabled()) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * 插件關閉時寫入所有待保存的快照
+     * <p>
+     * 快照按 max-batch 分組，由多個線程並行寫入（不超過數據庫允許同時執行寫入事務的連接數）；
+     * 超過 shutdown.deadline 仍未確認寫入的快照保存到本地日誌，下次啟動時再寫入數據庫。
+     * @return 成功寫入的玩家數
+     */
+    public int flushAll() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = start + shutdownDeadlineMs;
+        // 等待正在執行的刷新流程結束，超過期限時不再等待，直接保存到本地日誌
+        boolean acquired;
+        while (!(acquired = flushing.compareAndSet(false, true)) && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+
+        // 關閉前最後一次寫入不受斷路器與退避限制
+        databaseManager.resetCircuitBreaker();
+        int maxConcurrency = databaseManager.getMaxWriteConcurrency();
+
+        long savedBefore = savedCount.get();
+        long saved = 0;
+        try {
+            urgent.clear();
+            List<List<PendingSave>> groups = new ArrayList<>();
+            List<PendingSave> group = new ArrayList<>();
+            for (UUID playerUUID : new ArrayList<>(pending.keySet())) {
+                if (take(playerUUID, group, true) && group.size() >= maxGroupSize) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                }
+            }
+            if (!group.isEmpty()) {
+                groups.add(group);
+            }
+            List<List<PendingSave>> unfinished = groups;
+            if (acquired && !groups.isEmpty()) {
+                int threads = Math.max(1, Math.min(groups.size(), Math.min(shutdownParallelism, maxConcurrency)));
+                unfinished = writeBeforeDeadline(groups, threads, deadline);
+                saved = savedCount.get() - savedBefore;
+                plugin.getLogger().info("關閉時在 " + (System.currentTimeMillis() - start) + " ms 內寫入了 " + saved + " 名玩家的物品欄數據 (" +
+                        groups.size() + " 組, " + threads + " 個線程)");
+            }
+            spill(unfinished);
+        } finally {
+            if (acquired) {
+                flushing.set(false);
+            }
+            journal.close();
+        }
+        return (int) saved;
+    }
+
+    /**
+     * 由多個線程並行寫入各組快照，到期限時停止等待
+     * @param groups 待寫入的組
+     * @param threads 線程數
+     * @param deadline 期限（時間戳）
+     * @return 期限前未完成的組
+     */
+    private List<List<PendingSave>> writeBeforeDeadline(List<List<PendingSave>> groups, int threads, long deadline) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "RPGInventory-ShutdownFlush-" + threadIndex.incrementAndGet());
+            // 超過期限仍在寫入的線程不阻止伺服器退出
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Set<Integer> finished = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < groups.size(); i++) {
+            int index = i;
+            executor.execute(() -> {
+                if (System.currentTimeMillis() < deadline) {
+                    write(groups.get(index));
+                    finished.add(index);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning("關閉時的寫入超過了 " + shutdownDeadlineMs + " ms 的期限");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+
+        List<List<PendingSave>> unfinished = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            if (!finished.contains(i)) {
+                unfinished.add(groups.get(i));
+            }
+        }
+        return unfinished;
+    }
+
+    /**
+     * 把未能寫入數據庫的快照保存到本地日誌，下次啟動時恢復
+     * @param unfinished 期限前未完成的組（仍在寫入的組也視為未寫入，重複寫入同一快照沒有副作用）
+     */
+    private void spill(List<List<PendingSave>> unfinished) {
+        Map<UUID, PendingSave> unsaved = new HashMap<>();
+        for (List<PendingSave> group : unfinished) {
+            for (PendingSave save : group) {
+                unsaved.put(save.loadout.getPlayerUUID(), save);
+            }
+        }
+        // 寫入失敗的快照已被放回隊列
+        unsaved.putAll(pending);
+        // 其他仍在寫入的快照（例如超過期限仍未結束的刷新流程）
+        for (Map.Entry<UUID, PlayerLoadout> entry : inFlight.entrySet()) {
+            unsaved.putIfAbsent(entry.getKey(), new PendingSave(entry.getValue(), 0, 0, 0, 0, new CompletableFuture<>()));
+        }
+        if (unsaved.isEmpty()) {
+            return;
+        }
+
+        int lost = 0;
+        for (PendingSave save : unsaved.values()) {
+            // 開啟預寫時快照已在日誌中
+            if (save.journalSeq == 0 && journal.append(save.loadout) == 0) {
+                lost++;
+            }
+            save.completion.complete(false);
+        }
+        plugin.getLogger().severe("關閉時有 " + unsaved.size() + " 名玩家的物品欄數據未能寫入數據庫" +
+                (lost == 0 ? "，已保存到本地日誌，下次啟動時寫入" : "，其中 " + lost + " 名玩家的數據無法保存到本地日誌，已丟失"));
+    }
+
+    /**
+     * 按組寫入快照：每組先取快速通道中的玩家，再取普通隊列中的玩家
+     * @param normalBudget 本次最多處理的普通保存數
+     * @param ignoreBackoff 是否忽略重試等待時間
+     * @return 處理的玩家數
+     */
+    private int drain(int normalBudget, boolean ignoreBackoff) {
+        int groupSize = groupCommit ? maxGroupSize : 1;
+        int processed = 0;
+
+        while (true) {
+            List<PendingSave> group = new ArrayList<>();
+            UUID playerUUID;
+            // 快速通道（例如玩家退出）不等待退避時間
+            while (group.size() < groupSize && (playerUUID = urgent.poll()) != null) {
+                take(playerUUID, group, true);
+            }
+
+            Iterator<UUID> iterator = pending.keySet().iterator();
+            while (group.size() < groupSize && normalBudget > 0 && iterator.hasNext()) {
+                if (take(iterator.next(), group, ignoreBackoff)) {
+                    normalBudget--;
+                }
+            }
+
+            if (group.isEmpty()) {
+                return processed;
+            }
+            write(group);
+            processed += group.size();
+        }
+    }
+
+    /**
+     * 從隊列中取出指定玩家的快照，並記錄為寫入中
+     * @param playerUUID 玩家UUID
+     * @param group 當前組
+     * @param ignoreBackoff 是否忽略重試等待時間
+     * @return 是否取到快照
+     */
+    private boolean take(UUID playerUUID, List<PendingSave> group, boolean ignoreBackoff) {
+        PendingSave[] taken = new PendingSave[1];
+        long now = System.currentTimeMillis();
+        pending.computeIfPresent(playerUUID, (uuid, save) -> {
+            if (!ignoreBackoff && save.retryAt > now) {
+                // 仍在等待重試
+                return save;
+            }
+            inFlight.put(uuid, save.loadout);
+            taken[0] = save;
+            return null;
+        });
+        if (taken[0] == null) {
+            return false;
+        }
+        group.add(taken[0]);
+        return true;
+    }
+    
+    /**
+     * 清理超過 10 分鐘的入隊時間記錄
+     */
+    private void pruneEnqueueTimes() {
+        long cutoff = System.currentTimeMillis() - 600_000L;
+        lastEnqueued.values().removeIf(time -> time < cutoff);
+    }
+
+    /**
+     * 在一個事務中寫入一組快照，失敗的快照放回隊列
+     * @param group 待寫入的快照
+     */
+    private void write(List<PendingSave> group) {
+        List<PlayerLoadout> loadouts = new ArrayList<>(group.size());
+        for (PendingSave save : group) {
+            loadouts.add(save.loadout);
+        }
+
+        Set<UUID> saved;
+        try {
+            saved = databaseManager.saveInventories(loadouts);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "寫入 " + group.size() + " 名玩家的物品欄數據時發生錯誤: " + e.getMessage(), e);
+            saved = Collections.emptySet();
+        }
+
+        for (PendingSave save : group) {
+            UUID playerUUID = save.loadout.getPlayerUUID();
+            if (saved.contains(playerUUID)) {
+                savedCount.incrementAndGet();
+                releaseJournal(save.journalSeq);
+                save.completion.complete(true);
+            } else {
+                failedCount.incrementAndGet();
+                retryCount.incrementAndGet();
+                // 寫入失敗時放回隊列等待退避時間後重試，若期間已有更新的快照則以新快照為準
+                int attempts = save.attempts + 1;
+                long retryAt = System.currentTimeMillis() + backoff.delayMs(attempts);
+                pending.merge(playerUUID, new PendingSave(save.loadout, save.queuedAt, attempts, retryAt, save.journalSeq, save.completion),
+                        (latest, failed) -> {
+                            releaseJournal(failed.journalSeq);
+                            latest.completion.thenAccept(failed.completion::complete);
+                            return new PendingSave(latest.loadout, failed.queuedAt, failed.attempts, failed.retryAt, latest.journalSeq, latest.completion);
+                        });
+            }
+            inFlight.remove(playerUUID, save.loadout);
+        }
+        if (group.size() > 1) {
+            groupCommitCount.incrementAndGet();
+        }
+    }
+
+    private void releaseJournal(long journalSeq) {
+        journal.release(journalSeq);
+    }
+
+    /**
+     * 獲取隊列深度
+     * @return 等待寫入的玩家數
+     */
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * 獲取寫入延遲，即最舊的未寫入快照已等待的時間
+     * @return 延遲（毫秒），隊列為空時為 0
+     */
+    public long getFlushLagMs() {
+        long oldest = Long.MAX_VALUE;
+        for (PendingSave save : pending.values()) {
+            oldest = Math.min(oldest, save.queuedAt);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * 獲取正在等待重試的玩家數
+     * @return 玩家數
+     */
+    public int getBackoffCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (PendingSave save : pending.values()) {
+            if (save.retryAt > now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 生成隊列統計信息
+     * @return 多行統計文本
+     */
+    public List<String> getStatsLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e隊列深度: §f" + getQueueDepth() + " §7(快速通道 " + urgent.size() + ")");
+        lines.add("§e寫入延遲: §f" + getFlushLagMs() + " ms");
+        lines.add("§e上次刷新耗時: §f" + lastFlushDurationMs + " ms" +
+                (lastFlushTime > 0 ? " §7(" + (System.currentTimeMillis() - lastFlushTime) / 1000 + " 秒前)" : ""));
+        lines.add("§e已入隊: §f" + enqueuedCount.get() + " §7| §e已合併: §f" + coalescedCount.get() +
+                " §7| §e已寫入: §f" + savedCount.get() + " §7| §e失敗: §f" + failedCount.get());
+        lines.add("§e重試: §f" + retryCount.get() + " 次 §7(等待重試 " + getBackoffCount() + " 名玩家)");
+        lines.add("§e組提交: §f" + (groupCommit ? "開啟 §7(每個事務最多 " + maxGroupSize + " 名玩家, 已提交 " + groupCommitCount.get() + " 組)" : "關閉"));
+        lines.add(journal.getStatusLine());
+        return lines;
+    }
+
+    /**
+     * 待保存的快照、首次入隊時間、重試狀態、在本地日誌中的記錄序號以及入隊時返回的 Future
+     */
+    private static final class PendingSave {
+        private final PlayerLoadout loadout;
+        private final long queuedAt;
+        // 已失敗的次數與下次允許重試的時間
+        private final int attempts;
+        private final long retryAt;
+        // 本地日誌記錄序號，沒有寫入日誌時為 0
+        private final long journalSeq;
+        private final CompletableFuture<Boolean> completion;
+
+        private PendingSave(PlayerLoadout loadout, long queuedAt, int attempts, long retryAt, long journalSeq,
+                            CompletableFuture<Boolean> completion) {
+            this.loadout = loadout;
+            this.queuedAt = queuedAt;
+            this.attempts = attempts;
+            this.retryAt = retryAt;
+            this.journalSeq = journalSeq;
+            this.completion = completion;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.MAGd.rPGInventory.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 一個編號的數據庫結構遷移
+ * <p>
+ * 啟動遷移在初始化時按編號順序同步執行，必須是冪等的（舊版插件創建的數據庫可能已經包含部分變更）；
+ * 後台遷移用於大表的數據轉換，在伺服器運行期間分批執行。已發佈的編號不能更改或重複使用。
+ */
+public final class SchemaMigration {
+
+    /**
+     * 啟動時執行的遷移步驟
+     */
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * 執行遷移
+         * @param conn 數據庫連接
+         * @throws SQLException SQL異常
+         */
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private final int version;
+    private final String description;
+    private final Step step;
+    private final BackgroundMigration background;
+
+    private SchemaMigration(int version, String description, Step step, BackgroundMigration background) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+        this.background = background;
+    }
+
+    /**
+     * 創建啟動時執行的遷移
+     * @param version 編號
+     * @param description 描述
+     * @param step 遷移步驟
+     * @return 遷移
+     */
+    public static SchemaMigration startup(int version, String description, Step step) {
+        return new SchemaMigration(version, description, step, null);
+    }
+
+    /**
+     * 創建在後台分批執行的遷移
+     * @param version 編號
+     * @param description 描述
+     * @param migration 分批遷移
+     * @return 遷移
+     */
+    public static SchemaMigration background(int version, String description, BackgroundMigration migration) {
+        return new SchemaMigration(version, description, null, migration);
+    }
+
+    /**
+     * 獲取編號
+     * @return 編號
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 獲取描述
+     * @return 描述
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 是否在後台分批執行
+     * @return 是否為後台遷移
+     */
+    public boolean isBackground() {
+        return background != null;
+    }
+
+    /**
+     * 獲取啟動遷移步驟
+     * @return 遷移步驟，後台遷移為 null
+     */
+    public Step getStep() {
+        return step;
+    }
+
+    /**
+     * 獲取後台遷移
+     * @return 分批遷移，啟動遷移為 null
+     */
+    public BackgroundMigration getBackground() {
+        return background;
+    }
+}
@@ -0,0 +1,294 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * 按編號執行數據庫結構遷移，並在 schema_version 表中記錄已應用的遷移
+ * <p>
+ * 啟動遷移在初始化時按順序同步執行；後台遷移在存儲線程池中以維護優先級分批執行，
+ * 每批之間按設定間隔休息，檢查點與數據在同一個事務中保存，重啟後從中斷處繼續。
+ * 尚未完成的後台遷移不影響正常讀寫（讀取路徑同時支持遷移前後的數據）。
+ */
+public class SchemaMigrator {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    private final RPGInventory plugin;
+    private final AbstractDatabaseManager manager;
+    private final List<SchemaMigration> migrations;
+    private final int chunkSize;
+    private final long intervalTicks;
+
+    // 已記錄的遷移狀態（編號 -> 狀態）
+    private final Map<Integer, State> states = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> task;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param manager 數據庫管理器
+     * @param migrations 按編號排序的遷移
+     */
+    public SchemaMigrator(RPGInventory plugin, AbstractDatabaseManager manager, List<SchemaMigration> migrations) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.migrations = migrations;
+
+        // 兼容舊版的 blob-migration 設置
+        FileConfiguration config = plugin.getConfig();
+        this.chunkSize = Math.max(1, config.getInt("database.migration.chunk-size",
+                config.getInt("database.blob-migration.chunk-size", 500)));
+        this.intervalTicks = Math.max(1, config.getLong("database.migration.interval",
+                config.getLong("database.blob-migration.interval", 20)));
+    }
+
+    /**
+     * 創建 schema_version 表並按順序執行尚未應用的啟動遷移
+     * @param conn 數據庫連接
+     * @throws SQLException SQL異常，之後的遷移不會執行
+     */
+    public void migrate(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "applied_at BIGINT NULL, " +
+                    "checkpoint BLOB NULL" +
+                    ")"
+            );
+        }
+        loadStates(conn);
+
+        for (SchemaMigration migration : migrations) {
+            if (migration.isBackground() || isApplied(migration)) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            migration.getStep().apply(conn);
+            record(conn, migration, System.currentTimeMillis(), null);
+            long elapsed = System.currentTimeMillis() - start;
+            if (elapsed > 1000) {
+                plugin.getLogger().info("已執行數據庫遷移 #" + migration.getVersion() + " " + migration.getDescription() + "（耗時 " + elapsed + " 毫秒）");
+            }
+        }
+    }
+
+    /**
+     * 讀取已記錄的遷移狀態
+     */
+    private void loadStates(Connection conn) throws SQLException {
+        states.clear();
+        try (Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version, applied_at, checkpoint FROM schema_version")) {
+            while (resultSet.next()) {
+                long appliedAt = resultSet.getLong("applied_at");
+                boolean applied = !resultSet.wasNull();
+                states.put(resultSet.getInt("version"), new State(applied ? appliedAt : 0L, resultSet.getBytes("checkpoint")));
+            }
+        }
+    }
+
+    /**
+     * 記錄遷移狀態（在調用方的事務中執行）
+     * @param conn 數據庫連接
+     * @param migration 遷移
+     * @param appliedAt 完成時間，未完成時為 0
+     * @param checkpoint 後台遷移的檢查點
+     */
+    private void record(Connection conn, SchemaMigration migration, long appliedAt, byte[] checkpoint) throws SQLException {
+        int updated;
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE schema_version SET applied_at = ?, checkpoint = ? WHERE version = ?")) {
+            bind(update, appliedAt, checkpoint);
+            update.setInt(3, migration.getVersion());
+            updated = update.executeUpdate();
+        }
+        if (updated == 0) {
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO schema_version (applied_at, checkpoint, version, description) VALUES (?, ?, ?, ?)")) {
+                bind(insert, appliedAt, checkpoint);
+                insert.setInt(3, migration.getVersion());
+                insert.setString(4, migration.getDescription());
+                insert.executeUpdate();
+            }
+        }
+        states.put(migration.getVersion(), new State(appliedAt, checkpoint));
+    }
+
+    private static void bind(PreparedStatement statement, long appliedAt, byte[] checkpoint) throws SQLException {
+        if (appliedAt > 0) {
+            statement.setLong(1, appliedAt);
+        } else {
+            statement.setNull(1, Types.BIGINT);
+        }
+        if (checkpoint != null) {
+            statement.setBytes(2, checkpoint);
+        } else {
+            statement.setNull(2, Types.BLOB);
+        }
+    }
+
+    private boolean isApplied(SchemaMigration migration) {
+        State state = states.get(migration.getVersion());
+        return state != null && state.appliedAt > 0;
+    }
+
+    /**
+     * 啟動後台遷移任務（延遲 5 秒，避開啟動高峰）；沒有待執行的後台遷移時不啟動
+     */
+    public void startBackground() {
+        if (nextBackground() == null) {
+            return;
+        }
+        task = manager.getStorageExecutor().scheduleAtFixedRate(StorageExecutor.Priority.MAINTENANCE,
+                this::runChunk, 5000L, intervalTicks * 50);
+    }
+
+    /**
+     * 停止後台遷移任務，未完成的部分會在下次啟動時從檢查點繼續
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private SchemaMigration nextBackground() {
+        for (SchemaMigration migration : migrations) {
+            if (migration.isBackground() && !isApplied(migration) && !migration.getBackground().isDeferred()) {
+                return migration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 執行下一個後台遷移的一批數據
+     */
+    private void runChunk() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        SchemaMigration migration = nextBackground();
+        try {
+            if (migration == null) {
+                stop();
+                return;
+            }
+            State state = states.get(migration.getVersion());
+            try (Connection conn = manager.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    byte[] checkpoint = migration.getBackground().runChunk(conn, state != null ? state.checkpoint : null, chunkSize);
+                    record(conn, migration, checkpoint == null ? System.currentTimeMillis() : 0L, checkpoint);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    // 回滾後內存中的狀態恢復為上一個檢查點
+                    if (state != null) {
+                        states.put(migration.getVersion(), state);
+                    } else {
+                        states.remove(migration.getVersion());
+                    }
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            if (isApplied(migration)) {
+                plugin.getLogger().info("數據庫後台遷移 #" + migration.getVersion() + " " + migration.getDescription() +
+                        " 已完成 " + migration.getBackground().getProgress());
+            }
+        } catch (SQLException e) {
+            // 下一個週期會從上一個檢查點重試
+            plugin.getLogger().log(Level.WARNING, "數據庫後台遷移 #" + migration.getVersion() + " 失敗，稍後重試: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 獲取最高的連續已應用編號
+     * @return 結構版本
+     */
+    public int getCurrentVersion() {
+        int current = 0;
+        for (SchemaMigration migration : migrations) {
+            if (!isApplied(migration)) {
+                break;
+            }
+            current = migration.getVersion();
+        }
+        return current;
+    }
+
+    /**
+     * 生成遷移概要
+     * @return 統計文本
+     */
+    public String getStatusLine() {
+        int latest = migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+        SchemaMigration pending = nextBackground();
+        return "§e數據庫結構: §f版本 " + getCurrentVersion() + "/" + latest +
+                (pending == null ? "" : " §7| §e後台遷移 #" + pending.getVersion() + ": §f" + pending.getBackground().getProgress());
+    }
+
+    /**
+     * 生成每個遷移的狀態
+     * @return 多行狀態文本
+     */
+    public List<String> getStatusLines() {
+        List<String> lines = new ArrayList<>();
+        SchemaMigration pending = nextBackground();
+        for (SchemaMigration migration : migrations) {
+            State state = states.get(migration.getVersion());
+            String status;
+            if (state != null && state.appliedAt > 0) {
+                status = "§a已應用 §7(" + TIME_FORMAT.format(Instant.ofEpochMilli(state.appliedAt)) + ")";
+            } else if (migration.isBackground() && migration.getBackground().isDeferred()) {
+                status = "§7已推遲";
+            } else if (migration == pending) {
+                status = (task != null ? "§e進行中 " : "§c已暫停 ") + "§7" + migration.getBackground().getProgress() +
+                        " (每 " + intervalTicks + " tick 處理 " + chunkSize + " 行)";
+            } else {
+                status = "§7等待中";
+            }
+            lines.add("§e#" + migration.getVersion() + " " + migration.getDescription() + (migration.isBackground() ? " §7[後台]" : "") + ": " + status);
+        }
+        return lines;
+    }
+
+    /**
+     * schema_version 表中的一行
+     */
+    private static final class State {
+        private final long appliedAt;
+        private final byte[] checkpoint;
+
+        private State(long appliedAt, byte[] checkpoint) {
+            this.appliedAt = appliedAt;
+            this.checkpoint = checkpoint;
+        }
+    }
+}
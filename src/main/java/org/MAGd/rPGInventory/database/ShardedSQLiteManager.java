@@ -0,0 +1,407 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分片 SQLite 數據庫管理器
+ * <p>
+ * 玩家按 UUID 的哈希分配到固定數量的數據庫文件中，每個分片都是一個獨立的 {@link SQLiteManager}
+ * （各自的寫入連接、讀取連接池、結構遷移與存在過濾器），不同分片的寫入可以並行執行。
+ * 所有分片共用一個存儲線程池；涉及多個分片的批量操作由分片線程並行執行後合併結果。
+ * <p>
+ * 分片數一旦確定就不能更改，否則玩家會被分配到另一個分片而讀不到原有數據。
+ */
+public class ShardedSQLiteManager implements DatabaseManager {
+
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)\\.db");
+
+    private final RPGInventory plugin;
+    private final File shardFolder;
+    private final StorageExecutor storageExecutor;
+    private final List<SQLiteManager> shards;
+    // 寫後保存隊列，設置後異步保存經過隊列與本地日誌；隊列寫入的是整個分片存儲，不設置到各個分片
+    private volatile SaveQueue saveQueue;
+    // 並行執行跨分片操作的線程池，每個分片一個線程
+    private ExecutorService fanOutExecutor;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     */
+    public ShardedSQLiteManager(RPGInventory plugin) {
+        this(plugin, new File(new File(plugin.getDataFolder(), "database"), "shards"));
+    }
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param shardFolder 分片數據庫文件所在的目錄
+     */
+    public ShardedSQLiteManager(RPGInventory plugin, File shardFolder) {
+        this.plugin = plugin;
+        this.shardFolder = shardFolder;
+        this.storageExecutor = new StorageExecutor(plugin);
+
+        int shardCount = Math.max(1, Math.min(64, plugin.getConfig().getInt("database.sharded.shards", 4)));
+        SQLiteSettings settings = SQLiteSettings.fromConfig(plugin.getConfig());
+        List<SQLiteManager> managers = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            managers.add(new SQLiteManager(plugin, new File(shardFolder, "shard-" + i + ".db"), settings,
+                    storageExecutor, "RPGInventoryShard" + i));
+        }
+        this.shards = Collections.unmodifiableList(managers);
+    }
+
+    @Override
+    public boolean initialize() {
+        if (!shardFolder.exists()) {
+            shardFolder.mkdirs();
+        }
+        if (!checkShardFiles()) {
+            return false;
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        fanOutExecutor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "RPGInventory-Shard-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 各分片的建表與結構遷移互不影響，並行執行
+        List<Boolean> results = forEachShard(SQLiteManager::initialize);
+        if (results.size() < shards.size() || results.contains(Boolean.FALSE)) {
+            plugin.getLogger().severe("部分 SQLite 分片初始化失敗，已關閉所有分片");
+            close();
+            return false;
+        }
+
+        plugin.getLogger().info("分片 SQLite 數據庫初始化成功！" + shards.size() + " 個分片 (" + shardFolder.getPath() + ")");
+        return true;
+    }
+
+    /**
+     * 檢查現有的分片文件是否與設置的分片數一致
+     * @return 是否一致（沒有任何分片文件時視為一致）
+     */
+    private boolean checkShardFiles() {
+        File[] files = shardFolder.listFiles();
+        Set<Integer> existing = new TreeSet<>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SHARD_FILE.matcher(file.getName());
+                if (matcher.matches()) {
+                    existing.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        if (existing.isEmpty()) {
+            return true;
+        }
+
+        Set<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < shards.size(); i++) {
+            expected.add(i);
+        }
+        if (existing.equals(expected)) {
+            return true;
+        }
+        plugin.getLogger().severe("現有的分片數據庫文件 " + existing + " 與 database.sharded.shards 設置的 " + shards.size() +
+                " 個分片不一致；更改分片數會使玩家被分配到其他分片而讀不到原有數據，請恢復原來的分片數");
+        return false;
+    }
+
+    /**
+     * 獲取玩家所在的分片
+     * @param playerUUID 玩家UUID
+     * @return 分片
+     */
+    public SQLiteManager getShard(UUID playerUUID) {
+        long bits = playerUUID.getMostSignificantBits() ^ playerUUID.getLeastSignificantBits();
+        return shards.get(Math.floorMod(Long.hashCode(bits), shards.size()));
+    }
+
+    /**
+     * 獲取所有分片
+     * @return 按編號排序的分片
+     */
+    public List<SQLiteManager> getShards() {
+        return shards;
+    }
+
+    /**
+     * 在所有分片上並行執行操作（掃描、導出等跨分片操作）
+     * @param action 對單個分片執行的操作
+     * @param <T> 結果類型
+     * @return 各分片的結果，按分片順序排列；執行失敗的分片不會出現在結果中
+     */
+    public <T> List<T> forEachShard(Function<SQLiteManager, T> action) {
+        Map<SQLiteManager, Void> work = new LinkedHashMap<>();
+        for (SQLiteManager shard : shards) {
+            work.put(shard, null);
+        }
+        return fanOut(work, (shard, ignored) -> action.apply(shard));
+    }
+
+    /**
+     * 按分片拆分玩家
+     */
+    private <V> Map<SQLiteManager, List<V>> partition(Collection<V> values, Function<V, UUID> key) {
+        Map<SQLiteManager, List<V>> parts = new LinkedHashMap<>();
+        for (V value : values) {
+            parts.computeIfAbsent(getShard(key.apply(value)), shard -> new ArrayList<>()).add(value);
+        }
+        return parts;
+    }
+
+    /**
+     * 在分片線程中並行執行各分片的工作；只涉及一個分片時直接在當前線程執行
+     * @param work 分片 -> 該分片的工作
+     * @param action 執行工作的操作
+     * @return 各分片的結果；拋出異常的分片不會出現在結果中
+     */
+    private <K, T> List<T> fanOut(Map<SQLiteManager, K> work, BiFunction<SQLiteManager, K, T> action) {
+        List<T> results = new ArrayList<>(work.size());
+        if (work.size() == 1 || fanOutExecutor == null) {
+            for (Map.Entry<SQLiteManager, K> entry : work.entrySet()) {
+                try {
+                    results.add(action.apply(entry.getKey(), entry.getValue()));
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.SEVERE, "分片 " + describe(entry.getKey()) + " 執行失敗: " + e.getMessage(), e);
+                }
+            }
+            return results;
+        }
+
+        Map<SQLiteManager, Future<T>> futures = new LinkedHashMap<>();
+        for (Map.Entry<SQLiteManager, K> entry : work.entrySet()) {
+            Callable<T> task = () -> action.apply(entry.getKey(), entry.getValue());
+            try {
+                futures.put(entry.getKey(), fanOutExecutor.submit(task));
+            } catch (RejectedExecutionException e) {
+                // 已關閉：在當前線程執行
+                CompletableFuture<T> inline = new CompletableFuture<>();
+                try {
+                    inline.complete(task.call());
+                } catch (Exception ex) {
+                    inline.completeExceptionally(ex);
+                }
+                futures.put(entry.getKey(), inline);
+            }
+        }
+        for (Map.Entry<SQLiteManager, Future<T>> entry : futures.entrySet()) {
+            try {
+                results.add(entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                plugin.getLogger().warning("等待分片 " + describe(entry.getKey()) + " 時被中斷");
+            } catch (ExecutionException e) {
+                plugin.getLogger().log(Level.SEVERE, "分片 " + describe(entry.getKey()) + " 執行失敗: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private String describe(SQLiteManager shard) {
+        return shard.getDatabaseFile().getName();
+    }
+
+    @Override
+    public void close() {
+        // 先等待已入隊的數據庫操作完成，再關閉各分片的連接池
+        storageExecutor.shutdown(5000);
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdown();
+            try {
+                fanOutExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SQLiteManager shard : shards) {
+            shard.close();
+        }
+    }
+
+    @Override
+    public boolean saveInventory(UUID playerUUID, ItemStack ornament, Map<Integer, ItemStack> totems) {
+        return getShard(playerUUID).saveInventory(playerUUID, ornament, totems);
+    }
+
+    @Override
+    public Set<UUID> saveInventories(Collection<PlayerLoadout> loadouts) {
+        // 每個分片各自一個事務；寫入失敗的分片中的玩家不會出現在結果中，由保存隊列重試
+        Set<UUID> saved = new HashSet<>();
+        for (Set<UUID> part : fanOut(partition(loadouts, PlayerLoadout::getPlayerUUID), SQLiteManager::saveInventories)) {
+            saved.addAll(part);
+        }
+        return saved;
+    }
+
+    @Override
+    public ItemStack loadOrnament(UUID playerUUID) {
+        return getShard(playerUUID).loadOrnament(playerUUID);
+    }
+
+    @Override
+    public Map<Integer, ItemStack> loadTotems(UUID playerUUID) {
+        return getShard(playerUUID).loadTotems(playerUUID);
+    }
+
+    @Override
+    public PlayerLoadout loadProfile(UUID playerUUID) {
+        return getShard(playerUUID).loadProfile(playerUUID);
+    }
+
+    @Override
+    public Map<UUID, PlayerLoadout> loadProfiles(Collection<UUID> playerUUIDs) {
+        Map<UUID, PlayerLoadout> profiles = new HashMap<>();
+        for (Map<UUID, PlayerLoadout> part : fanOut(partition(playerUUIDs, uuid -> uuid), SQLiteManager::loadProfiles)) {
+            profiles.putAll(part);
+        }
+        return profiles;
+    }
+
+    @Override
+    public boolean deleteInventory(UUID playerUUID) {
+        return getShard(playerUUID).deleteInventory(playerUUID);
+    }
+
+    @Override
+    public CompletableFuture<PlayerLoadout> loadProfileAsync(UUID playerUUID) {
+        return getShard(playerUUID).loadProfileAsync(playerUUID);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> saveAsync(PlayerLoadout loadout) {
+        SaveQueue queue = saveQueue;
+        if (queue != null) {
+            return queue.enqueue(loadout, true);
+        }
+        return getShard(loadout.getPlayerUUID()).saveAsync(loadout);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(UUID playerUUID) {
+        return getShard(playerUUID).deleteAsync(playerUUID);
+    }
+
+    @Override
+    public void setSaveQueue(SaveQueue saveQueue) {
+        this.saveQueue = saveQueue;
+    }
+
+    @Override
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
+    }
+
+    @Override
+    public boolean hasData(UUID playerUUID) {
+        return getShard(playerUUID).hasData(playerUUID);
+    }
+
+    @Override
+    public boolean forEachPlayer(Consumer<UUID> consumer) {
+        // 逐個分片遍歷，調用方按順序接收
+        for (SQLiteManager shard : shards) {
+            if (!shard.forEachPlayer(consumer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getMaxWriteConcurrency() {
+        // 每個分片一個寫入連接，各分片可以同時寫入
+        int total = 0;
+        for (SQLiteManager shard : shards) {
+            total += shard.getMaxWriteConcurrency();
+        }
+        return total;
+    }
+
+    @Override
+    public void resetCircuitBreaker() {
+        for (SQLiteManager shard : shards) {
+            shard.resetCircuitBreaker();
+        }
+    }
+
+    @Override
+    public ItemCodecRegistry getItemCodecs() {
+        // 各分片的編解碼器設置相同，字典保存在各分片的數據庫中
+        return shards.get(0).getItemCodecs();
+    }
+
+    @Override
+    public List<String> getStatsLines() {
+        return collectShardLines(SQLiteManager::getStatsLines);
+    }
+
+    @Override
+    public List<String> getPoolStatsLines() {
+        List<String> lines = new ArrayList<>();
+        for (SQLiteManager shard : shards) {
+            lines.addAll(shard.getPoolStatsLines());
+        }
+        return lines;
+    }
+
+    @Override
+    public List<String> getMigrationStatusLines() {
+        return collectShardLines(SQLiteManager::getMigrationStatusLines);
+    }
+
+    @Override
+    public List<String> trainDictionaries(int sampleLimit) {
+        // 每個分片各自訓練字典（字典保存在各分片的數據庫中）
+        return collectShardLines(shard -> shard.trainDictionaries(sampleLimit));
+    }
+
+    /**
+     * 依次收集各分片的多行文本，有多個分片時每個分片前加上分片編號
+     * @param lines 單個分片的文本
+     * @return 合併後的文本
+     */
+    private List<String> collectShardLines(Function<SQLiteManager, List<String>> lines) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.size() > 1) {
+                result.add("§6--- 分片 " + i + " ---");
+            }
+            result.addAll(lines.apply(shards.get(i)));
+        }
+        return result;
+    }
+}
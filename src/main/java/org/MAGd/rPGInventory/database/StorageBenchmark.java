@@ -0,0 +1,314 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 存儲後端吞吐量基準測試
+ * <p>
+ * 在臨時數據庫上同時運行多個保存線程（模擬自動保存高峰）與加載線程，比較不同 SQLite 設置、分片 SQLite、
+ * 日誌結構存儲與 H2（MySQL 模式，代表 MySQL 代碼路徑）每秒完成的操作數。所有後端使用相同的合成玩家，
+ * 各線程按固定種子生成相同的操作序列；啟動測試寫入大量玩家後重新打開存儲，比較批量寫入速度與啟動時間。
+ * 由命令在存儲線程池中以維護優先級執行，結果以聊天文本返回；測試結束後刪除臨時文件。
+ * 當前環境中無法運行的後端（例如 H2 驅動不在運行時 classpath 上）在結果中標為不可用，而不是直接省略。
+ */
+public class StorageBenchmark {
+
+    private static final int PLAYER_COUNT = 500;
+    private static final int TOTEM_SLOTS = 5;
+    private static final int WRITER_THREADS = 4;
+    private static final int READER_THREADS = 4;
+    // 啟動測試中每個事務寫入的玩家數
+    private static final int STARTUP_BATCH = 1000;
+    // 合成玩家與操作序列的隨機種子
+    private static final long SEED = 0x5250474956L;
+
+    private final RPGInventory plugin;
+    private final List<ItemStack> samples;
+    private final int seconds;
+
+    /**
+     * 構造函數
+     * @param plugin 插件實例
+     * @param samples 測試用物品（調用方應傳入副本）
+     * @param seconds 每種設置的測試時間（秒）
+     */
+    public StorageBenchmark(RPGInventory plugin, List<ItemStack> samples, int seconds) {
+        this.plugin = plugin;
+        this.samples = samples;
+        this.seconds = seconds;
+    }
+
+    /**
+     * 執行基準測試
+     * @return 多行結果文本
+     */
+    public List<String> run() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e玩家: §f" + PLAYER_COUNT + " §7| §e保存線程: §f" + WRITER_THREADS + " §7| §e加載線程: §f" +
+                READER_THREADS + " §7| §e每項: §f" + seconds + " 秒");
+
+        // 所有後端使用相同的玩家
+        Random random = new Random(SEED);
+        List<UUID> players = new ArrayList<>(PLAYER_COUNT);
+        for (int i = 0; i < PLAYER_COUNT; i++) {
+            players.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+
+        File folder = new File(plugin.getDataFolder(), "database");
+        List<SQLiteSettings> profiles = new ArrayList<>();
+        profiles.add(SQLiteSettings.legacy());
+        SQLiteSettings configured = SQLiteSettings.fromConfig(plugin.getConfig());
+        if (configured.isTuned()) {
+            profiles.add(configured);
+        }
+        for (SQLiteSettings settings : profiles) {
+            File file = new File(folder, "benchmark-" + settings.getName() + ".db");
+            lines.add(measure(settings.getName(), players, () -> new SQLiteManager(plugin, file, settings), () -> deleteFiles(file)));
+        }
+
+        File shardFolder = new File(folder, "benchmark-shards");
+        lines.add(measure("sqlite-sharded", players, () -> new ShardedSQLiteManager(plugin, shardFolder), () -> deleteDirectory(shardFolder)));
+
+        File directory = new File(folder, "benchmark-logstore");
+        lines.add(measure("logstore", players, () -> new LogStoreManager(plugin, directory), () -> deleteDirectory(directory)));
+
+        // H2 只用於測試，默認不打包進插件
+        if (H2Manager.isDriverAvailable(plugin)) {
+            lines.add(measure("h2 (mysql)", players, () -> new H2Manager(plugin, "rpginventory_benchmark"), () -> { }));
+        } else {
+            lines.add(unavailable("h2 (mysql)", "找不到 H2 JDBC 驅動（不在運行時 classpath 上，也不在 " +
+                    new File(plugin.getDataFolder(), "lib").getPath() + " 目錄中）"));
+        }
+        return lines;
+    }
+
+    /**
+     * 執行啟動測試：分批寫入指定數量的玩家，關閉後重新打開存儲並計時
+     * <p>
+     * SQLite 的啟動時間不包括在後台構建的存在過濾器。
+     * @param players 玩家數
+     * @return 多行結果文本
+     */
+    public List<String> runStartup(int players) {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e玩家: §f" + players + " §7| §e每個事務: §f" + STARTUP_BATCH + " 名玩家");
+
+        SQLiteSettings settings = SQLiteSettings.fromConfig(plugin.getConfig());
+        File file = new File(new File(plugin.getDataFolder(), "database"), "benchmark-startup.db");
+        deleteFiles(file);
+        try {
+            lines.add(measureStartup("sqlite " + settings.getName(), players, file,
+                    () -> new SQLiteManager(plugin, file, settings)));
+        } finally {
+            deleteFiles(file);
+        }
+
+        File directory = new File(new File(plugin.getDataFolder(), "database"), "benchmark-startup-logstore");
+        deleteDirectory(directory);
+        try {
+            lines.add(measureStartup("logstore", players, directory, () -> new LogStoreManager(plugin, directory)));
+        } finally {
+            deleteDirectory(directory);
+        }
+        return lines;
+    }
+
+    private String measureStartup(String name, int players, File location, Supplier<DatabaseManager> factory) {
+        List<UUID> sampled = new ArrayList<>();
+        DatabaseManager manager = factory.get();
+        long writeNanos;
+        long saved = 0;
+        try {
+            if (!manager.initialize()) {
+                return "§e" + name + ": §c無法創建測試存儲";
+            }
+            List<PlayerLoadout> batch = new ArrayList<>(STARTUP_BATCH);
+            long start = System.nanoTime();
+            for (int i = 0; i < players; i++) {
+                UUID playerUUID = UUID.randomUUID();
+                if (i % Math.max(1, players / 100) == 0) {
+                    sampled.add(playerUUID);
+                }
+                batch.add(loadout(playerUUID, i));
+                if (batch.size() >= STARTUP_BATCH || i == players - 1) {
+                    saved += manager.saveInventories(batch).size();
+                    batch.clear();
+                }
+            }
+            writeNanos = System.nanoTime() - start;
+        } finally {
+            manager.close();
+        }
+
+        long openStart = System.nanoTime();
+        DatabaseManager reopened = factory.get();
+        try {
+            if (!reopened.initialize()) {
+                return "§e" + name + ": §c無法重新打開測試存儲";
+            }
+            long openMillis = (System.nanoTime() - openStart) / 1_000_000;
+            int found = 0;
+            for (UUID playerUUID : sampled) {
+                PlayerLoadout loadout = reopened.loadProfile(playerUUID);
+                if (loadout != null && !loadout.isEmpty()) {
+                    found++;
+                }
+            }
+            return String.format("§e%s: §f寫入 %.0f 名玩家/秒 (%d/%d) §7| §f重新打開 %d ms §7| §f抽查 %d/%d §7| §f磁盤 %d MB",
+                    name, saved / (writeNanos / 1_000_000_000.0), saved, players, openMillis, found, sampled.size(),
+                    sizeOf(location) / 1024 / 1024);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * 在新建的存儲上測試吞吐量，測試前後調用清理操作刪除臨時文件
+     */
+    private String measure(String name, List<UUID> players, Supplier<DatabaseManager> factory, Runnable cleanup) {
+        cleanup.run();
+        DatabaseManager manager;
+        try {
+            manager = factory.get();
+        } catch (RuntimeException | LinkageError e) {
+            // 後端依賴的類不在運行時 classpath 上
+            return unavailable(name, e.toString());
+        }
+        try {
+            if (!manager.initialize()) {
+                return "§e" + name + ": §c無法創建測試存儲，詳情請查看日誌";
+            }
+            return measure(manager, name, players);
+        } catch (LinkageError e) {
+            return unavailable(name, e.toString());
+        } finally {
+            manager.close();
+            cleanup.run();
+        }
+    }
+
+    private static String unavailable(String name, String reason) {
+        return "§e" + name + ": §c不可用，未測試 §7(" + reason + ")";
+    }
+
+    private String measure(DatabaseManager manager, String name, List<UUID> players) {
+        List<PlayerLoadout> initial = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            initial.add(loadout(players.get(i), i));
+        }
+        manager.saveInventories(initial);
+
+        AtomicLong saves = new AtomicLong();
+        AtomicLong failedSaves = new AtomicLong();
+        AtomicLong loads = new AtomicLong();
+        AtomicLong failedLoads = new AtomicLong();
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < WRITER_THREADS; i++) {
+            Random random = new Random(SEED + i);
+            threads.add(new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    // 每批保存 10 名玩家，模擬保存隊列的組提交
+                    Map<UUID, PlayerLoadout> batch = new HashMap<>();
+                    while (batch.size() < 10) {
+                        UUID playerUUID = players.get(random.nextInt(players.size()));
+                        batch.put(playerUUID, loadout(playerUUID, random.nextInt()));
+                    }
+                    int saved = manager.saveInventories(batch.values()).size();
+                    saves.addAndGet(saved);
+                    failedSaves.addAndGet(batch.size() - saved);
+                }
+            }, "RPGInventory-Benchmark-Writer-" + i));
+        }
+        for (int i = 0; i < READER_THREADS; i++) {
+            Random random = new Random(SEED + WRITER_THREADS + i);
+            threads.add(new Thread(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    if (manager.loadProfile(players.get(random.nextInt(players.size()))) != null) {
+                        loads.incrementAndGet();
+                    } else {
+                        failedLoads.incrementAndGet();
+                    }
+                }
+            }, "RPGInventory-Benchmark-Reader-" + i));
+        }
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        return String.format("§e%s: §f保存 %.0f 次/秒 §7| §f加載 %.0f 次/秒 §7| §f失敗 %d/%d",
+                name, saves.get() / elapsed, loads.get() / elapsed, failedSaves.get(), failedLoads.get());
+    }
+
+    /**
+     * 生成測試用的物品欄，數量隨變體變化，確保每次保存都有實際寫入
+     */
+    private PlayerLoadout loadout(UUID playerUUID, int variant) {
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        for (int slot = 0; slot < TOTEM_SLOTS; slot++) {
+            ItemStack item = samples.get(Math.floorMod(variant + slot, samples.size())).clone();
+            item.setAmount(1 + Math.floorMod(variant + slot, 64));
+            totems.put(slot, item);
+        }
+        ItemStack ornament = samples.get(Math.floorMod(variant, samples.size())).clone();
+        return new PlayerLoadout(playerUUID, ornament, totems);
+    }
+
+    private static long sizeOf(File location) {
+        if (location.isDirectory()) {
+            long size = 0;
+            File[] children = location.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    size += sizeOf(child);
+                }
+            }
+            return size;
+        }
+        long size = 0;
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            size += new File(location.getPath() + suffix).length();
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void deleteFiles(File file) {
+        for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+            File target = new File(file.getPath() + suffix);
+            if (target.exists()) {
+                target.delete();
+            }
+        }
+    }
+}
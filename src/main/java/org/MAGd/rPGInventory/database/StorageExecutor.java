@@ -0,0 +1,399 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * 存儲層專用的線程池
+ * <p>
+ * 數據庫操作不再使用 Bukkit 與其他插件共用、沒有上限的異步調度器，而是進入按優先級劃分的有界隊列，
+ * 由固定數量的工作線程按「加載 → 保存 → 維護」的順序取出執行。隊列已滿時提交失敗（背壓），
+ * 由調用方決定稍後重試或放棄；保存隊列中的數據不會因此丟失，只是延遲到下一次刷新。
+ * <p>
+ * 在 Java 21 以上可以設置使用虛擬線程，阻塞的 JDBC 調用不再佔用平台線程。
+ * 延遲與定時任務由一個輕量的調度線程在到期時提交到對應的隊列。
+ */
+public class StorageExecutor {
+
+    /**
+     * 任務優先級，數值越小越先執行
+     */
+    public enum Priority {
+        /** 玩家登入與打開界面時的加載 */
+        LOAD("加載"),
+        /** 保存隊列的刷新 */
+        SAVE("保存"),
+        /** 遷移、回收、過濾器構建等後台任務 */
+        MAINTENANCE("維護");
+
+        private final String displayName;
+
+        Priority(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private final RPGInventory plugin;
+    private final int threadCount;
+    private final boolean virtualThreads;
+    private final List<ArrayBlockingQueue<Task>> queues;
+    // 每個已入隊的任務對應一個許可，工作線程取得許可後按優先級取出任務
+    private final Semaphore available = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile ScheduledExecutorService timer;
+    private volatile boolean shutdown;
+
+    // 統計數據
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong[] submittedCounts;
+    private final AtomicLong[] rejectedCounts;
+    private final AtomicLong[] waitNanos;
+    private final AtomicLong[] completedCounts;
+    private final AtomicInteger[] maxDepths;
+
+    /**
+     * 構造函數，工作線程在第一次提交任務時才啟動
+     * @param plugin 插件實例
+     */
+    public StorageExecutor(RPGInventory plugin) {
+        this.plugin = plugin;
+        FileConfiguration config = plugin.getConfig();
+        this.threadCount = Math.max(1, config.getInt("database.executor.threads", 4));
+        this.virtualThreads = config.getBoolean("database.executor.virtual-threads", false) && virtualThreadFactory("test") != null;
+
+        Priority[] priorities = Priority.values();
+        this.queues = new ArrayList<>(priorities.length);
+        this.submittedCounts = new AtomicLong[priorities.length];
+        this.rejectedCounts = new AtomicLong[priorities.length];
+        this.waitNanos = new AtomicLong[priorities.length];
+        this.completedCounts = new AtomicLong[priorities.length];
+        this.maxDepths = new AtomicInteger[priorities.length];
+        for (Priority priority : priorities) {
+            int index = priority.ordinal();
+            String key = "database.executor.queue-capacity." + priority.name().toLowerCase();
+            int defaultCapacity = priority == Priority.MAINTENANCE ? 100 : 1000;
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, config.getInt(key, defaultCapacity))));
+            submittedCounts[index] = new AtomicLong();
+            rejectedCounts[index] = new AtomicLong();
+            waitNanos[index] = new AtomicLong();
+            completedCounts[index] = new AtomicLong();
+            maxDepths[index] = new AtomicInteger();
+        }
+
+        if (config.getBoolean("database.executor.virtual-threads", false) && !virtualThreads) {
+            plugin.getLogger().warning("當前 Java 版本不支持虛擬線程（需要 Java 21），存儲線程池改用平台線程");
+        }
+    }
+
+    /**
+     * 啟動工作線程與調度線程
+     */
+    private synchronized void start() {
+        if (timer != null || shutdown) {
+            return;
+        }
+        ThreadFactory factory = virtualThreads ? virtualThreadFactory("RPGInventory-Storage-") : null;
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker;
+            if (factory != null) {
+                worker = factory.newThread(this::work);
+            } else {
+                worker = new Thread(this::work, "RPGInventory-Storage-" + i);
+                worker.setDaemon(true);
+            }
+            workers.add(worker);
+            worker.start();
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RPGInventory-Storage-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        plugin.getLogger().info("存儲線程池已啟動 (" + threadCount + " 個" + (virtualThreads ? "虛擬" : "平台") + "線程)");
+    }
+
+    /**
+     * 提交任務
+     * @param priority 優先級
+     * @param task 任務
+     * @return 是否已入隊；隊列已滿或線程池已關閉時返回 false
+     */
+    public boolean submit(Priority priority, Runnable task) {
+        if (shutdown) {
+            return false;
+        }
+        if (timer == null) {
+            start();
+        }
+        int index = priority.ordinal();
+        if (!queues.get(index).offer(new Task(task, System.nanoTime()))) {
+            rejectedCounts[index].incrementAndGet();
+            return false;
+        }
+        submittedCounts[index].incrementAndGet();
+        maxDepths[index].accumulateAndGet(queues.get(index).size(), Math::max);
+        available.release();
+        return true;
+    }
+
+    /**
+     * 提交有返回值的任務
+     * <p>
+     * 返回的 Future 在任務開始執行前被取消或超時（例如 {@link CompletableFuture#orTimeout}），任務會直接跳過，不再佔用數據庫連接。
+     * @param priority 優先級
+     * @param operation 在工作線程中執行的操作
+     * @param <T> 結果類型
+     * @return 操作結果；隊列已滿或線程池已關閉時以 {@link RejectedExecutionException} 異常完成
+     */
+    public <T> CompletableFuture<T> supply(Priority priority, Supplier<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean submitted = submit(priority, () -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(operation.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        if (!submitted) {
+            future.completeExceptionally(new RejectedExecutionException(shutdown ? "存儲線程池已關閉" : "存儲線程池" + priority.displayName + "隊列已滿"));
+        }
+        return future;
+    }
+
+    /**
+     * 在主線程執行回調的 Executor，配合 {@code thenAcceptAsync} 等方法把結果帶回主線程
+     * <p>
+     * 已在主線程時直接執行；插件已禁用時丟棄回調。
+     * @return 主線程 Executor
+     */
+    public Executor mainThread() {
+        return runnable -> {
+            if (Bukkit.isPrimaryThread()) {
+                runnable.run();
+            } else if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, runnable);
+            }
+        };
+    }
+
+    /**
+     * 延遲一段時間後提交任務，到期時隊列已滿則調用 onRejected
+     * @param priority 優先級
+     * @param task 任務
+     * @param delayMs 延遲（毫秒）
+     * @param onRejected 提交失敗時在調度線程中執行的回調，可為 null
+     */
+    public void schedule(Priority priority, Runnable task, long delayMs, Runnable onRejected) {
+        if (shutdown) {
+            if (onRejected != null) {
+                onRejected.run();
+            }
+            return;
+        }
+        if (timer == null) {
+            start();
+        }
+        try {
+            timer.schedule(() -> {
+                if (!submit(priority, task) && onRejected != null) {
+                    onRejected.run();
+                }
+            }, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 線程池已在此期間關閉
+            if (onRejected != null) {
+                onRejected.run();
+            }
+        }
+    }
+
+    /**
+     * 按固定間隔提交任務；隊列已滿時跳過該次執行
+     * @param priority 優先級
+     * @param task 任務
+     * @param initialDelayMs 首次延遲（毫秒）
+     * @param periodMs 間隔（毫秒）
+     * @return 可用於取消的句柄，線程池已關閉時為 null
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Priority priority, Runnable task, long initialDelayMs, long periodMs) {
+        if (shutdown) {
+            return null;
+        }
+        if (timer == null) {
+            start();
+        }
+        try {
+            return timer.scheduleAtFixedRate(() -> submit(priority, task), initialDelayMs, Math.max(1, periodMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 工作線程：每取得一個許可，按優先級取出一個任務執行
+     */
+    private void work() {
+        while (true) {
+            try {
+                available.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Priority priority : Priority.values()) {
+                int index = priority.ordinal();
+                Task task = queues.get(index).poll();
+                if (task == null) {
+                    continue;
+                }
+                waitNanos[index].addAndGet(System.nanoTime() - task.queuedAt);
+                activeCount.incrementAndGet();
+                try {
+                    task.runnable.run();
+                } catch (Throwable e) {
+                    plugin.getLogger().log(Level.SEVERE, "存儲任務執行失敗: " + e.getMessage(), e);
+                } finally {
+                    activeCount.decrementAndGet();
+                    completedCounts[index].incrementAndGet();
+                }
+                break;
+            }
+            if (shutdown && isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        for (ArrayBlockingQueue<Task> queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 停止接受新任務，等待已入隊的任務執行完畢
+     * @param timeoutMs 最長等待時間（毫秒）
+     */
+    public synchronized void shutdown(long timeoutMs) {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (timer == null) {
+            return;
+        }
+        timer.shutdownNow();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        // 喚醒空閒的工作線程，讓它們在隊列清空後退出
+        available.release(workers.size());
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int abandoned = 0;
+        for (ArrayBlockingQueue<Task> queue : queues) {
+            abandoned += queue.size();
+            queue.clear();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        if (abandoned > 0) {
+            plugin.getLogger().warning("存儲線程池關閉時放棄了 " + abandoned + " 個未執行的任務");
+        }
+    }
+
+    /**
+     * 獲取指定優先級的排隊任務數
+     * @param priority 優先級
+     * @return 任務數
+     */
+    public int getQueueDepth(Priority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    /**
+     * 獲取指定優先級被拒絕的任務數
+     * @param priority 優先級
+     * @return 任務數
+     */
+    public long getRejectedCount(Priority priority) {
+        return rejectedCounts[priority.ordinal()].get();
+    }
+
+    /**
+     * 生成線程池統計信息
+     * @return 多行統計文本
+     */
+    public List<String> getStatsLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§e存儲線程池: §f" + threadCount + " 個" + (virtualThreads ? "虛擬" : "平台") + "線程 §7| §e執行中: §f" + activeCount.get());
+        for (Priority priority : Priority.values()) {
+            int index = priority.ordinal();
+            long completed = completedCounts[index].get();
+            lines.add(String.format("§e  %s: §f排隊 %d/%d §7(最多 %d) §7| §e已完成: §f%d §7| §e已拒絕: §f%d §7| §e平均等待: §f%.1f ms",
+                    priority.displayName, queues.get(index).size(), queues.get(index).size() + queues.get(index).remainingCapacity(),
+                    maxDepths[index].get(), completed, rejectedCounts[index].get(),
+                    completed == 0 ? 0.0 : waitNanos[index].get() / 1_000_000.0 / completed));
+        }
+        return lines;
+    }
+
+    /**
+     * 通過反射創建虛擬線程工廠（編譯目標為 Java 17）
+     * @param prefix 線程名前綴
+     * @return 線程工廠，不支持虛擬線程時為 null
+     */
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 已入隊的任務及入隊時間
+     */
+    private static final class Task {
+        private final Runnable runnable;
+        private final long queuedAt;
+
+        private Task(Runnable runnable, long queuedAt) {
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
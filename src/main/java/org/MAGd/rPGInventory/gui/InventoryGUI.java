@@ -1,6 +1,7 @@
 package org.MAGd.rPGInventory.gui;
 
 import org.MAGd.rPGInventory.RPGInventory;
+import org.MAGd.rPGInventory.database.PlayerLoadout;
 import org.MAGd.rPGInventory.utils.ItemBuilder;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -11,6 +12,7 @@ import org.bukkit.inventory.ItemStack;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 // 導入 Oraxen API 相關類別
 // import io.th0rgal.oraxen.OraxenItems; // 舊的錯誤導入
@@ -65,14 +67,91 @@ public class InventoryGUI {
     // 存儲已打開的物品欄
     private static final Map<UUID, Inventory> openInventories = new HashMap<>();
     
+    // 每個玩家各槽位最後一次變更時的版本（槽位 -> 版本）
+    private static final Map<UUID, Map<Integer, Long>> slotVersions = new ConcurrentHashMap<>();
+    // 每個玩家物品欄的當前版本，任何槽位變更都會遞增（以時間為基準，見 PlayerLoadout.nextVersion）
+    private static final Map<UUID, Long> loadoutVersions = new ConcurrentHashMap<>();
+    // 已交給保存隊列（或剛從數據庫加載）的版本
+    private static final Map<UUID, Long> savedVersions = new ConcurrentHashMap<>();
+    
     /**
      * 清除所有已打開的物品欄緩存
      */
     public static void clearOpenInventories() {
         openInventories.clear();
+        slotVersions.clear();
+        loadoutVersions.clear();
+        savedVersions.clear();
         // 可選：RPGInventory.getInstance().getLogger().info("[RPGInventory] InventoryGUI cache cleared.");
     }
     
+    /**
+     * 記錄槽位發生了變更，遞增玩家物品欄版本
+     * @param uuid 玩家 UUID
+     * @param slot 發生變更的槽位
+     * @return 變更後的物品欄版本
+     */
+    public static long markSlotChanged(UUID uuid, int slot) {
+        long version = loadoutVersions.compute(uuid, (key, previous) -> PlayerLoadout.nextVersion(previous == null ? 0L : previous));
+        slotVersions.computeIfAbsent(uuid, key -> new ConcurrentHashMap<>()).put(slot, version);
+        return version;
+    }
+    
+    /**
+     * 獲取槽位最後一次變更時的版本
+     * @param uuid 玩家 UUID
+     * @param slot 槽位
+     * @return 版本，從未變更過時為 0
+     */
+    public static long getSlotVersion(UUID uuid, int slot) {
+        Map<Integer, Long> versions = slotVersions.get(uuid);
+        return versions == null ? 0L : versions.getOrDefault(slot, 0L);
+    }
+    
+    /**
+     * 獲取玩家物品欄的當前版本
+     * @param uuid 玩家 UUID
+     * @return 版本
+     */
+    public static long getLoadoutVersion(UUID uuid) {
+        return loadoutVersions.getOrDefault(uuid, 0L);
+    }
+    
+    /**
+     * 檢查玩家物品欄自上次保存後是否有變更
+     * @param uuid 玩家 UUID
+     * @return 是否需要保存
+     */
+    public static boolean isDirty(UUID uuid) {
+        return getLoadoutVersion(uuid) > getSavedVersion(uuid);
+    }
+    
+    /**
+     * 獲取最後一次交給保存隊列（或剛從數據庫加載）的版本
+     * @param uuid 玩家 UUID
+     * @return 版本，沒有時為 0
+     */
+    public static long getSavedVersion(UUID uuid) {
+        return savedVersions.getOrDefault(uuid, 0L);
+    }
+    
+    /**
+     * 標記指定版本已保存
+     * @param uuid 玩家 UUID
+     * @param version 已保存的版本
+     */
+    public static void markSaved(UUID uuid, long version) {
+        savedVersions.merge(uuid, version, Math::max);
+    }
+    
+    /**
+     * 將玩家物品欄的當前版本標記為已保存（例如剛從數據庫加載）
+     * @param uuid 玩家 UUID
+     */
+    public static void markClean(UUID uuid) {
+        markSaved(uuid, getLoadoutVersion(uuid));
+    }
+    
     /**
      * 打開 RPG 物品欄
      * @param player 玩家
@@ -93,8 +172,9 @@ public class InventoryGUI {
             // 設置基本框架 (會使用Oraxen物品如果配置了)
             setupInventoryBase(inventory);
             
-            // 保存物品欄
+            // 保存物品欄（新建的空物品欄無需保存）
             openInventories.put(playerUUID, inventory);
+            markClean(playerUUID);
             
             // 告知使用者我們正在初始化圖騰效果
             player.sendMessage("§a[RPGInventory] §e正在初始化圖騰效果...");
@@ -259,6 +339,7 @@ public class InventoryGUI {
         } else {
             inventory.setItem(ORNAMENT_SLOT, item);
         }
+        markSlotChanged(uuid, ORNAMENT_SLOT);
     }
     
     /**
@@ -396,6 +477,7 @@ public class InventoryGUI {
         } else {
             inventory.setItem(slotId, item);
         }
+        markSlotChanged(uuid, slotId);
         
         return true;
     }
@@ -476,6 +558,8 @@ public class InventoryGUI {
      */
     public static void addOpenInventory(UUID uuid, Inventory inventory) {
         openInventories.put(uuid, inventory);
+        // 加載得到的物品欄與數據庫一致，視為已保存
+        markClean(uuid);
     }
     
     /**
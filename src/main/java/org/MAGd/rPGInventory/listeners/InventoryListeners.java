@@ -148,6 +148,7 @@ public class InventoryListeners implements Listener {
                     }
 
                     event.getInventory().setItem(slot, itemToPlaceInSlot);
+                    InventoryGUI.markSlotChanged(player.getUniqueId(), slot);
 
                     final ItemStack finalItemForCursor;
                     if (originalItemInSlot != null) { // 如果是替換，原槽位物品上游標
@@ -187,6 +188,8 @@ public class InventoryListeners implements Listener {
                             InventoryGUI.setOrnamentItem(player.getUniqueId(), null); // 放回飾品占位符
                             player.sendMessage("§e飾品已取出，槽位已重置。");
                         }
+                        // 默認的取出操作已改變槽位內容
+                        InventoryGUI.markSlotChanged(player.getUniqueId(), slot);
                         plugin.savePlayerInventory(player);
                         // 暫時註解，你需要後續實現 plugin.getOrnamentEffectListener().updateOrnamentEffects(player);
                         // plugin.getOrnamentEffectListener().updateOrnamentEffects(player);
@@ -259,6 +262,7 @@ public class InventoryListeners implements Listener {
                     }
 
                     event.getInventory().setItem(slot, itemToPlaceInSlot);
+                    InventoryGUI.markSlotChanged(player.getUniqueId(), slot);
 
                     final ItemStack finalItemForCursor;
                     if (originalItemInSlot != null) { // 如果是替換，原槽位物品上游標
@@ -300,6 +304,8 @@ public class InventoryListeners implements Listener {
                             InventoryGUI.setTotemItem(player.getUniqueId(), slot, null); // 放回圖騰占位符
                             player.sendMessage("§a[圖騰] §e圖騰已取出，槽位已重置");
                         }
+                        // 默認的取出操作已改變槽位內容
+                        InventoryGUI.markSlotChanged(player.getUniqueId(), slot);
                         plugin.savePlayerInventory(player);
                         plugin.getTotemEffectListener().updateTotemLoopTasks(player);
                     }
@@ -400,9 +406,14 @@ public class InventoryListeners implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         
-        // 如果玩家有打開的物品欄，保存數據
+        // 取消尚未完成的加載，避免結果應用到已退出的玩家
+        if (plugin.getPrefetchCache() != null) {
+            plugin.getPrefetchCache().cancelLoads(player.getUniqueId());
+        }
+        
+        // 如果玩家有打開的物品欄，通過快速通道保存數據
         if (InventoryGUI.hasOpenInventory(player.getUniqueId())) {
-            plugin.savePlayerInventory(player);
+            plugin.savePlayerInventory(player, true);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 以 H2 內存數據庫（MySQL 兼容模式）運行 MySQL 方言的 SQL
+ * <p>
+ * 覆蓋保存、差異寫入、加載、hasData、舊版 VARCHAR(36) 文本主鍵的遷移以及版本的比較並設置。
+ */
+class H2ManagerTest {
+
+    @TempDir
+    File dataFolder;
+
+    private RPGInventory plugin;
+    private String databaseName;
+    private TestH2Manager manager;
+
+    @BeforeEach
+    void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+        // 後台遷移每 tick 處理一批，縮短測試時間
+        config.set("database.migration.interval", 1);
+        config.set("database.migration.chunk-size", 2);
+        plugin = mock(RPGInventory.class);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("RPGInventoryTest"));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        databaseName = "test_" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    @Test
+    void savesAndLoadsProfile() {
+        open();
+        UUID player = UUID.randomUUID();
+        assertFalse(manager.hasData(player));
+
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        totems.put(0, item(Material.STONE, 2));
+        totems.put(3, item(Material.STONE, 5));
+        Set<UUID> saved = manager.saveInventories(Collections.singletonList(
+                new PlayerLoadout(player, item(Material.PAPER, 1), totems, 100)));
+
+        assertTrue(saved.contains(player));
+        assertTrue(manager.hasData(player));
+        PlayerLoadout loaded = manager.loadProfile(player);
+        assertNotNull(loaded);
+        assertItem(Material.PAPER, 1, loaded.getOrnament());
+        assertEquals(2, loaded.getTotems().size());
+        assertItem(Material.STONE, 2, loaded.getTotems().get(0));
+        assertItem(Material.STONE, 5, loaded.getTotems().get(3));
+        assertItem(Material.PAPER, 1, manager.loadOrnament(player));
+        assertEquals(2, manager.loadTotems(player).size());
+    }
+
+    @Test
+    void writesOnlyDifferences() throws SQLException {
+        open();
+        UUID player = UUID.randomUUID();
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        totems.put(0, item(Material.STONE, 2));
+        totems.put(1, item(Material.STONE, 3));
+        totems.put(2, item(Material.STONE, 4));
+        manager.saveInventories(Collections.singletonList(new PlayerLoadout(player, item(Material.PAPER, 1), totems, 100)));
+
+        // 移除飾品與槽位 1，修改槽位 2，槽位 0 不變
+        Map<Integer, ItemStack> changed = new HashMap<>();
+        changed.put(0, item(Material.STONE, 2));
+        changed.put(2, item(Material.STONE, 9));
+        manager.saveInventories(Collections.singletonList(new PlayerLoadout(player, null, changed, 200)));
+
+        PlayerLoadout loaded = manager.loadProfile(player);
+        assertNotNull(loaded);
+        assertNull(loaded.getOrnament());
+        assertEquals(2, loaded.getTotems().size());
+        assertItem(Material.STONE, 2, loaded.getTotems().get(0));
+        assertItem(Material.STONE, 9, loaded.getTotems().get(2));
+        assertEquals(0, countRows("ornaments", player));
+        assertEquals(2, countRows("totems", player));
+
+        // 清空後不再有數據
+        manager.saveInventories(Collections.singletonList(new PlayerLoadout(player, null, Collections.emptyMap(), 300)));
+        assertFalse(manager.hasData(player));
+        assertEquals(0, countRows("totems", player));
+    }
+
+    @Test
+    void rejectsStaleVersion() {
+        open();
+        UUID player = UUID.randomUUID();
+        manager.saveInventories(Collections.singletonList(
+                new PlayerLoadout(player, item(Material.PAPER, 2), Collections.emptyMap(), 200)));
+
+        // 較舊的快照不寫入，但同樣視為已完成
+        Set<UUID> saved = manager.saveInventories(Collections.singletonList(
+                new PlayerLoadout(player, item(Material.PAPER, 1), Collections.emptyMap(), 100)));
+        assertTrue(saved.contains(player));
+        assertEquals(1, manager.getVersionConflictCount());
+        assertItem(Material.PAPER, 2, manager.loadProfile(player).getOrnament());
+
+        manager.saveInventories(Collections.singletonList(
+                new PlayerLoadout(player, item(Material.PAPER, 3), Collections.emptyMap(), 300)));
+        assertEquals(1, manager.getVersionConflictCount());
+        assertItem(Material.PAPER, 3, manager.loadProfile(player).getOrnament());
+    }
+
+    @Test
+    void migratesLegacyTextKeys() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        // 建立升級前的表結構（VARCHAR(36) 文本主鍵，Base64 文本數據）
+        try (Connection conn = DriverManager.getConnection(
+                "jdbc:h2:mem:" + databaseName + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE `ornaments` (`player_uuid` VARCHAR(36) PRIMARY KEY, " +
+                    "`item_data` TEXT NOT NULL) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            statement.executeUpdate("CREATE TABLE `totems` (`id` INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "`player_uuid` VARCHAR(36) NOT NULL, `slot_id` INT NOT NULL, `item_data` TEXT NOT NULL, " +
+                    "UNIQUE KEY `player_slot` (`player_uuid`, `slot_id`)) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            for (UUID player : new UUID[]{first, second, third}) {
+                statement.executeUpdate("INSERT INTO ornaments VALUES ('" + player + "', '" + legacyData(Material.PAPER, 7) + "')");
+                statement.executeUpdate("INSERT INTO totems (player_uuid, slot_id, item_data) VALUES ('" + player + "', 1, '" +
+                        legacyData(Material.STONE, 8) + "')");
+            }
+        }
+
+        open();
+        // 啟動時只改名，數據在後台移入新表之前仍可讀取
+        assertTrue(manager.hasLegacyTables());
+        assertTrue(manager.hasData(first));
+        PlayerLoadout legacy = manager.loadProfile(first);
+        assertNotNull(legacy);
+        assertItem(Material.PAPER, 7, legacy.getOrnament());
+        assertItem(Material.STONE, 8, legacy.getTotems().get(1));
+
+        // 遷移期間的寫入取代舊數據
+        Map<Integer, ItemStack> totems = Collections.singletonMap(2, item(Material.STONE, 1));
+        manager.saveInventories(Collections.singletonList(new PlayerLoadout(second, null, totems, 100)));
+        PlayerLoadout written = manager.loadProfile(second);
+        assertNull(written.getOrnament());
+        assertEquals(totems.keySet(), written.getTotems().keySet());
+
+        long deadline = System.currentTimeMillis() + 30_000L;
+        while (manager.hasLegacyTables() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertFalse(manager.hasLegacyTables(), "後台遷移沒有在 30 秒內完成");
+
+        try (Connection conn = manager.getConnection()) {
+            assertFalse(manager.tableExists(conn, "ornaments" + AbstractDatabaseManager.LEGACY_SUFFIX));
+            assertFalse(manager.tableExists(conn, "totems" + AbstractDatabaseManager.LEGACY_SUFFIX));
+        }
+        for (UUID player : new UUID[]{first, third}) {
+            PlayerLoadout migrated = manager.loadProfile(player);
+            assertItem(Material.PAPER, 7, migrated.getOrnament());
+            assertEquals(1, migrated.getTotems().size());
+            assertItem(Material.STONE, 8, migrated.getTotems().get(1));
+            assertEquals(1, countRows("ornaments", player));
+        }
+        written = manager.loadProfile(second);
+        assertNull(written.getOrnament());
+        assertEquals(totems.keySet(), written.getTotems().keySet());
+    }
+
+    private void open() {
+        manager = new TestH2Manager(plugin, databaseName);
+        assertTrue(manager.initialize(), "初始化 H2 數據庫失敗");
+    }
+
+    private int countRows(String table, UUID player) throws SQLException {
+        try (Connection conn = manager.getConnection();
+             PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE player_uuid = ?")) {
+            statement.setBytes(1, AbstractDatabaseManager.uuidToBytes(player));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private static ItemStack item(Material type, int amount) {
+        return new ItemStack(type, amount);
+    }
+
+    private static String legacyData(Material type, int amount) {
+        return Base64.getEncoder().encodeToString(TestItemCodecs.encodeItem(item(type, amount)));
+    }
+
+    private static void assertItem(Material type, int amount, ItemStack item) {
+        assertNotNull(item);
+        assertEquals(type, item.getType());
+        assertEquals(amount, item.getAmount());
+    }
+}
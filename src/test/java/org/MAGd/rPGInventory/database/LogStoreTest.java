@@ -0,0 +1,263 @@
+package org.MAGd.rPGInventory.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 日誌結構存儲的打開、索引文件、壓縮與崩潰恢復
+ * <p>
+ * 崩潰通過在存儲仍然打開時複製數據目錄模擬：副本中沒有關閉時寫入的索引文件，只有已經寫入的數據文件。
+ */
+class LogStoreTest {
+
+    // 每個數據文件只能容納少量記錄，寫入幾輪就會產生可壓縮的文件
+    private static final long SEGMENT_SIZE = 1024;
+    private static final Logger LOGGER = Logger.getLogger("RPGInventoryTest");
+
+    @TempDir
+    File tempDir;
+
+    private File directory;
+    private final List<LogStore> stores = new ArrayList<>();
+    private final List<UUID> players = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        directory = new File(tempDir, "logstore");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(LogStore::close);
+    }
+
+    @Test
+    void reopensFromHint() throws IOException {
+        LogStore store = open(directory);
+        writeRound(store, 1, 10);
+        store.write(Collections.singletonList(new LogStore.Write(players.get(0), 20, null)));
+        store.close();
+
+        LogStore reopened = open(directory);
+        assertTrue(reopened.getStatusLine().contains("索引文件"));
+        assertNull(reopened.get(players.get(0)));
+        assertFalse(reopened.contains(players.get(0)));
+        assertEquals(20, reopened.getVersion(players.get(0)));
+        for (int i = 1; i < players.size(); i++) {
+            assertArrayEquals(value(players.get(i), 1), reopened.get(players.get(i)));
+        }
+        assertEquals(players.size() - 1, reopened.getLiveCount());
+
+        // 刪除前的過期快照在重新打開後仍被拒絕
+        Set<UUID> stale = reopened.write(Collections.singletonList(new LogStore.Write(players.get(0), 10, value(players.get(0), 9))));
+        assertTrue(stale.contains(players.get(0)));
+    }
+
+    @Test
+    void truncatesTornWrite() throws IOException {
+        LogStore store = open(directory);
+        writeRound(store, 1, 10);
+        store.close();
+        store = open(directory);
+        writeRound(store, 2, 0);
+
+        // 崩潰時最後一條記錄只寫入了文件頭
+        File crashed = crash(directory);
+        File newest = newestDataFile(crashed);
+        long intactLength = newest.length();
+        try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            file.seek(intactLength);
+            file.writeInt(0x524C5352);
+            file.writeInt(200);
+            file.writeInt(0x12345678);
+        }
+
+        LogStore recovered = open(crashed);
+        assertTrue(recovered.getStatusLine().contains("索引文件"));
+        assertEquals(intactLength, newest.length());
+        assertValues(recovered, 2);
+
+        // 截斷後的文件可以繼續寫入，並在下次打開時讀取
+        recovered.write(Collections.singletonList(new LogStore.Write(players.get(0), 30, value(players.get(0), 3))));
+        recovered.close();
+        LogStore reopened = open(crashed);
+        assertArrayEquals(value(players.get(0), 3), reopened.get(players.get(0)));
+        assertArrayEquals(value(players.get(1), 2), reopened.get(players.get(1)));
+    }
+
+    @Test
+    void rejectsCorruptRecord() throws IOException {
+        LogStore store = open(directory);
+        writeRound(store, 1, 10);
+        store.write(Collections.singletonList(new LogStore.Write(players.get(0), 20, value(players.get(0), 2))));
+
+        // 最後一條記錄完整寫入了長度，但值沒有全部落盤
+        File crashed = crash(directory);
+        File newest = newestDataFile(crashed);
+        try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            long last = file.length() - 1;
+            file.seek(last);
+            int original = file.readByte();
+            file.seek(last);
+            file.writeByte(original ^ 0xFF);
+        }
+
+        LogStore recovered = open(crashed);
+        assertArrayEquals(value(players.get(0), 1), recovered.get(players.get(0)));
+        assertEquals(10, recovered.getVersion(players.get(0)));
+        assertValues(recovered, 1, 1);
+    }
+
+    @Test
+    void reopensAfterCompactionWithoutClose() throws IOException {
+        LogStore store = open(directory);
+        writeRound(store, 1, 10);
+        writeRound(store, 2, 0);
+        writeRound(store, 3, 0);
+        File compacted = oldestDataFile(directory);
+        assertTrue(store.compact(0.5) > 0, "沒有可壓縮的數據文件");
+        assertFalse(compacted.exists());
+        assertValues(store, 3);
+
+        // 壓縮之後的寫入不在索引文件中，只能通過掃描索引之後追加的記錄找回
+        store.write(Collections.singletonList(new LogStore.Write(players.get(0), 40, value(players.get(0), 4))));
+        store.write(Collections.singletonList(new LogStore.Write(players.get(1), 40, null)));
+        File crashed = crash(directory);
+
+        LogStore recovered = open(crashed);
+        assertTrue(recovered.getStatusLine().contains("索引文件"));
+        assertArrayEquals(value(players.get(0), 4), recovered.get(players.get(0)));
+        assertNull(recovered.get(players.get(1)));
+        assertEquals(40, recovered.getVersion(players.get(1)));
+        assertValues(recovered, 3, 2);
+        assertEquals(players.size() - 1, recovered.getLiveCount());
+    }
+
+    @Test
+    void rebuildsIndexWhenHintPointsToCompactedFile() throws IOException {
+        LogStore store = open(directory);
+        writeRound(store, 1, 10);
+        writeRound(store, 2, 0);
+        store.close();
+        File oldHint = new File(directory, "index.hint.old");
+        Files.copy(new File(directory, "index.hint").toPath(), oldHint.toPath());
+
+        store = open(directory);
+        writeRound(store, 3, 0);
+        assertTrue(store.compact(0.5) > 0, "沒有可壓縮的數據文件");
+
+        // 壓縮後崩潰，留下的是壓縮前的索引文件：條目指向已刪除的數據文件，只能完整掃描
+        File crashed = crash(directory);
+        Files.move(new File(crashed, "index.hint.old").toPath(), new File(crashed, "index.hint").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        LogStore recovered = open(crashed);
+        assertTrue(recovered.getStatusLine().contains("完整掃描"));
+        assertValues(recovered, 3);
+        assertEquals(players.size(), recovered.getLiveCount());
+    }
+
+    private LogStore open(File dir) throws IOException {
+        LogStore store = new LogStore(LOGGER, dir, SEGMENT_SIZE, false);
+        store.open();
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * 為每名玩家寫入一輪數據（版本為輪次 * 10），newPlayers 大於 0 時先添加玩家
+     */
+    private void writeRound(LogStore store, int round, int newPlayers) throws IOException {
+        for (int i = 0; i < newPlayers; i++) {
+            players.add(UUID.randomUUID());
+        }
+        for (UUID player : players) {
+            Set<UUID> stale = store.write(Collections.singletonList(new LogStore.Write(player, round * 10L, value(player, round))));
+            assertTrue(stale.isEmpty());
+        }
+    }
+
+    /**
+     * 檢查從 from 開始的玩家的值都是指定輪次寫入的
+     */
+    private void assertValues(LogStore store, int round, int from) throws IOException {
+        for (int i = from; i < players.size(); i++) {
+            UUID player = players.get(i);
+            byte[] stored = store.get(player);
+            assertNotNull(stored, "玩家 " + i + " 沒有數據");
+            assertArrayEquals(value(player, round), stored);
+            assertEquals(round * 10L, store.getVersion(player));
+        }
+    }
+
+    private void assertValues(LogStore store, int round) throws IOException {
+        assertValues(store, round, 0);
+    }
+
+    private static byte[] value(UUID player, int round) {
+        // 長度隨輪次變化，覆蓋寫入後舊記錄與新記錄大小不同
+        return (player + "#" + round + "-".repeat(round * 20)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把數據目錄在當前時刻的內容複製到新目錄，相當於進程在此時崩潰
+     */
+    private File crash(File dir) throws IOException {
+        File copy = new File(tempDir, "crashed-" + stores.size());
+        assertTrue(copy.mkdirs());
+        File[] files = dir.listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            Files.copy(file.toPath(), new File(copy, file.getName()).toPath());
+        }
+        return copy;
+    }
+
+    private static File newestDataFile(File dir) {
+        File newest = null;
+        File[] files = dir.listFiles((d, name) -> name.startsWith("data-") && name.endsWith(".log"));
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.length() > 16 && (newest == null || file.getName().compareTo(newest.getName()) > 0)) {
+                newest = file;
+            }
+        }
+        assertNotNull(newest);
+        return newest;
+    }
+
+    private static File oldestDataFile(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("data-") && name.endsWith(".log"));
+        assertNotNull(files);
+        File oldest = null;
+        for (File file : files) {
+            if (oldest == null || file.getName().compareTo(oldest.getName()) < 0) {
+                oldest = file;
+            }
+        }
+        assertNotNull(oldest);
+        return oldest;
+    }
+}
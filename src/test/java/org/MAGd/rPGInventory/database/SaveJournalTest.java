@@ -0,0 +1,218 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本地日誌的崩潰恢復、記錄校驗與檢查點，以及恢復的過期快照重放時的版本檢查
+ * <p>
+ * 崩潰通過不調用 close() 直接在同一目錄上創建新的日誌模擬；寫入映射內存的記錄不需要刷盤，
+ * 對新打開的日誌同樣可見。
+ */
+class SaveJournalTest {
+
+    @TempDir
+    File dataFolder;
+
+    private RPGInventory plugin;
+    private TestSQLiteManager manager;
+
+    @BeforeEach
+    void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.journal.segment-size", 1);
+        plugin = mock(RPGInventory.class);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("RPGInventoryTest"));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        // 日誌只通過數據庫管理器獲取物品編解碼器
+        manager = new TestSQLiteManager(plugin, new File(dataFolder, "journal-test.db"));
+    }
+
+    @Test
+    void recoversLatestSnapshotAfterCrash() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        SaveJournal journal = open();
+        assertTrue(journal.recover().isEmpty());
+        journal.append(loadout(first, 1));
+        journal.append(loadout(second, 5));
+        long latest = journal.append(loadout(first, 2));
+        assertTrue(latest > 0);
+
+        Map<UUID, SaveJournal.Recovered> recovered = open().recover();
+        assertEquals(2, recovered.size());
+        assertEquals(latest, recovered.get(first).getSeq());
+        assertItems(recovered.get(first).getLoadout(), 2);
+        assertEquals(2, recovered.get(first).getLoadout().getVersion());
+        assertItems(recovered.get(second).getLoadout(), 5);
+    }
+
+    @Test
+    void replaysNewestSnapshotAcrossSegments() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        SaveJournal journal = open();
+        journal.recover();
+        journal.append(loadout(first, 1));
+        // 寫滿第一個日誌段
+        int amount = 0;
+        while (segments().length < 2) {
+            journal.append(loadout(second, ++amount % 64 + 1));
+        }
+        File firstSegment = segments()[0];
+        long latest = journal.append(loadout(first, 2));
+        journal.append(loadout(second, 64));
+
+        SaveJournal reopened = open();
+        Map<UUID, SaveJournal.Recovered> recovered = reopened.recover();
+        assertEquals(2, recovered.size());
+        assertEquals(latest, recovered.get(first).getSeq());
+        assertItems(recovered.get(first).getLoadout(), 2);
+        assertItems(recovered.get(second).getLoadout(), 64);
+
+        // 第一個日誌段中的記錄都已被更新的快照取代，恢復時的檢查點直接刪除
+        assertFalse(firstSegment.exists());
+
+        recovered.values().forEach(entry -> reopened.release(entry.getSeq()));
+        assertEquals(0, reopened.close());
+        assertEquals(0, segments().length);
+    }
+
+    @Test
+    void ignoresTornRecord() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        SaveJournal journal = open();
+        journal.recover();
+        long older = journal.append(loadout(first, 1));
+        journal.append(loadout(second, 5));
+        journal.append(loadout(first, 2));
+
+        // 崩潰時最後一條記錄的魔數已寫入，內容沒有全部落盤
+        File segment = segments()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long position = 16;
+            long last = -1;
+            int lastLength = 0;
+            while (true) {
+                file.seek(position);
+                if (file.readInt() == 0) {
+                    break;
+                }
+                last = position;
+                lastLength = file.readInt();
+                position += 20 + lastLength;
+            }
+            file.seek(last + 20 + lastLength - 1);
+            int original = file.readByte();
+            file.seek(last + 20 + lastLength - 1);
+            file.writeByte(original ^ 0xFF);
+        }
+
+        SaveJournal reopened = open();
+        Map<UUID, SaveJournal.Recovered> recovered = reopened.recover();
+        assertEquals(2, recovered.size());
+        assertEquals(older, recovered.get(first).getSeq());
+        assertItems(recovered.get(first).getLoadout(), 1);
+        assertItems(recovered.get(second).getLoadout(), 5);
+
+        // 新記錄的序號接在有效記錄之後
+        long next = reopened.append(loadout(second, 6));
+        assertTrue(next > older);
+
+        // 全部確認後損壞的段改名保留
+        recovered.values().forEach(entry -> reopened.release(entry.getSeq()));
+        reopened.release(next);
+        assertEquals(0, reopened.close());
+        assertTrue(new File(segment.getPath() + ".corrupt").exists());
+    }
+
+    @Test
+    void replaysStaleSnapshotWithoutOverwriting() {
+        UUID player = UUID.randomUUID();
+        assertTrue(manager.initialize(), "初始化 SQLite 數據庫失敗");
+        try {
+            // 數據庫已經寫入了較新的快照，但日誌在檢查點之前崩潰，仍保留着較舊的快照
+            manager.saveInventories(Collections.singletonList(loadout(player, 2)));
+            SaveJournal journal = open();
+            journal.recover();
+            journal.append(loadout(player, 1));
+
+            SaveJournal reopened = open();
+            Map<UUID, SaveJournal.Recovered> recovered = reopened.recover();
+            assertEquals(1, recovered.size());
+            SaveJournal.Recovered entry = recovered.get(player);
+            assertItems(entry.getLoadout(), 1);
+
+            // 重放被版本檢查拒絕，但同樣視為已完成，記錄可以釋放
+            Set<UUID> saved = manager.saveInventories(Collections.singletonList(entry.getLoadout()));
+            assertTrue(saved.contains(player));
+            assertEquals(1, manager.getVersionConflictCount());
+            assertItems(manager.loadProfile(player), 2);
+
+            reopened.release(entry.getSeq());
+            assertEquals(0, reopened.close());
+            assertTrue(open().recover().isEmpty());
+        } finally {
+            manager.close();
+        }
+    }
+
+    private SaveJournal open() {
+        return SaveJournal.create(plugin, manager);
+    }
+
+    /**
+     * 按創建順序排列的日誌段文件
+     */
+    private File[] segments() {
+        File[] segments = new File(new File(dataFolder, "database"), "journal")
+                .listFiles((dir, name) -> name.endsWith(".seg"));
+        assertNotNull(segments);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * 飾品數量與兩個圖騰的數量都是 amount，物品欄版本同樣為 amount
+     */
+    private static PlayerLoadout loadout(UUID player, int amount) {
+        Map<Integer, ItemStack> totems = new HashMap<>();
+        totems.put(0, new ItemStack(Material.STONE, amount));
+        totems.put(4, new ItemStack(Material.STONE, amount));
+        return new PlayerLoadout(player, new ItemStack(Material.PAPER, amount), totems, amount);
+    }
+
+    private static void assertItems(PlayerLoadout loadout, int amount) {
+        assertNotNull(loadout);
+        assertEquals(Material.PAPER, loadout.getOrnament().getType());
+        assertEquals(amount, loadout.getOrnament().getAmount());
+        assertEquals(2, loadout.getTotems().size());
+        assertEquals(amount, loadout.getTotems().get(0).getAmount());
+        assertEquals(amount, loadout.getTotems().get(4).getAmount());
+    }
+}
@@ -0,0 +1,32 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * 使用 {@link TestItemCodecs} 序列化物品的 H2 數據庫管理器
+ */
+class TestH2Manager extends H2Manager {
+
+    private final TestItemCodecs testItemCodecs;
+
+    TestH2Manager(RPGInventory plugin, String databaseName) {
+        super(plugin, databaseName);
+        this.testItemCodecs = new TestItemCodecs(plugin);
+    }
+
+    @Override
+    public ItemCodecRegistry getItemCodecs() {
+        return testItemCodecs;
+    }
+
+    @Override
+    protected byte[] serializeItemStack(ItemStack itemStack) {
+        return TestItemCodecs.encodeItem(itemStack);
+    }
+
+    @Override
+    protected ItemStack deserializeItemStack(byte[] serializedItem) {
+        return TestItemCodecs.decodeItem(serializedItem);
+    }
+}
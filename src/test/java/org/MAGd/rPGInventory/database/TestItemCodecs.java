@@ -0,0 +1,41 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 物品只按類型與數量序列化的編解碼器，測試不需要運行中的伺服器
+ */
+class TestItemCodecs extends ItemCodecRegistry {
+
+    TestItemCodecs(RPGInventory plugin) {
+        super(plugin);
+    }
+
+    static byte[] encodeItem(ItemStack itemStack) {
+        return (itemStack.getType().name() + ":" + itemStack.getAmount()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static ItemStack decodeItem(byte[] data) {
+        String[] parts = new String(data, StandardCharsets.UTF_8).split(":");
+        return new ItemStack(Material.valueOf(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    @Override
+    public byte[] encode(ItemStack itemStack) {
+        return encodeItem(itemStack);
+    }
+
+    @Override
+    public byte[] encodeUncompressed(ItemStack itemStack) {
+        return encodeItem(itemStack);
+    }
+
+    @Override
+    public ItemStack decode(byte[] data) {
+        return decodeItem(data);
+    }
+}
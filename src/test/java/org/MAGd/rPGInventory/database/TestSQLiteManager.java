@@ -0,0 +1,34 @@
+package org.MAGd.rPGInventory.database;
+
+import org.MAGd.rPGInventory.RPGInventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+
+/**
+ * 使用 {@link TestItemCodecs} 序列化物品的 SQLite 數據庫管理器
+ */
+class TestSQLiteManager extends SQLiteManager {
+
+    private final TestItemCodecs testItemCodecs;
+
+    TestSQLiteManager(RPGInventory plugin, File databaseFile) {
+        super(plugin, databaseFile, SQLiteSettings.fromConfig(plugin.getConfig()));
+        this.testItemCodecs = new TestItemCodecs(plugin);
+    }
+
+    @Override
+    public ItemCodecRegistry getItemCodecs() {
+        return testItemCodecs;
+    }
+
+    @Override
+    protected byte[] serializeItemStack(ItemStack itemStack) {
+        return TestItemCodecs.encodeItem(itemStack);
+    }
+
+    @Override
+    protected ItemStack deserializeItemStack(byte[] serializedItem) {
+        return TestItemCodecs.decodeItem(serializedItem);
+    }
+}